@@ -0,0 +1,150 @@
+package ru.ramlabs.gitea.stonks;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import ru.ramlabs.gitea.stonks.api.Accounts;
+import ru.ramlabs.gitea.stonks.api.Transactions;
+import ru.ramlabs.gitea.stonks.api.Users;
+import ru.ramlabs.gitea.stonks.storage.ydb.YdbTransactionStorage;
+import ru.ramlabs.gitea.stonks.utils.NullableParams;
+import ru.ramlabs.gitea.stonks.utils.UnsignedLongToString;
+import tech.ydb.proto.ValueProtos;
+import tech.ydb.table.query.Params;
+import tech.ydb.table.result.impl.ProtoValueReaders;
+import tech.ydb.table.values.OptionalType;
+import tech.ydb.table.values.PrimitiveType;
+import tech.ydb.table.values.PrimitiveValue;
+import tech.ydb.table.values.Type;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static tech.ydb.table.values.PrimitiveValue.newText;
+import static tech.ydb.table.values.PrimitiveValue.newUint64;
+
+/**
+ * Per-request CPU work that does not depend on database: id (de)serialization, query parameters, auth cookie,
+ * session tokens, result set mapping and response serialization. Run with {@code -prof gc} to see allocations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HotPathBenchmark {
+
+    public record Id(
+            @JsonProperty("id")
+            @JsonSerialize(using = UnsignedLongToString.Serializer.class)
+            @JsonDeserialize(using = UnsignedLongToString.Deserializer.class)
+            long id
+    ) {
+
+    }
+
+    @Param({"50"})
+    int pageSize;
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    private Id id;
+    private String idJson;
+    private String authCookie;
+    private ValueProtos.ResultSet transactionRows;
+    private Transactions.GetTransactionsResult transactions;
+    private Accounts.GetAccountsResult accounts;
+
+    @Setup
+    public void setup() throws JsonProcessingException {
+        var random = ThreadLocalRandom.current();
+        id = new Id(random.nextLong());
+        idJson = objectMapper.writeValueAsString(id);
+        authCookie = Long.toUnsignedString(random.nextLong()) + "-" + Users.generateSessionToken();
+
+        var rows = ValueProtos.ResultSet.newBuilder()
+                .addColumns(column("user_id", PrimitiveType.Uint64))
+                .addColumns(column("transaction_id", PrimitiveType.Uint64))
+                .addColumns(column("transaction_name", OptionalType.of(PrimitiveType.Text)))
+                .addColumns(column("transaction_timestamp", OptionalType.of(PrimitiveType.Timestamp)))
+                .addColumns(column("transaction_comment", OptionalType.of(PrimitiveType.Text)));
+        var transactionList = new ArrayList<Transactions.Transaction>(pageSize);
+        var accountList = new ArrayList<Accounts.Account>(pageSize);
+        for (int i = 0; i < pageSize; i++) {
+            var timestamp = Instant.now();
+            rows.addRows(ValueProtos.Value.newBuilder()
+                    .addItems(newUint64(1).toPb())
+                    .addItems(newUint64(random.nextLong()).toPb())
+                    .addItems(newText("transaction " + i).makeOptional().toPb())
+                    .addItems(PrimitiveValue.newTimestamp(timestamp).makeOptional().toPb())
+                    .addItems(PrimitiveType.Text.makeOptional().emptyValue().toPb()));
+            transactionList.add(new Transactions.Transaction(random.nextLong(), "transaction " + i, timestamp, null));
+            accountList.add(new Accounts.Account(random.nextLong(), random.nextLong(), "account " + i, null));
+        }
+        transactionRows = rows.build();
+        transactions = new Transactions.GetTransactionsResult(transactionList, random.nextLong(), null);
+        accounts = new Accounts.GetAccountsResult(accountList, random.nextLong(), null);
+    }
+
+    private static ValueProtos.Column column(String name, Type type) {
+        return ValueProtos.Column.newBuilder().setName(name).setType(type.toPb()).build();
+    }
+
+    @Benchmark
+    public String serializeUnsignedLong() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(id);
+    }
+
+    @Benchmark
+    public Id deserializeUnsignedLong() throws JsonProcessingException {
+        return objectMapper.readValue(idJson, Id.class);
+    }
+
+    @Benchmark
+    public Params nullableParams() {
+        return NullableParams.ofNullable(
+                "$user_id", newUint64(id.id()),
+                "$account_id", newUint64(id.id()),
+                "$bank_id", null,
+                "$account_name", newText("account"),
+                "$account_description", null
+        );
+    }
+
+    @Benchmark
+    public Users.UserToken parseAuthCookie() {
+        return Users.UserToken.parseAuthCookie(authCookie);
+    }
+
+    @Benchmark
+    public String generateSessionToken() {
+        return Users.generateSessionToken();
+    }
+
+    @Benchmark
+    public void mapTransactions(Blackhole blackhole) {
+        var rows = ProtoValueReaders.forResultSet(transactionRows);
+        var transaction = YdbTransactionStorage.TRANSACTION_ROWS.compile(rows);
+        while (rows.next()) {
+            blackhole.consume(transaction.read(rows));
+        }
+    }
+
+    @Benchmark
+    public byte[] serializeTransactions() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(transactions);
+    }
+
+    @Benchmark
+    public byte[] serializeAccounts() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(accounts);
+    }
+}
@@ -0,0 +1,47 @@
+package ru.ramlabs.gitea.stonks;
+
+import org.openjdk.jmh.annotations.*;
+import ru.ramlabs.gitea.stonks.utils.IdGenerator;
+import ru.ramlabs.gitea.stonks.utils.RandomIdGenerator;
+import ru.ramlabs.gitea.stonks.utils.SnowflakeIdGenerator;
+
+import java.security.SecureRandom;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Id generation under contention: generator allocated per id, as api classes did before,
+ * vs shared {@link IdGenerator} implementations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class IdGeneratorBenchmark {
+
+    private final IdGenerator snowflake = new SnowflakeIdGenerator("0");
+    private final IdGenerator random = new RandomIdGenerator();
+
+    @Benchmark
+    public long newRandomPerId() {
+        return new Random().nextLong();
+    }
+
+    @Benchmark
+    public long newSecureRandomPerId() {
+        return new SecureRandom().nextLong();
+    }
+
+    @Benchmark
+    public long threadLocalRandom() {
+        return random.nextId();
+    }
+
+    @Benchmark
+    public long snowflake() {
+        return snowflake.nextId();
+    }
+}
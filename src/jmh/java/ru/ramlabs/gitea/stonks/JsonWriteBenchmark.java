@@ -0,0 +1,74 @@
+package ru.ramlabs.gitea.stonks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import ru.ramlabs.gitea.stonks.api.Accounts;
+import ru.ramlabs.gitea.stonks.api.Transactions;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of list response serialization with object mapper configured as MVC converter one:
+ * <ul>
+ *     <li>{@code annotations} - annotation driven serialization, as before {@link JacksonConfiguration}</li>
+ *     <li>{@code blackbird} - the same with Blackbird module only</li>
+ *     <li>{@code serializers} - {@link JacksonConfiguration#registerModules}, as served now</li>
+ * </ul>
+ * Run with {@code -prof gc} to compare bytes allocated per response ({@code gc.alloc.rate.norm}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonWriteBenchmark {
+
+    @Param({"annotations", "blackbird", "serializers"})
+    String mapper;
+
+    @Param({"50"})
+    int pageSize;
+
+    private ObjectMapper objectMapper;
+    private Transactions.GetTransactionsResult transactions;
+    private Accounts.GetAccountsResult accounts;
+
+    @Setup
+    public void setup() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        switch (mapper) {
+            case "annotations" -> {
+            }
+            case "blackbird" -> objectMapper.registerModule(new BlackbirdModule());
+            case "serializers" -> JacksonConfiguration.registerModules(objectMapper);
+            default -> throw new IllegalArgumentException(mapper);
+        }
+
+        var random = ThreadLocalRandom.current();
+        var transactionList = new ArrayList<Transactions.Transaction>(pageSize);
+        var accountList = new ArrayList<Accounts.Account>(pageSize);
+        for (int i = 0; i < pageSize; i++) {
+            transactionList.add(new Transactions.Transaction(random.nextLong(), "transaction " + i, Instant.now(), null));
+            accountList.add(new Accounts.Account(random.nextLong(), random.nextLong(), "account " + i, null));
+        }
+        transactions = new Transactions.GetTransactionsResult(transactionList, random.nextLong(), null);
+        accounts = new Accounts.GetAccountsResult(accountList, random.nextLong(), null);
+    }
+
+    @Benchmark
+    public byte[] serializeTransactions() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(transactions);
+    }
+
+    @Benchmark
+    public byte[] serializeAccounts() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(accounts);
+    }
+}
@@ -0,0 +1,139 @@
+package ru.ramlabs.gitea.stonks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.ramlabs.gitea.stonks.api.Accounts.Account;
+import ru.ramlabs.gitea.stonks.api.Transactions.Transaction;
+import ru.ramlabs.gitea.stonks.storage.ydb.YdbAccountStorage;
+import ru.ramlabs.gitea.stonks.storage.ydb.YdbTransactionStorage;
+import tech.ydb.proto.ValueProtos;
+import tech.ydb.table.result.ResultSetReader;
+import tech.ydb.table.result.impl.ProtoValueReaders;
+import tech.ydb.table.values.OptionalType;
+import tech.ydb.table.values.PrimitiveType;
+import tech.ydb.table.values.PrimitiveValue;
+import tech.ydb.table.values.Type;
+
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static tech.ydb.table.values.PrimitiveValue.newText;
+import static tech.ydb.table.values.PrimitiveValue.newUint64;
+
+/**
+ * Result set mapping by column name for every row, as storages did before, vs {@link ru.ramlabs.gitea.stonks.storage.ydb.RowMapper}
+ * that resolves column indexes once per result set. Scores are per row, run with {@code -prof gc}
+ * to compare {@code gc.alloc.rate.norm}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RowMapperBenchmark {
+
+    private static final int ROWS = 500;
+
+    private ValueProtos.ResultSet transactionRows;
+    private ValueProtos.ResultSet accountRows;
+
+    @Setup
+    public void setup() {
+        var random = ThreadLocalRandom.current();
+        var transactions = ValueProtos.ResultSet.newBuilder()
+                .addColumns(column("user_id", PrimitiveType.Uint64))
+                .addColumns(column("transaction_id", PrimitiveType.Uint64))
+                .addColumns(column("transaction_name", OptionalType.of(PrimitiveType.Text)))
+                .addColumns(column("transaction_timestamp", OptionalType.of(PrimitiveType.Timestamp)))
+                .addColumns(column("transaction_comment", OptionalType.of(PrimitiveType.Text)));
+        var accounts = ValueProtos.ResultSet.newBuilder()
+                .addColumns(column("user_id", PrimitiveType.Uint64))
+                .addColumns(column("account_id", PrimitiveType.Uint64))
+                .addColumns(column("bank_id", OptionalType.of(PrimitiveType.Uint64)))
+                .addColumns(column("account_name", PrimitiveType.Text))
+                .addColumns(column("account_description", OptionalType.of(PrimitiveType.Text)));
+        for (int i = 0; i < ROWS; i++) {
+            transactions.addRows(ValueProtos.Value.newBuilder()
+                    .addItems(newUint64(1).toPb())
+                    .addItems(newUint64(random.nextLong()).toPb())
+                    .addItems(newText("transaction " + i).makeOptional().toPb())
+                    .addItems(PrimitiveValue.newTimestamp(Instant.now()).makeOptional().toPb())
+                    .addItems(PrimitiveType.Text.makeOptional().emptyValue().toPb()));
+            accounts.addRows(ValueProtos.Value.newBuilder()
+                    .addItems(newUint64(1).toPb())
+                    .addItems(newUint64(random.nextLong()).toPb())
+                    .addItems(newUint64(random.nextLong()).makeOptional().toPb())
+                    .addItems(newText("account " + i).toPb())
+                    .addItems(PrimitiveType.Text.makeOptional().emptyValue().toPb()));
+        }
+        transactionRows = transactions.build();
+        accountRows = accounts.build();
+    }
+
+    private static ValueProtos.Column column(String name, Type type) {
+        return ValueProtos.Column.newBuilder().setName(name).setType(type.toPb()).build();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void transactionsByName(Blackhole blackhole) {
+        var rows = ProtoValueReaders.forResultSet(transactionRows);
+        while (rows.next()) {
+            blackhole.consume(readTransactionByName(rows));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void transactionsByIndex(Blackhole blackhole) {
+        var rows = ProtoValueReaders.forResultSet(transactionRows);
+        var transaction = YdbTransactionStorage.TRANSACTION_ROWS.compile(rows);
+        while (rows.next()) {
+            blackhole.consume(transaction.read(rows));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void accountsByName(Blackhole blackhole) {
+        var rows = ProtoValueReaders.forResultSet(accountRows);
+        while (rows.next()) {
+            blackhole.consume(readAccountByName(rows));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void accountsByIndex(Blackhole blackhole) {
+        var rows = ProtoValueReaders.forResultSet(accountRows);
+        var account = YdbAccountStorage.ACCOUNT_ROWS.compile(rows);
+        while (rows.next()) {
+            blackhole.consume(account.read(rows));
+        }
+    }
+
+    private static Transaction readTransactionByName(ResultSetReader transactions) {
+        return new Transaction(
+                transactions.getColumn("transaction_id").getUint64(),
+                transactions.getColumn("transaction_name").isOptionalItemPresent() ?
+                        transactions.getColumn("transaction_name").getText() : null,
+                transactions.getColumn("transaction_timestamp").isOptionalItemPresent() ?
+                        transactions.getColumn("transaction_timestamp").getTimestamp() : null,
+                transactions.getColumn("transaction_comment").isOptionalItemPresent() ?
+                        transactions.getColumn("transaction_comment").getText() : null
+        );
+    }
+
+    private static Account readAccountByName(ResultSetReader accounts) {
+        return new Account(
+                accounts.getColumn("account_id").getUint64(),
+                accounts.getColumn("bank_id").isOptionalItemPresent()
+                        ? accounts.getColumn("bank_id").getUint64() : null,
+                accounts.getColumn("account_name").getText(),
+                accounts.getColumn("account_description").isOptionalItemPresent()
+                        ? accounts.getColumn("account_description").getText() : null
+        );
+    }
+}
@@ -0,0 +1,129 @@
+package ru.ramlabs.gitea.stonks;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import ru.ramlabs.gitea.stonks.utils.DatabaseSupport;
+import ru.ramlabs.gitea.stonks.utils.DatabaseSupport.DatabasePath;
+import ru.ramlabs.gitea.stonks.utils.DatabaseSupport.Query;
+import ru.ramlabs.gitea.stonks.utils.DatabaseSupport.TxMode;
+import ru.ramlabs.gitea.stonks.utils.QueryMetrics;
+import ru.ramlabs.gitea.stonks.utils.SessionPoolMonitor;
+import tech.ydb.auth.iam.CloudAuthHelper;
+import tech.ydb.core.grpc.GrpcTransport;
+import tech.ydb.table.SessionRetryContext;
+import tech.ydb.table.TableClient;
+import tech.ydb.table.query.Params;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static ru.ramlabs.gitea.stonks.utils.DatabaseSupport.query;
+import static tech.ydb.table.values.PrimitiveValue.newUint64;
+
+/**
+ * Latency and RU cost of the same read query in every transaction mode.
+ * <p>
+ * Runs against real database: endpoint is taken from {@code stonks.db.endpoint} system property,
+ * credentials from environment as described in {@link CloudAuthHelper#getAuthProviderFromEnviron()}.
+ * RU per query is {@code ru / queries} from secondary results.
+ * <p>
+ * Rows are seeded for random user id of the run and deleted on tear down.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class TxModeBenchmark {
+
+    private static final Query READ_QUERY = query("benchmark.transactions.list", TxMode.ONLINE_RO, """
+            DECLARE $user_id AS uint64;
+
+            select *
+            from transactions
+            where user_id = $user_id
+            limit 51;
+            """);
+
+    private static final Query SEED_QUERY = query("benchmark.transactions.seed", """
+            DECLARE $user_id AS uint64;
+
+            upsert into transactions ( user_id, transaction_id, transaction_name )
+            select $user_id AS user_id, cast(x as uint64) AS transaction_id, 'benchmark'u AS transaction_name
+            from AS_TABLE(ListMap(ListFromRange(0, 50), ($x) -> (AsStruct($x AS x))));
+            """);
+
+    private static final Query CLEANUP_QUERY = query("benchmark.transactions.cleanup", """
+            DECLARE $user_id AS uint64;
+
+            delete from transactions
+            where user_id = $user_id;
+            """);
+
+    @Param({"SERIALIZABLE_RW", "SNAPSHOT_RO", "ONLINE_RO", "STALE_RO"})
+    public TxMode txMode;
+
+    private TableClient client;
+    private DatabaseSupport db;
+    private long userId;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Cost {
+        public double ru;
+        public long queries;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            ru = 0;
+            queries = 0;
+        }
+    }
+
+    @Setup
+    public void setup() throws Exception {
+        var transport = GrpcTransport.forConnectionString(System.getProperty("stonks.db.endpoint"))
+                .withAuthProvider(CloudAuthHelper.getAuthProviderFromEnviron())
+                .build();
+        client = TableClient.newClient(transport).build();
+
+        var environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new MapPropertySource("benchmark", Map.of(
+                "stonks.db.tx-mode." + READ_QUERY.name(), txMode.name()
+        )));
+        var meterRegistry = new SimpleMeterRegistry();
+        var sessionPool = new SessionPoolMonitor(client, meterRegistry, 0, Duration.ofSeconds(1), Duration.ofMinutes(1));
+        db = new DatabaseSupport(SessionRetryContext.create(client).build(), new QueryMetrics(meterRegistry),
+                environment, new DatabasePath(transport.getDatabase()), sessionPool);
+
+        userId = new Random().nextLong();
+        var seed = db.executeQuery(SEED_QUERY, Params.of("$user_id", newUint64(userId)));
+        seed.getStatus().expectSuccess("Cannot seed benchmark data");
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        try {
+            var cleanup = db.executeQuery(CLEANUP_QUERY, Params.of("$user_id", newUint64(userId)));
+            cleanup.getStatus().expectSuccess("Cannot delete benchmark data");
+        } finally {
+            client.close();
+        }
+    }
+
+    @Benchmark
+    public int read(Cost cost) throws Exception {
+        var result = db.executeQuery(READ_QUERY, Params.of("$user_id", newUint64(userId)));
+        result.getStatus().expectSuccess("Read failed");
+        cost.queries++;
+        if (result.getStatus().getConsumedRu() != null) {
+            cost.ru += result.getStatus().getConsumedRu();
+        }
+        return result.getValue().getResultSet(0).getRowCount();
+    }
+}
@@ -0,0 +1,137 @@
+package ru.ramlabs.gitea.stonks.loadtest;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Latencies of http requests grouped by endpoint. Every latency is kept, so percentiles are exact.
+ * Nothing is recorded until {@link #start()}, which lets warmup run through the same code.
+ */
+public class LatencyRecorder {
+
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+    private volatile boolean recording;
+    private volatile long startNanos;
+    private volatile long stopNanos;
+
+    private static class Endpoint {
+        private long[] latencies = new long[1024];
+        private int count;
+        private int errors;
+
+        synchronized void add(long latencyNanos, boolean error) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = latencyNanos;
+            if (error) {
+                errors++;
+            }
+        }
+
+        synchronized long[] sorted() {
+            var result = Arrays.copyOf(latencies, count);
+            Arrays.sort(result);
+            return result;
+        }
+
+        synchronized int errors() {
+            return errors;
+        }
+    }
+
+    public void start() {
+        startNanos = System.nanoTime();
+        recording = true;
+    }
+
+    public void stop() {
+        recording = false;
+        stopNanos = System.nanoTime();
+    }
+
+    /**
+     * @param error request failed or returned non 2xx status; its latency is still counted
+     */
+    public void record(String endpoint, long latencyNanos, boolean error) {
+        if (!recording) {
+            return;
+        }
+        endpoints.computeIfAbsent(endpoint, ignored -> new Endpoint()).add(latencyNanos, error);
+    }
+
+    public record EndpointStats(
+            String endpoint,
+            int requests,
+            int errors,
+            @JsonProperty("requests_per_second")
+            double requestsPerSecond,
+            @JsonProperty("p50_ms")
+            double p50,
+            @JsonProperty("p95_ms")
+            double p95,
+            @JsonProperty("p99_ms")
+            double p99,
+            @JsonProperty("max_ms")
+            double max
+    ) {
+
+    }
+
+    public record Report(
+            @JsonProperty("duration_seconds")
+            double durationSeconds,
+            EndpointStats total,
+            List<EndpointStats> endpoints
+    ) {
+
+    }
+
+    public Report report() {
+        double seconds = (stopNanos - startNanos) / 1e9;
+        var stats = new ArrayList<EndpointStats>();
+        var all = new ArrayList<long[]>();
+        int totalErrors = 0;
+        for (var entry : endpoints.entrySet()) {
+            var latencies = entry.getValue().sorted();
+            int errors = entry.getValue().errors();
+            stats.add(stats(entry.getKey(), latencies, errors, seconds));
+            all.add(latencies);
+            totalErrors += errors;
+        }
+        stats.sort(Comparator.comparing(EndpointStats::endpoint));
+
+        var merged = all.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        return new Report(seconds, stats("total", merged, totalErrors, seconds), stats);
+    }
+
+    private static EndpointStats stats(String endpoint, long[] sortedLatencies, int errors, double seconds) {
+        return new EndpointStats(
+                endpoint,
+                sortedLatencies.length,
+                errors,
+                sortedLatencies.length / seconds,
+                percentileMillis(sortedLatencies, 0.50),
+                percentileMillis(sortedLatencies, 0.95),
+                percentileMillis(sortedLatencies, 0.99),
+                percentileMillis(sortedLatencies, 1.0)
+        );
+    }
+
+    /**
+     * Nearest rank percentile.
+     */
+    static double percentileMillis(long[] sortedLatencies, double percentile) {
+        if (sortedLatencies.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile * sortedLatencies.length);
+        return sortedLatencies[Math.max(rank, 1) - 1] / 1e6;
+    }
+}
@@ -0,0 +1,208 @@
+package ru.ramlabs.gitea.stonks.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.ramlabs.gitea.stonks.App;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop load generator for http api.
+ * <p>
+ * Operations are started at exponentially distributed intervals with mean {@code 1 / rate}, whether previous
+ * ones completed or not, so slow responses increase concurrency instead of lowering offered load.
+ * Users are registered and given an account, an asset and a bank before the run; operations pick a random one.
+ * <p>
+ * Without {@code loadtest.url} application is started in this jvm with {@code loadtest.profiles} on random port.
+ * Default {@code memory} profile needs neither database nor network.
+ * Run with {@code ./gradlew loadTest -Ploadtest.rate=200}.
+ */
+public class LoadTest {
+
+    private static final String PASSWORD = "load-test-password";
+    private static final int SETUP_PARALLELISM = 8;
+    private static final long DRAIN_TIMEOUT_SECONDS = 30;
+
+    private record VirtualUser(String name, String auth, String accountId, String assetId) {
+
+    }
+
+    private final LoadTestConfig config;
+    private final StonksClient client;
+    private final LatencyRecorder recorder;
+    private final String runId = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong registered = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final Set<String> errors = ConcurrentHashMap.newKeySet();
+    private final List<Operation> weightedOperations = new ArrayList<>();
+
+    public LoadTest(LoadTestConfig config, StonksClient client, LatencyRecorder recorder) {
+        this.config = config;
+        this.client = client;
+        this.recorder = recorder;
+        config.mix().forEach((operation, weight) -> {
+            for (int i = 0; i < weight; i++) {
+                weightedOperations.add(operation);
+            }
+        });
+    }
+
+    public static void main(String[] args) throws Exception {
+        var config = LoadTestConfig.fromSystemProperties();
+        ConfigurableApplicationContext app = null;
+        var url = config.url();
+        if (url == null) {
+            app = new SpringApplicationBuilder(App.class)
+                    .profiles(config.profiles().toArray(String[]::new))
+                    .properties(Map.of("server.port", "0"))
+                    .run(args);
+            url = URI.create("http://localhost:" + app.getEnvironment().getProperty("local.server.port"));
+        }
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var recorder = new LatencyRecorder();
+            var loadTest = new LoadTest(config, new StonksClient(url, executor, recorder), recorder);
+            System.out.printf("Load test of %s: %.1f op/s for %s after %s warmup, %d users, mix %s%n",
+                    url, config.rate(), config.duration(), config.warmup(), config.users(), config.mix());
+
+            var report = loadTest.run();
+            loadTest.print(report);
+
+            var results = System.getProperty("loadtest.results");
+            if (results != null) {
+                var path = Path.of(results);
+                Files.createDirectories(path.toAbsolutePath().getParent());
+                new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(path.toFile(), report);
+                System.out.println("Results written to " + path.toAbsolutePath());
+            }
+        } finally {
+            if (app != null) {
+                app.close();
+            }
+        }
+    }
+
+    public LatencyRecorder.Report run() throws InterruptedException {
+        var users = setUp();
+
+        long warmupNanos = config.warmup().toNanos();
+        long end = System.nanoTime() + warmupNanos + config.duration().toNanos();
+        long measurementStart = System.nanoTime() + warmupNanos;
+        boolean measuring = false;
+        long next = System.nanoTime();
+        var random = ThreadLocalRandom.current();
+        while (next < end) {
+            long delay = next - System.nanoTime();
+            if (delay > 0) {
+                LockSupport.parkNanos(delay);
+            }
+            if (!measuring && next >= measurementStart) {
+                recorder.start();
+                measuring = true;
+            }
+            var operation = weightedOperations.get(random.nextInt(weightedOperations.size()));
+            start(operation, users.get(random.nextInt(users.size())), next);
+            next += (long) (-Math.log(1 - random.nextDouble()) / config.rate() * 1e9);
+        }
+        if (!measuring) {
+            recorder.start();
+        }
+
+        long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(DRAIN_TIMEOUT_SECONDS);
+        while (inFlight.get() > 0 && System.nanoTime() < drainDeadline) {
+            Thread.sleep(10);
+        }
+        recorder.stop();
+        return recorder.report();
+    }
+
+    private List<VirtualUser> setUp() {
+        var users = new ArrayList<VirtualUser>(config.users());
+        for (int batch = 0; batch < config.users(); batch += SETUP_PARALLELISM) {
+            var futures = new ArrayList<CompletableFuture<VirtualUser>>();
+            for (int i = batch; i < Math.min(batch + SETUP_PARALLELISM, config.users()); i++) {
+                futures.add(setUpUser());
+            }
+            futures.forEach(future -> users.add(future.join()));
+        }
+        return users;
+    }
+
+    private CompletableFuture<VirtualUser> setUpUser() {
+        var name = nextUserName();
+        return client.register(name, PASSWORD, System.nanoTime())
+                .thenCompose(ignored -> client.login(name, PASSWORD, System.nanoTime()))
+                .thenCompose(auth -> client.createAccount(auth, System.nanoTime())
+                        .thenCombine(client.createAsset(auth, System.nanoTime()),
+                                (accountId, assetId) -> new VirtualUser(name, auth, accountId, assetId))
+                        .thenCombine(client.createBank(auth, System.nanoTime()), (user, ignored) -> user));
+    }
+
+    private String nextUserName() {
+        return "lt_" + runId + "_" + registered.incrementAndGet();
+    }
+
+    private void start(Operation operation, VirtualUser user, long scheduledNanos) {
+        int current = inFlight.incrementAndGet();
+        maxInFlight.accumulateAndGet(current, Math::max);
+        execute(operation, user, scheduledNanos).whenComplete((ignored, error) -> {
+            inFlight.decrementAndGet();
+            if (error != null && errors.size() < 20) {
+                errors.add((error instanceof CompletionException ? error.getCause() : error).getMessage());
+            }
+        });
+    }
+
+    private CompletableFuture<?> execute(Operation operation, VirtualUser user, long scheduledNanos) {
+        return switch (operation) {
+            case REGISTER -> client.register(nextUserName(), PASSWORD, scheduledNanos);
+            case LOGIN -> client.login(user.name(), PASSWORD, scheduledNanos);
+            case LOGOUT -> client.login(user.name(), PASSWORD, scheduledNanos)
+                    .thenCompose(auth -> client.logout(auth, System.nanoTime()));
+            case CREATE_TRANSACTION ->
+                    client.createTransaction(user.auth(), user.accountId(), user.assetId(), scheduledNanos);
+            case LIST_TRANSACTIONS -> client.list("/api/transactions", user.auth(), scheduledNanos);
+            case LIST_ACCOUNTS -> client.list("/api/accounts", user.auth(), scheduledNanos);
+            case LIST_BANKS -> client.list("/api/banks", user.auth(), scheduledNanos);
+            case LIST_ASSETS -> client.list("/api/assets", user.auth(), scheduledNanos);
+        };
+    }
+
+    private void print(LatencyRecorder.Report report) {
+        System.out.printf("%n%-32s %9s %7s %9s %9s %9s %9s %9s%n",
+                "endpoint", "requests", "errors", "req/s", "p50 ms", "p95 ms", "p99 ms", "max ms");
+        for (var stats : report.endpoints()) {
+            printRow(stats);
+        }
+        printRow(report.total());
+        System.out.printf("%nMeasured %.1f s, max in flight %d%n", report.durationSeconds(), maxInFlight.get());
+        if (!errors.isEmpty()) {
+            System.out.println("Errors (first distinct ones):");
+            errors.forEach(error -> System.out.println("  " + error));
+        }
+    }
+
+    private static void printRow(LatencyRecorder.EndpointStats stats) {
+        System.out.printf("%-32s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f%n",
+                stats.endpoint(), stats.requests(), stats.errors(), stats.requestsPerSecond(),
+                stats.p50(), stats.p95(), stats.p99(), stats.max());
+    }
+}
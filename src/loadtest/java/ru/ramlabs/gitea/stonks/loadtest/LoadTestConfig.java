@@ -0,0 +1,72 @@
+package ru.ramlabs.gitea.stonks.loadtest;
+
+import org.jetbrains.annotations.Nullable;
+import ru.ramlabs.gitea.stonks.storage.memory.InMemoryStorage;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Load test parameters, read from {@code loadtest.*} system properties.
+ *
+ * @param url      running application; when not set application is started in process
+ * @param profiles profiles of application started in process, {@code memory} by default
+ * @param rate     operations started per second, independent of response times
+ * @param duration measured run
+ * @param warmup   run before measurement, its latencies are discarded
+ * @param users    users registered before the run, operations are spread over them
+ * @param mix      relative weight of every operation
+ */
+public record LoadTestConfig(
+        @Nullable URI url,
+        List<String> profiles,
+        double rate,
+        Duration duration,
+        Duration warmup,
+        int users,
+        Map<Operation, Integer> mix
+) {
+
+    public static final String DEFAULT_MIX = "register=1,login=2,logout=1,create-transaction=10,"
+            + "list-transactions=20,list-accounts=10,list-banks=5,list-assets=5";
+
+    public static LoadTestConfig fromSystemProperties() {
+        var url = System.getProperty("loadtest.url");
+        return new LoadTestConfig(
+                url == null || url.isBlank() ? null : URI.create(url),
+                List.of(System.getProperty("loadtest.profiles", InMemoryStorage.PROFILE).split(",")),
+                Double.parseDouble(System.getProperty("loadtest.rate", "100")),
+                Duration.parse(System.getProperty("loadtest.duration", "PT1M")),
+                Duration.parse(System.getProperty("loadtest.warmup", "PT10S")),
+                Integer.parseInt(System.getProperty("loadtest.users", "50")),
+                parseMix(System.getProperty("loadtest.mix", DEFAULT_MIX))
+        );
+    }
+
+    /**
+     * Parse {@code operation=weight} pairs separated by comma. Operations not listed are not run.
+     */
+    static Map<Operation, Integer> parseMix(String mix) {
+        var result = new EnumMap<Operation, Integer>(Operation.class);
+        for (String entry : mix.split(",")) {
+            var parts = entry.trim().split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Bad mix entry '" + entry + "', expected operation=weight");
+            }
+            int weight = Integer.parseInt(parts[1].trim());
+            if (weight < 0) {
+                throw new IllegalArgumentException("Negative weight of " + parts[0]);
+            }
+            if (weight > 0) {
+                result.put(Operation.byName(parts[0].trim()), weight);
+            }
+        }
+        if (result.isEmpty()) {
+            throw new IllegalArgumentException("Mix is empty");
+        }
+        return result;
+    }
+}
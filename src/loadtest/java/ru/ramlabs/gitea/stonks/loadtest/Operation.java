@@ -0,0 +1,38 @@
+package ru.ramlabs.gitea.stonks.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * User actions of load mix. One operation may issue several http requests, latency is reported per request.
+ */
+public enum Operation {
+    REGISTER("register"),
+    LOGIN("login"),
+    /**
+     * Login with new session and logout of it, so sessions used by other operations stay valid.
+     */
+    LOGOUT("logout"),
+    CREATE_TRANSACTION("create-transaction"),
+    LIST_TRANSACTIONS("list-transactions"),
+    LIST_ACCOUNTS("list-accounts"),
+    LIST_BANKS("list-banks"),
+    LIST_ASSETS("list-assets");
+
+    private final String mixName;
+
+    Operation(String mixName) {
+        this.mixName = mixName;
+    }
+
+    public String mixName() {
+        return mixName;
+    }
+
+    public static Operation byName(String mixName) {
+        return Arrays.stream(values())
+                .filter(operation -> operation.mixName.equals(mixName))
+                .findAny()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown operation " + mixName
+                        + ", expected one of " + Arrays.stream(values()).map(Operation::mixName).toList()));
+    }
+}
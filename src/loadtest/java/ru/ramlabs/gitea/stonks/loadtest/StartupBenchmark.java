@@ -0,0 +1,179 @@
+package ru.ramlabs.gitea.stonks.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time from process start to first successful request, for every way of starting application:
+ * <ul>
+ *     <li>{@code jvm} - plain jvm, bean definitions are built by reflection on startup</li>
+ *     <li>{@code jvm-aot-cds} - jvm with Spring AOT generated bean definitions and class data sharing archive,
+ *     which is created by training run before measurement</li>
+ *     <li>{@code native} - native image, skipped when it was not built</li>
+ * </ul>
+ * First request registers user, so it passes through security, Jackson, password hashing and storage.
+ * Process is started with {@code PORT} environment variable, as on container platform.
+ * <p>
+ * Paths are passed by {@code startupBenchmark} gradle task as {@code startup.*} system properties. Class data
+ * sharing archives only classes from jars, so classpath is made of jars, including one with AOT generated classes.
+ */
+public class StartupBenchmark {
+
+    private static final String MAIN_CLASS = "ru.ramlabs.gitea.stonks.Main";
+    private static final Duration START_TIMEOUT = Duration.ofMinutes(2);
+    private static final long POLL_INTERVAL_MILLIS = 5;
+
+    /**
+     * Milliseconds from process start to first successful response.
+     */
+    public record ModeResult(String mode, List<Long> runs, long min, long median, long max) {
+
+        static ModeResult of(String mode, List<Long> runs) {
+            var sorted = runs.stream().sorted().toList();
+            return new ModeResult(mode, runs, sorted.get(0), sorted.get(sorted.size() / 2), sorted.get(sorted.size() - 1));
+        }
+    }
+
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+    private final String java = System.getProperty("startup.java", "java");
+    private final String classpath = System.getProperty("startup.classpath");
+    private final Path cdsArchive = Path.of(System.getProperty("startup.cds-archive", "build/cds/stonks.jsa"));
+    private final Path nativeImage = Path.of(System.getProperty("startup.native-image", "build/native/nativeCompile/stonks"));
+    private final String profiles = System.getProperty("startup.profiles", "memory");
+    private final int runs = Integer.parseInt(System.getProperty("startup.runs", "5"));
+
+    public static void main(String[] args) throws Exception {
+        var benchmark = new StartupBenchmark();
+        var modes = System.getProperty("startup.modes", "jvm,jvm-aot-cds,native").split(",");
+
+        var results = new ArrayList<ModeResult>();
+        for (String mode : modes) {
+            var result = benchmark.run(mode.trim());
+            if (result != null) {
+                results.add(result);
+            }
+        }
+
+        System.out.printf("%-12s %8s %8s %8s%n", "mode", "min ms", "p50 ms", "max ms");
+        for (ModeResult result : results) {
+            System.out.printf("%-12s %8d %8d %8d%n", result.mode(), result.min(), result.median(), result.max());
+        }
+
+        var output = System.getProperty("startup.results");
+        if (output != null) {
+            var path = Path.of(output);
+            Files.createDirectories(path.toAbsolutePath().getParent());
+            new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(path.toFile(), results);
+            System.out.println("Results written to " + path.toAbsolutePath());
+        }
+    }
+
+    private ModeResult run(String mode) throws IOException, InterruptedException {
+        List<String> command = switch (mode) {
+            case "jvm" -> jvm();
+            case "jvm-aot-cds" -> {
+                //archive is valid only for the exact classpath, so it is trained again on every benchmark
+                Files.deleteIfExists(cdsArchive);
+                Files.createDirectories(cdsArchive.toAbsolutePath().getParent());
+                System.out.println("Training class data sharing archive " + cdsArchive);
+                timeToFirstRequest(jvm("-XX:ArchiveClassesAtExit=" + cdsArchive, "-Dspring.aot.enabled=true"));
+                yield jvm("-XX:SharedArchiveFile=" + cdsArchive, "-Xshare:on", "-Dspring.aot.enabled=true");
+            }
+            case "native" -> {
+                if (!Files.isExecutable(nativeImage)) {
+                    System.out.println("Skipping native mode, no " + nativeImage + ", build it with ./gradlew nativeCompile");
+                    yield null;
+                }
+                yield new ArrayList<>(List.of(nativeImage.toAbsolutePath().toString()));
+            }
+            default -> throw new IllegalArgumentException("Unknown mode " + mode);
+        };
+        if (command == null) {
+            return null;
+        }
+
+        var times = new ArrayList<Long>();
+        for (int i = 0; i < runs; i++) {
+            long millis = timeToFirstRequest(command);
+            System.out.printf("%s run %d: %d ms%n", mode, i + 1, millis);
+            times.add(millis);
+        }
+        return ModeResult.of(mode, times);
+    }
+
+    private List<String> jvm(String... jvmArgs) {
+        if (classpath == null) {
+            throw new IllegalStateException("startup.classpath is not set, run with ./gradlew startupBenchmark");
+        }
+        var command = new ArrayList<String>();
+        command.add(java);
+        command.addAll(Arrays.asList(jvmArgs));
+        command.addAll(List.of("-cp", classpath, MAIN_CLASS));
+        return command;
+    }
+
+    /**
+     * Start process with configured profiles, poll until first request succeeds and stop process gracefully,
+     * so class data sharing archive is written on exit of training run.
+     */
+    private long timeToFirstRequest(List<String> command) throws IOException, InterruptedException {
+        int port = freePort();
+        var request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/user/register"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"username\":\"startup-" + System.nanoTime() + "\",\"password\":\"startup-password\"}"))
+                .timeout(Duration.ofSeconds(10))
+                .build();
+
+        var arguments = new ArrayList<>(command);
+        arguments.add("--spring.profiles.active=" + profiles);
+        var builder = new ProcessBuilder(arguments).redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        builder.environment().put("PORT", Integer.toString(port));
+        long start = System.nanoTime();
+        var process = builder.start();
+        try {
+            long deadline = start + START_TIMEOUT.toNanos();
+            while (System.nanoTime() < deadline) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("Process exited with " + process.exitValue() + ": " + command);
+                }
+                try {
+                    var response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                    if (response.statusCode() / 100 == 2) {
+                        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    }
+                } catch (ConnectException e) {
+                    //not listening yet
+                }
+                Thread.sleep(POLL_INTERVAL_MILLIS);
+            }
+            throw new IllegalStateException("No successful response in " + START_TIMEOUT + ": " + command);
+        } finally {
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (var socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
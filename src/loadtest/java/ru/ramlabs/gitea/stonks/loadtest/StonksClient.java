@@ -0,0 +1,157 @@
+package ru.ramlabs.gitea.stonks.loadtest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Asynchronous client of stonks http api. Every request is recorded to {@link LatencyRecorder} as
+ * {@code METHOD path}, non 2xx responses complete returned future exceptionally.
+ * <p>
+ * Latency is measured from {@code scheduledNanos}, the moment request should have been sent by load schedule,
+ * so time spent waiting for a free connection is counted as well (no coordinated omission).
+ */
+public class StonksClient {
+
+    private final URI baseUrl;
+    private final HttpClient http;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final LatencyRecorder recorder;
+
+    public StonksClient(URI baseUrl, Executor executor, LatencyRecorder recorder) {
+        this.baseUrl = baseUrl;
+        this.http = HttpClient.newBuilder()
+                .executor(executor)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        this.recorder = recorder;
+    }
+
+    public static class RequestFailedException extends RuntimeException {
+        public RequestFailedException(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    public CompletableFuture<Void> register(String name, String password, long scheduledNanos) {
+        return send("POST", "/api/user/register", null, userInfo(name, password), scheduledNanos)
+                .thenApply(ignored -> null);
+    }
+
+    /**
+     * @return auth token
+     */
+    public CompletableFuture<String> login(String name, String password, long scheduledNanos) {
+        return send("POST", "/api/user/login", null, userInfo(name, password), scheduledNanos)
+                .thenApply(body -> body.get("auth").asText());
+    }
+
+    public CompletableFuture<Void> logout(String auth, long scheduledNanos) {
+        return send("POST", "/api/user/logout", auth, null, scheduledNanos).thenApply(ignored -> null);
+    }
+
+    /**
+     * @return id of new account
+     */
+    public CompletableFuture<String> createAccount(String auth, long scheduledNanos) {
+        var body = mapper.createObjectNode().put("account_name", "load test account");
+        return send("PUT", "/api/accounts", auth, body, scheduledNanos)
+                .thenApply(result -> result.get("account_id").asText());
+    }
+
+    /**
+     * @return id of new asset
+     */
+    public CompletableFuture<String> createAsset(String auth, long scheduledNanos) {
+        var body = mapper.createObjectNode()
+                .put("name", "USD")
+                .put("decimal_places", 2);
+        return send("PUT", "/api/assets", auth, body, scheduledNanos)
+                .thenApply(result -> result.get("id").asText());
+    }
+
+    public CompletableFuture<Void> createBank(String auth, long scheduledNanos) {
+        var body = mapper.createObjectNode().put("bank_name", "load test bank");
+        return send("PUT", "/api/banks", auth, body, scheduledNanos).thenApply(ignored -> null);
+    }
+
+    /**
+     * Buy of one unit paid with asset, as two deltas on one account.
+     */
+    public CompletableFuture<Void> createTransaction(String auth, String accountId, String assetId,
+                                                     long scheduledNanos) {
+        var body = mapper.createObjectNode()
+                .put("name", "load test")
+                .put("timestamp", Instant.now().toString());
+        var deltas = body.putArray("deltas");
+        deltas.addObject()
+                .put("account_id", accountId)
+                .put("asset_id", assetId)
+                .put("amount", 1)
+                .put("delta_type_id", "100");
+        deltas.addObject()
+                .put("account_id", accountId)
+                .put("asset_id", assetId)
+                .put("amount", 100)
+                .put("delta_type_id", "101");
+        return send("PUT", "/api/transactions/full", auth, body, scheduledNanos).thenApply(ignored -> null);
+    }
+
+    /**
+     * First page of user collection, e.g. {@code /api/transactions}.
+     */
+    public CompletableFuture<Void> list(String path, String auth, long scheduledNanos) {
+        return send("POST", path, auth, mapper.createObjectNode(), scheduledNanos).thenApply(ignored -> null);
+    }
+
+    private ObjectNode userInfo(String name, String password) {
+        return mapper.createObjectNode()
+                .put("username", name)
+                .put("password", password);
+    }
+
+    private CompletableFuture<JsonNode> send(String method, String path, String auth, JsonNode body,
+                                             long scheduledNanos) {
+        var request = HttpRequest.newBuilder(baseUrl.resolve(path))
+                .timeout(Duration.ofSeconds(30));
+        if (auth != null) {
+            //auth cookie is secure, so it would not be sent back over plain http by cookie handler
+            request.header("Cookie", "auth=" + auth);
+        }
+        if (body != null) {
+            request.header("Content-Type", "application/json");
+            request.method(method, HttpRequest.BodyPublishers.ofString(body.toString()));
+        } else {
+            request.method(method, HttpRequest.BodyPublishers.noBody());
+        }
+
+        var endpoint = method + " " + path;
+        return http.sendAsync(request.build(), HttpResponse.BodyHandlers.ofString()).handle((response, error) -> {
+            long latency = System.nanoTime() - scheduledNanos;
+            boolean failed = error != null || response.statusCode() / 100 != 2;
+            recorder.record(endpoint, latency, failed);
+            if (error != null) {
+                throw new RequestFailedException(endpoint + ": " + error);
+            }
+            if (failed) {
+                throw new RequestFailedException(endpoint + ": status " + response.statusCode());
+            }
+            try {
+                return response.body().isEmpty() ? mapper.nullNode() : mapper.readTree(response.body());
+            } catch (JsonProcessingException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+}
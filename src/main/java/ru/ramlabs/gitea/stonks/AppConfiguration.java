@@ -1,19 +1,23 @@
 package ru.ramlabs.gitea.stonks;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
 import org.springframework.security.core.userdetails.UserDetailsService;
-import org.springframework.security.crypto.argon2.Argon2PasswordEncoder;
 import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.provisioning.InMemoryUserDetailsManager;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+import ru.ramlabs.gitea.stonks.utils.Argon2Parameters;
 import tech.ydb.auth.AuthRpcProvider;
 import tech.ydb.auth.iam.CloudAuthHelper;
 import tech.ydb.core.impl.auth.GrpcAuthRpc;
@@ -21,6 +25,7 @@ import tech.ydb.core.impl.auth.GrpcAuthRpc;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Map;
 
 import static org.springframework.security.config.Customizer.withDefaults;
@@ -28,6 +33,8 @@ import static org.springframework.security.config.Customizer.withDefaults;
 @Configuration
 @EnableWebMvc
 @EnableWebSecurity
+@EnableScheduling
+@ImportRuntimeHints(NativeHints.class)
 @Slf4j
 public class AppConfiguration {
 
@@ -45,9 +52,24 @@ public class AppConfiguration {
     }
 
     @Bean
-    public PasswordEncoder passwordEncoder() {
+    @Lazy(false)
+    public Argon2Parameters argon2Parameters(
+            @Value("${stonks.passwords.argon2.memory-kib}") int memoryKib,
+            @Value("${stonks.passwords.argon2.iterations}") int iterations,
+            @Value("${stonks.passwords.argon2.parallelism}") int parallelism,
+            @Value("${stonks.passwords.argon2.calibration-budget}") Duration calibrationBudget,
+            @Value("${stonks.passwords.argon2.max-iterations}") int maxIterations
+    ) {
+        if (calibrationBudget.isZero()) {
+            return new Argon2Parameters(memoryKib, iterations, parallelism);
+        }
+        return Argon2Parameters.calibrate(calibrationBudget, memoryKib, parallelism, iterations, maxIterations);
+    }
+
+    @Bean
+    public PasswordEncoder passwordEncoder(Argon2Parameters argon2Parameters) {
         return new DelegatingPasswordEncoder("argon2", Map.of(
-                "argon2", Argon2PasswordEncoder.defaultsForSpringSecurity_v5_8()
+                "argon2", argon2Parameters.encoder()
         ));
     }
 
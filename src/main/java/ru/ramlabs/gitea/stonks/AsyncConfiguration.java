@@ -0,0 +1,26 @@
+package ru.ramlabs.gitea.stonks;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.time.Duration;
+
+/**
+ * Async request settings. {@code spring.mvc.async.*} properties are not applied because of {@code @EnableWebMvc}.
+ */
+@Configuration
+public class AsyncConfiguration implements WebMvcConfigurer {
+
+    private final Duration asyncTimeout;
+
+    public AsyncConfiguration(@Value("${stonks.web.async-timeout}") Duration asyncTimeout) {
+        this.asyncTimeout = asyncTimeout;
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setDefaultTimeout(asyncTimeout.toMillis());
+    }
+}
@@ -4,33 +4,67 @@ package ru.ramlabs.gitea.stonks;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.Profiles;
 import org.springframework.stereotype.Component;
+import ru.ramlabs.gitea.stonks.utils.DatabaseSupport.DatabasePath;
+import ru.ramlabs.gitea.stonks.storage.memory.InMemoryStorage;
 import tech.ydb.auth.AuthRpcProvider;
 import tech.ydb.core.grpc.GrpcTransport;
 import tech.ydb.core.impl.auth.GrpcAuthRpc;
 import tech.ydb.table.SessionRetryContext;
 import tech.ydb.table.TableClient;
 
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
 @Slf4j
 @Component
+@Profile("!" + InMemoryStorage.PROFILE)
 public class Database {
 
+    private final TableClient client;
     private final SessionRetryContext context;
+    private final DatabasePath databasePath;
 
     public Database(@Value("${stonks.db.endpoint}") String databaseEndpoint,
-                    AuthRpcProvider<GrpcAuthRpc> dbAuthProvider
+                    AuthRpcProvider<GrpcAuthRpc> dbAuthProvider,
+                    Environment environment,
+                    @Value("${stonks.db.pool.min-size}") int poolMinSize,
+                    @Value("${stonks.db.pool.max-size}") int poolMaxSize,
+                    @Value("${stonks.db.pool.max-idle-time}") Duration maxIdleTime,
+                    @Value("${stonks.db.pool.keep-alive-time}") Duration keepAliveTime
     ) {
         GrpcTransport transport = GrpcTransport.forConnectionString(databaseEndpoint)
                 .withAuthProvider(dbAuthProvider)
                 .build();
-        var client = TableClient.newClient(transport)
-                .sessionPoolSize(1, 20)
+        databasePath = new DatabasePath(transport.getDatabase());
+        //pool grows up to max size under load and shrinks back to min size by idle time
+        client = TableClient.newClient(transport)
+                .sessionPoolSize(poolMinSize, poolMaxSize)
+                .sessionMaxIdleTime(maxIdleTime)
+                .sessionKeepAliveTime(keepAliveTime)
+                .build();
+        var virtualThreads = environment.acceptsProfiles(Profiles.of(VirtualThreadsConfiguration.PROFILE));
+        context = SessionRetryContext.create(client)
+                .executor(virtualThreads ? Executors.newVirtualThreadPerTaskExecutor() : ForkJoinPool.commonPool())
                 .build();
-        context = SessionRetryContext.create(client).build();
+    }
+
+    @Bean
+    public TableClient getTableClient() {
+        return client;
     }
 
     @Bean
     public SessionRetryContext getContext() {
         return context;
     }
+
+    @Bean
+    public DatabasePath getDatabasePath() {
+        return databasePath;
+    }
 }
@@ -0,0 +1,47 @@
+package ru.ramlabs.gitea.stonks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.NativeDetector;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import ru.ramlabs.gitea.stonks.api.ApiSerializers;
+
+import java.util.List;
+
+/**
+ * Faster JSON writing: {@link ApiSerializers} for list responses and Blackbird, which replaces reflective
+ * property access of other types with generated lambdas.
+ * <p>
+ * Because of {@code @EnableWebMvc}, MVC converters use their own {@link ObjectMapper} instead of application one,
+ * so modules are registered in both. Blackbird generates classes at runtime, which native image does not support,
+ * so it is left out there; the check is done at runtime because AOT evaluates conditions at build time.
+ */
+@Configuration
+public class JacksonConfiguration implements WebMvcConfigurer {
+
+    public static void registerModules(ObjectMapper objectMapper) {
+        objectMapper.registerModule(ApiSerializers.module());
+        if (!NativeDetector.inNativeImage()) {
+            objectMapper.registerModule(new BlackbirdModule());
+        }
+    }
+
+    @Bean
+    public Jackson2ObjectMapperBuilderCustomizer apiSerializersCustomizer() {
+        return builder -> builder.postConfigurer(JacksonConfiguration::registerModules);
+    }
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        for (HttpMessageConverter<?> converter : converters) {
+            if (converter instanceof MappingJackson2HttpMessageConverter jsonConverter) {
+                registerModules(jsonConverter.getObjectMapper());
+            }
+        }
+    }
+}
@@ -1,26 +1,86 @@
 package ru.ramlabs.gitea.stonks;
 
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
+import ru.ramlabs.gitea.stonks.utils.RequestCost;
 
 import java.io.IOException;
+import java.util.UUID;
 
+/**
+ * Binds request id and {@link RequestCost} to request. Request id is taken from {@code x-request-id} header
+ * or generated. After response is completed (for async requests - after async processing ends) single access log line
+ * with database cost is written.
+ */
 @Component
 public class MDCFilter extends OncePerRequestFilter {
 
+    public static final String REQUEST_COST_ATTRIBUTE = MDCFilter.class.getName() + ".cost";
+
+    private static final Logger accessLog = LoggerFactory.getLogger("access");
+
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
             throws ServletException, IOException {
-        MDC.put("request-id", request.getHeader("x-request-id"));
+        var requestId = request.getHeader("x-request-id");
+        if (requestId == null || requestId.isBlank()) {
+            requestId = UUID.randomUUID().toString();
+        }
+        var cost = new RequestCost(requestId);
+        request.setAttribute(REQUEST_COST_ATTRIBUTE, cost);
+        long start = System.nanoTime();
+
+        MDC.put("request-id", requestId);
+        var previousCost = RequestCost.bind(cost);
         try {
             filterChain.doFilter(request, response);
         } finally {
             MDC.remove("request-id");
+            RequestCost.bind(previousCost);
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new AsyncListener() {
+                    @Override
+                    public void onComplete(AsyncEvent event) {
+                        logAccess(request, response, cost, start);
+                    }
+
+                    @Override
+                    public void onTimeout(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event) {
+                    }
+                });
+            } else {
+                logAccess(request, response, cost, start);
+            }
         }
     }
+
+    private static void logAccess(HttpServletRequest request, HttpServletResponse response, RequestCost cost, long start) {
+        accessLog.atInfo()
+                .addKeyValue("request_id", cost.requestId())
+                .addKeyValue("method", request.getMethod())
+                .addKeyValue("path", request.getRequestURI())
+                .addKeyValue("status", response.getStatus())
+                .addKeyValue("duration_ms", (System.nanoTime() - start) / 1_000_000)
+                .addKeyValue("db_round_trips", cost.roundTrips())
+                .addKeyValue("db_ms", Math.round(cost.dbMillis()))
+                .addKeyValue("db_ru", cost.ru())
+                .log("request completed");
+    }
 }
@@ -0,0 +1,94 @@
+package ru.ramlabs.gitea.stonks;
+
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.type.filter.AssignableTypeFilter;
+import org.springframework.core.type.filter.TypeFilter;
+import org.springframework.util.ClassUtils;
+import ru.ramlabs.gitea.stonks.utils.UnsignedLongToString;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reachability metadata for native image and Spring AOT, for what Spring can not infer from bean definitions
+ * and controller signatures:
+ * <ul>
+ *     <li>every record of application, since Jackson binds them by reflection, including polymorphic batch
+ *     operations and rows written directly by {@link com.fasterxml.jackson.databind.ObjectMapper}</li>
+ *     <li>serializers referenced from {@link UnsignedLongToString}, which is meta-annotation Spring does not follow</li>
+ *     <li>YDB protobuf messages, builders and enums, accessed by reflection for field accessors and text format</li>
+ *     <li>gRPC providers that gRPC loads by class name in addition to service loader</li>
+ * </ul>
+ * Registered on build time only, so classpath scanning here does not slow down startup.
+ */
+class NativeHints implements RuntimeHintsRegistrar {
+
+    private static final List<String> GRPC_PROVIDERS = List.of(
+            "io.grpc.internal.PickFirstLoadBalancerProvider",
+            "io.grpc.internal.DnsNameResolverProvider",
+            "io.grpc.util.SecretRoundRobinLoadBalancerProvider$Provider",
+            "io.grpc.netty.shaded.io.grpc.netty.NettyChannelProvider",
+            "io.grpc.netty.shaded.io.grpc.netty.UdsNettyChannelProvider"
+    );
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        var bindings = new BindingReflectionHintsRegistrar();
+        for (String record : scan("ru.ramlabs.gitea.stonks", isRecord(), classLoader)) {
+            bindings.registerReflectionHints(hints.reflection(), ClassUtils.resolveClassName(record, classLoader));
+        }
+
+        hints.reflection().registerType(UnsignedLongToString.Serializer.class, MemberCategory.INVOKE_DECLARED_CONSTRUCTORS);
+        hints.reflection().registerType(UnsignedLongToString.Deserializer.class, MemberCategory.INVOKE_DECLARED_CONSTRUCTORS);
+
+        for (String protobufType : List.of(
+                "com.google.protobuf.GeneratedMessageV3",
+                "com.google.protobuf.GeneratedMessageV3$Builder",
+                "com.google.protobuf.ProtocolMessageEnum")) {
+            if (!ClassUtils.isPresent(protobufType, classLoader)) {
+                continue;
+            }
+            var filter = new AssignableTypeFilter(ClassUtils.resolveClassName(protobufType, classLoader));
+            for (String message : scan("tech.ydb.proto", filter, classLoader)) {
+                hints.reflection().registerType(TypeReference.of(message),
+                        MemberCategory.INVOKE_PUBLIC_METHODS, MemberCategory.DECLARED_FIELDS);
+            }
+        }
+
+        for (String provider : GRPC_PROVIDERS) {
+            if (ClassUtils.isPresent(provider, classLoader)) {
+                hints.reflection().registerType(TypeReference.of(provider), MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS);
+            }
+        }
+    }
+
+    private static TypeFilter isRecord() {
+        return (reader, readerFactory) -> Record.class.getName().equals(reader.getClassMetadata().getSuperClassName());
+    }
+
+    /**
+     * Names of classes matching filter, including nested and abstract ones.
+     */
+    private static List<String> scan(String basePackage, TypeFilter filter, ClassLoader classLoader) {
+        var scanner = new ClassPathScanningCandidateComponentProvider(false) {
+            @Override
+            protected boolean isCandidateComponent(AnnotatedBeanDefinition beanDefinition) {
+                return true;
+            }
+        };
+        scanner.setResourceLoader(new DefaultResourceLoader(classLoader));
+        scanner.addIncludeFilter(filter);
+        var names = new ArrayList<String>();
+        for (var candidate : scanner.findCandidateComponents(basePackage)) {
+            names.add(candidate.getBeanClassName());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,40 @@
+package ru.ramlabs.gitea.stonks;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.concurrent.Executors;
+
+/**
+ * Opt-in execution mode, enabled with {@code virtual-threads} profile: Tomcat requests,
+ * MVC async tasks and YDB retry callbacks run on virtual threads instead of platform thread pools.
+ * YDB part is wired in {@link Database}.
+ * <p>
+ * Compare the modes on the real application and database with the load test, at a rate that keeps
+ * about 1000 requests in flight (the report prints the maximum), with and without this profile:
+ * {@code ./gradlew loadTest -Ploadtest.profiles=development,virtual-threads -Ploadtest.rate=...}.
+ */
+@Configuration
+@Profile(VirtualThreadsConfiguration.PROFILE)
+@Slf4j
+public class VirtualThreadsConfiguration implements WebMvcConfigurer {
+
+    public static final String PROFILE = "virtual-threads";
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadsProtocolHandlerCustomizer() {
+        log.info("Tomcat requests are handled on virtual threads");
+        return protocolHandler -> protocolHandler.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(new TaskExecutorAdapter(Executors.newVirtualThreadPerTaskExecutor()));
+    }
+}
@@ -0,0 +1,259 @@
+package ru.ramlabs.gitea.stonks.api;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import org.jetbrains.annotations.Nullable;
+import ru.ramlabs.gitea.stonks.api.Accounts.Account;
+import ru.ramlabs.gitea.stonks.api.Accounts.GetAccountsResult;
+import ru.ramlabs.gitea.stonks.api.Assets.Asset;
+import ru.ramlabs.gitea.stonks.api.Assets.GetAssetsResult;
+import ru.ramlabs.gitea.stonks.api.Banks.Bank;
+import ru.ramlabs.gitea.stonks.api.Banks.GetBanksResult;
+import ru.ramlabs.gitea.stonks.api.Transactions.GetTransactionsResult;
+import ru.ramlabs.gitea.stonks.api.Transactions.Transaction;
+import ru.ramlabs.gitea.stonks.api.Transactions.TransactionDelta;
+import ru.ramlabs.gitea.stonks.utils.UnsignedLongToString;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Serializers of records returned by list endpoints, writing fields straight into generator.
+ * <p>
+ * Output is the same as of annotation driven serialization of these records, but ids and timestamps are
+ * formatted into per thread buffers, without boxing ids or creating Strings and char arrays,
+ * timestamps are formatted without {@link DateTimeFormatter}, and field names are encoded once.
+ * Annotations of records are kept, they are still used for deserialization.
+ */
+public final class ApiSerializers {
+
+    private static final SerializedString TRANSACTION_ID = new SerializedString("transaction_id");
+    private static final SerializedString ACCOUNT_ID = new SerializedString("account_id");
+    private static final SerializedString BANK_ID = new SerializedString("bank_id");
+    private static final SerializedString ID = new SerializedString("id");
+    private static final SerializedString NAME = new SerializedString("name");
+    private static final SerializedString ACCOUNT_NAME = new SerializedString("account_name");
+    private static final SerializedString BANK_NAME = new SerializedString("bank_name");
+    private static final SerializedString TIMESTAMP = new SerializedString("timestamp");
+    private static final SerializedString COMMENT = new SerializedString("comment");
+    private static final SerializedString BANK_COMMENT = new SerializedString("bank_comment");
+    private static final SerializedString DESCRIPTION = new SerializedString("description");
+    private static final SerializedString DECIMAL_PLACES = new SerializedString("decimal_places");
+    private static final SerializedString DELTA_ID = new SerializedString("deltaId");
+    private static final SerializedString AMOUNT = new SerializedString("amount");
+    private static final SerializedString TRANSACTIONS = new SerializedString("transactions");
+    private static final SerializedString ACCOUNTS = new SerializedString("accounts");
+    private static final SerializedString BANKS = new SerializedString("banks");
+    private static final SerializedString ASSETS = new SerializedString("assets");
+    private static final SerializedString START_AT = new SerializedString("start_at");
+    private static final SerializedString END_BEFORE = new SerializedString("end_before");
+
+    /**
+     * Format of every timestamp in api and exports, in UTC with microseconds.
+     */
+    static final String TIMESTAMP_PATTERN = "yyyy-MM-dd'T'HH:mm:ss.SSSSSS'Z'";
+    /**
+     * Formatter of {@link #TIMESTAMP_PATTERN}, here used for years that do not fit in four digits.
+     */
+    static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter
+            .ofPattern(TIMESTAMP_PATTERN)
+            .withZone(ZoneOffset.UTC);
+    private static final int TIMESTAMP_LENGTH = "yyyy-MM-ddTHH:mm:ss.SSSSSSZ".length();
+    /**
+     * Generator copies written chars, so one buffer per thread is reused by every timestamp.
+     */
+    private static final ThreadLocal<char[]> TIMESTAMP_BUFFER =
+            ThreadLocal.withInitial(() -> new char[TIMESTAMP_LENGTH]);
+
+    private ApiSerializers() {
+    }
+
+    @FunctionalInterface
+    private interface Writer<T> {
+        void write(JsonGenerator gen, T value) throws IOException;
+    }
+
+    public static Module module() {
+        var module = new SimpleModule("stonks-api-serializers");
+        module.addSerializer(serializer(Transaction.class, ApiSerializers::writeTransaction));
+        module.addSerializer(serializer(TransactionDelta.class, ApiSerializers::writeDelta));
+        module.addSerializer(serializer(Account.class, ApiSerializers::writeAccount));
+        module.addSerializer(serializer(Bank.class, ApiSerializers::writeBank));
+        module.addSerializer(serializer(Asset.class, ApiSerializers::writeAsset));
+        module.addSerializer(serializer(GetTransactionsResult.class, (gen, page) -> writePage(gen,
+                TRANSACTIONS, page.transactions(), ApiSerializers::writeTransaction, page.startAt(), page.endBefore())));
+        module.addSerializer(serializer(GetAccountsResult.class, (gen, page) -> writePage(gen,
+                ACCOUNTS, page.accounts(), ApiSerializers::writeAccount, page.startAt(), page.endBefore())));
+        module.addSerializer(serializer(GetBanksResult.class, (gen, page) -> writePage(gen,
+                BANKS, page.banks(), ApiSerializers::writeBank, page.startAt(), page.endBefore())));
+        module.addSerializer(serializer(GetAssetsResult.class, (gen, page) -> writePage(gen,
+                ASSETS, page.assets(), ApiSerializers::writeAsset, page.startAt(), page.endBefore())));
+        return module;
+    }
+
+    private static <T> StdSerializer<T> serializer(Class<T> type, Writer<T> writer) {
+        return new StdSerializer<>(type) {
+            @Override
+            public void serialize(T value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+                writer.write(gen, value);
+            }
+        };
+    }
+
+    private static void writeTransaction(JsonGenerator gen, Transaction transaction) throws IOException {
+        gen.writeStartObject(transaction);
+        gen.writeFieldName(TRANSACTION_ID);
+        UnsignedLongToString.Serializer.write(gen, transaction.transactionId());
+        gen.writeFieldName(NAME);
+        gen.writeString(transaction.name());
+        gen.writeFieldName(TIMESTAMP);
+        writeTimestamp(gen, transaction.timestamp());
+        gen.writeFieldName(COMMENT);
+        gen.writeString(transaction.comment());
+        gen.writeEndObject();
+    }
+
+    private static void writeDelta(JsonGenerator gen, TransactionDelta delta) throws IOException {
+        gen.writeStartObject(delta);
+        gen.writeFieldName(DELTA_ID);
+        gen.writeNumber(delta.deltaId());
+        gen.writeFieldName(AMOUNT);
+        gen.writeNumber(delta.amount());
+        gen.writeEndObject();
+    }
+
+    private static void writeAccount(JsonGenerator gen, Account account) throws IOException {
+        gen.writeStartObject(account);
+        gen.writeFieldName(ACCOUNT_ID);
+        UnsignedLongToString.Serializer.write(gen, account.accountId());
+        gen.writeFieldName(BANK_ID);
+        writeNullableId(gen, account.bankId());
+        gen.writeFieldName(ACCOUNT_NAME);
+        gen.writeString(account.name());
+        gen.writeFieldName(DESCRIPTION);
+        gen.writeString(account.description());
+        gen.writeEndObject();
+    }
+
+    private static void writeBank(JsonGenerator gen, Bank bank) throws IOException {
+        gen.writeStartObject(bank);
+        gen.writeFieldName(BANK_ID);
+        UnsignedLongToString.Serializer.write(gen, bank.bankId());
+        gen.writeFieldName(BANK_NAME);
+        gen.writeString(bank.name());
+        gen.writeFieldName(BANK_COMMENT);
+        gen.writeString(bank.comment());
+        gen.writeEndObject();
+    }
+
+    private static void writeAsset(JsonGenerator gen, Asset asset) throws IOException {
+        gen.writeStartObject(asset);
+        gen.writeFieldName(ID);
+        UnsignedLongToString.Serializer.write(gen, asset.id());
+        gen.writeFieldName(NAME);
+        gen.writeString(asset.name());
+        gen.writeFieldName(COMMENT);
+        gen.writeString(asset.comment());
+        gen.writeFieldName(DECIMAL_PLACES);
+        gen.writeNumber(asset.decimalPlaces());
+        gen.writeEndObject();
+    }
+
+    /**
+     * Page of keyset pagination, page bounds are omitted when not set.
+     */
+    private static <T> void writePage(JsonGenerator gen, SerializedString itemsName, List<T> items, Writer<T> item,
+                                      @Nullable Long startAt, @Nullable Long endBefore) throws IOException {
+        gen.writeStartObject();
+        gen.writeFieldName(itemsName);
+        if (items == null) {
+            gen.writeNull();
+        } else {
+            gen.writeStartArray(items, items.size());
+            for (T value : items) {
+                if (value == null) {
+                    gen.writeNull();
+                } else {
+                    item.write(gen, value);
+                }
+            }
+            gen.writeEndArray();
+        }
+        if (startAt != null) {
+            gen.writeFieldName(START_AT);
+            UnsignedLongToString.Serializer.write(gen, startAt);
+        }
+        if (endBefore != null) {
+            gen.writeFieldName(END_BEFORE);
+            UnsignedLongToString.Serializer.write(gen, endBefore);
+        }
+        gen.writeEndObject();
+    }
+
+    private static void writeNullableId(JsonGenerator gen, @Nullable Long id) throws IOException {
+        if (id == null) {
+            gen.writeNull();
+        } else {
+            UnsignedLongToString.Serializer.write(gen, id);
+        }
+    }
+
+    /**
+     * Write timestamp in UTC with microseconds, as {@code yyyy-MM-dd'T'HH:mm:ss.SSSSSS'Z'}.
+     */
+    static void writeTimestamp(JsonGenerator gen, @Nullable Instant timestamp) throws IOException {
+        if (timestamp == null) {
+            gen.writeNull();
+            return;
+        }
+        long seconds = timestamp.getEpochSecond();
+        long days = Math.floorDiv(seconds, 86_400);
+        int secondOfDay = (int) Math.floorMod(seconds, 86_400);
+
+        //civil date from days since epoch, in 400 year eras starting at March 1st
+        long shifted = days + 719_468;
+        long era = Math.floorDiv(shifted, 146_097);
+        long dayOfEra = shifted - era * 146_097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long monthIndex = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * monthIndex + 2) / 5 + 1);
+        int month = (int) (monthIndex < 10 ? monthIndex + 3 : monthIndex - 9);
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        if (year < 0 || year > 9999) {
+            gen.writeString(TIMESTAMP_FORMAT.format(timestamp));
+            return;
+        }
+
+        var buffer = TIMESTAMP_BUFFER.get();
+        digits(buffer, 0, (int) year, 4);
+        buffer[4] = '-';
+        digits(buffer, 5, month, 2);
+        buffer[7] = '-';
+        digits(buffer, 8, day, 2);
+        buffer[10] = 'T';
+        digits(buffer, 11, secondOfDay / 3600, 2);
+        buffer[13] = ':';
+        digits(buffer, 14, secondOfDay / 60 % 60, 2);
+        buffer[16] = ':';
+        digits(buffer, 17, secondOfDay % 60, 2);
+        buffer[19] = '.';
+        digits(buffer, 20, timestamp.getNano() / 1000, 6);
+        buffer[26] = 'Z';
+        gen.writeString(buffer, 0, TIMESTAMP_LENGTH);
+    }
+
+    private static void digits(char[] buffer, int offset, int value, int length) {
+        for (int i = offset + length - 1; i >= offset; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+}
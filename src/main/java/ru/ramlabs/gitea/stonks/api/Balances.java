@@ -1,56 +1,120 @@
 package ru.ramlabs.gitea.stonks.api;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import lombok.extern.slf4j.Slf4j;
-import org.intellij.lang.annotations.Language;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
-import tech.ydb.table.SessionRetryContext;
-import tech.ydb.table.query.Params;
-import tech.ydb.table.settings.ExecuteDataQuerySettings;
-import tech.ydb.table.transaction.TxControl;
+import org.springframework.web.server.ResponseStatusException;
+import ru.ramlabs.gitea.stonks.storage.BalanceStorage;
+import ru.ramlabs.gitea.stonks.utils.UnsignedLongToString;
 
-import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 
+import static ru.ramlabs.gitea.stonks.utils.DatabaseSupport.await;
+
+/**
+ * Account balances. Balances are stored separately from deltas and updated atomically with every delta insert,
+ * so reading balance does not depend on history length.
+ * <p>
+ * Stored balances can be verified against (and rebuilt from) deltas.
+ */
 @Component
+@Lazy(false)
 @Slf4j
 public class Balances {
 
-    private final SessionRetryContext db;
-
-    public Balances(SessionRetryContext db) {
-        this.db = db;
-    }
-
-    public void getAccountBalance(long userId, long accountId) throws ExecutionException, InterruptedException {
-        @Language("SQL")
-        var getDeltaTypesQuery = """
-                            
-                select transaction_deltas.asset_id,
-                sum(transaction_deltas.delta_amount *cast(delta_types.delta_type_multiplier as int64))
-                from transaction_deltas
-                left join delta_types on transaction_deltas.delta_type_id = delta_types.delta_type_id
-                where account_id = $accountId
-                group by transaction_deltas.asset_id;
-                """;
-
-        var queryResult = db.supplyResult(session -> session.executeDataQuery(
-                getDeltaTypesQuery, TxControl.serializableRw(), Params.empty(),
-                new ExecuteDataQuerySettings().setReportCostInfo(true))).get();
-        var transactions = queryResult.getValue().getResultSet(0);
-
-        var result = new ArrayList<Transactions.DeltaType>();
-
-        while (transactions.next()) {
-            result.add(new Transactions.DeltaType(
-                    transactions.getColumn("delta_type_id").getUint64(),
-                    transactions.getColumn("delta_type_name").getText(),
-                    transactions.getColumn("delta_type_multiplier").getInt8()
-            ));
-        }
+    private static final int VERIFY_USERS_BATCH = 1000;
+
+    private final BalanceStorage storage;
+    private final boolean repairOnVerify;
+
+    public Balances(BalanceStorage storage, @Value("${stonks.balances.verify.repair}") boolean repairOnVerify) {
+        this.storage = storage;
+        this.repairOnVerify = repairOnVerify;
+    }
+
+    public record AssetBalance(
+            @JsonProperty("asset_id")
+            @JsonSerialize(using = UnsignedLongToString.Serializer.class)
+            @JsonDeserialize(using = UnsignedLongToString.Deserializer.class)
+            long assetId,
+            long balance
+    ) {
 
-        log.info("Consumed {} RU", queryResult.getStatus().getConsumedRu());
-        
     }
 
+    public record VerifyResult(
+            long mismatches,
+            boolean rebuilt
+    ) {
+
+    }
+
+    public List<AssetBalance> getAccountBalance(long userId, long accountId) throws ExecutionException, InterruptedException {
+        return await(getAccountBalanceAsync(userId, accountId));
+    }
+
+    public CompletableFuture<List<AssetBalance>> getAccountBalanceAsync(long userId, long accountId) {
+        return storage.balances(userId, accountId);
+    }
+
+    /**
+     * Compare stored balances of user with balances computed from deltas.
+     *
+     * @param rebuild replace stored balances with computed ones
+     */
+    public VerifyResult verifyUserBalances(long userId, boolean rebuild) throws ExecutionException, InterruptedException {
+        return await(verifyUserBalancesAsync(userId, rebuild));
+    }
+
+    public CompletableFuture<VerifyResult> verifyUserBalancesAsync(long userId, boolean rebuild) {
+        return storage.verify(userId, rebuild).thenApply(mismatches -> new VerifyResult(mismatches, rebuild));
+    }
+
+    /**
+     * Verify balances of all users. Mismatches are logged and, if enabled, rebuilt from deltas.
+     * Disabled unless {@code stonks.balances.verify.cron} is set.
+     */
+    @Scheduled(cron = "${stonks.balances.verify.cron}")
+    public void verifyAllBalances() throws ExecutionException, InterruptedException {
+        long start = 0;
+        long checked = 0;
+        long broken = 0;
+
+        while (true) {
+            List<Long> userIds;
+            try {
+                userIds = await(storage.userIds(start, VERIFY_USERS_BATCH));
+            } catch (ResponseStatusException e) {
+                log.warn("Cannot list users for balance verification: {}", e.getReason());
+                return;
+            }
+
+            for (long userId : userIds) {
+                checked++;
+                var result = verifyUserBalances(userId, false);
+                if (result.mismatches() > 0) {
+                    broken++;
+                    log.warn("User {} has {} mismatched balances", Long.toUnsignedString(userId), result.mismatches());
+                    if (repairOnVerify) {
+                        verifyUserBalances(userId, true);
+                    }
+                }
+            }
+
+            if (userIds.size() < VERIFY_USERS_BATCH || userIds.get(userIds.size() - 1) == -1L) {
+                break;
+            }
+            start = userIds.get(userIds.size() - 1) + 1;
+        }
+
+        log.info("Verified balances of {} users, {} users had mismatches", checked, broken);
+    }
 
 }
@@ -0,0 +1,251 @@
+package ru.ramlabs.gitea.stonks.api;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import ru.ramlabs.gitea.stonks.api.Accounts.Account;
+import ru.ramlabs.gitea.stonks.api.Assets.Asset;
+import ru.ramlabs.gitea.stonks.api.Banks.Bank;
+import ru.ramlabs.gitea.stonks.api.Transactions.Transaction;
+import ru.ramlabs.gitea.stonks.api.Transactions.TransactionDelta;
+import ru.ramlabs.gitea.stonks.storage.BatchStorage;
+import ru.ramlabs.gitea.stonks.storage.BatchStorage.Batch;
+import ru.ramlabs.gitea.stonks.storage.BatchStorage.BatchDelta;
+import ru.ramlabs.gitea.stonks.storage.TransactionStorage.DeltaRow;
+import ru.ramlabs.gitea.stonks.utils.IdGenerator;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static ru.ramlabs.gitea.stonks.utils.DatabaseSupport.await;
+
+/**
+ * Several create operations of one user applied atomically, with one commit.
+ * <p>
+ * Ids of created entities are generated before write, so later operation can reference entity created by
+ * earlier one as {@code "$<operation index>"} instead of id.
+ */
+@Component
+public class Batches {
+
+    public static final int MAX_OPERATIONS = 100;
+
+    private final BatchStorage storage;
+    private final DeltaTypes deltaTypes;
+    private final IdGenerator idGenerator;
+
+    public Batches(BatchStorage storage, DeltaTypes deltaTypes, IdGenerator idGenerator) {
+        this.storage = storage;
+        this.deltaTypes = deltaTypes;
+        this.idGenerator = idGenerator;
+    }
+
+    /**
+     * Id of existing entity, or of entity created by earlier operation of the same batch.
+     */
+    public record Ref(@Nullable Long id, int operation) {
+
+        /**
+         * @param value unsigned id or {@code $<operation index>}
+         */
+        @JsonCreator
+        public static Ref parse(String value) {
+            if (value.startsWith("$")) {
+                return new Ref(null, Integer.parseInt(value.substring(1)));
+            }
+            return new Ref(Long.parseUnsignedLong(value), -1);
+        }
+
+        public static Ref id(long id) {
+            return new Ref(id, -1);
+        }
+
+        public static Ref operation(int operation) {
+            return new Ref(null, operation);
+        }
+    }
+
+    @JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "op")
+    @JsonSubTypes({
+            @JsonSubTypes.Type(value = AddBank.class, name = "add_bank"),
+            @JsonSubTypes.Type(value = CreateAccount.class, name = "create_account"),
+            @JsonSubTypes.Type(value = AddAsset.class, name = "add_asset"),
+            @JsonSubTypes.Type(value = CreateTransaction.class, name = "create_transaction"),
+            @JsonSubTypes.Type(value = AddDelta.class, name = "add_delta")
+    })
+    public sealed interface Operation permits AddBank, CreateAccount, AddAsset, CreateTransaction, AddDelta {
+
+    }
+
+    public record AddBank(
+            @JsonProperty("bank_name")
+            String name,
+            @JsonProperty("bank_comment")
+            @Nullable
+            String comment
+    ) implements Operation {
+
+    }
+
+    public record CreateAccount(
+            @JsonProperty("account_name")
+            String name,
+            @Nullable
+            String description,
+            @JsonProperty("bank_id")
+            @Nullable
+            Ref bankId
+    ) implements Operation {
+
+    }
+
+    public record AddAsset(
+            String name,
+            @Nullable
+            String comment,
+            @JsonProperty("decimal_places")
+            int decimalPlaces
+    ) implements Operation {
+
+    }
+
+    public record CreateTransaction(
+            @Nullable
+            String name,
+            @Nullable
+            String comment,
+            @Nullable
+            Instant timestamp
+    ) implements Operation {
+
+    }
+
+    public record AddDelta(
+            @JsonProperty("transaction_id")
+            Ref transactionId,
+            @JsonProperty("account_id")
+            Ref accountId,
+            @JsonProperty("asset_id")
+            Ref assetId,
+            long amount,
+            @JsonProperty("delta_type_id")
+            long deltaTypeId
+    ) implements Operation {
+
+    }
+
+    /**
+     * @param results created entity for every operation, in order of operations
+     */
+    public record BatchResult(List<Object> results) {
+
+    }
+
+    public BatchResult execute(long userId, List<Operation> operations) throws ExecutionException, InterruptedException {
+        return await(executeAsync(userId, operations));
+    }
+
+    /**
+     * @throws ResponseStatusException with 400 when operation is invalid or references operation of wrong kind,
+     *                                 or (in future) 404 when delta references missing transaction
+     */
+    public CompletableFuture<BatchResult> executeAsync(long userId, List<Operation> operations) {
+        if (operations.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "No operations");
+        }
+        if (operations.size() > MAX_OPERATIONS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Too many operations, max " + MAX_OPERATIONS);
+        }
+
+        var ids = new long[operations.size()];
+        var results = new ArrayList<Object>(operations.size());
+        var banks = new ArrayList<Bank>();
+        var accounts = new ArrayList<Account>();
+        var assets = new ArrayList<Asset>();
+        var transactions = new ArrayList<Transaction>();
+        var deltas = new ArrayList<BatchDelta>();
+
+        for (int i = 0; i < operations.size(); i++) {
+            ids[i] = idGenerator.nextId();
+            switch (operations.get(i)) {
+                case AddBank bank -> {
+                    requireSet(bank.name(), i, "bank_name");
+                    var created = new Bank(ids[i], bank.name(), bank.comment() == null ? "" : bank.comment());
+                    banks.add(created);
+                    results.add(created);
+                }
+                case CreateAccount account -> {
+                    requireSet(account.name(), i, "account_name");
+                    var bankId = account.bankId() == null ? null
+                            : resolve(account.bankId(), i, AddBank.class, operations, ids);
+                    var created = new Account(ids[i], bankId, account.name(), account.description());
+                    accounts.add(created);
+                    results.add(created);
+                }
+                case AddAsset asset -> {
+                    requireSet(asset.name(), i, "name");
+                    var created = new Asset(ids[i], asset.name(), asset.comment(), asset.decimalPlaces());
+                    assets.add(created);
+                    results.add(created);
+                }
+                case CreateTransaction transaction -> {
+                    var created = new Transaction(ids[i], transaction.name(), transaction.timestamp(),
+                            transaction.comment());
+                    transactions.add(created);
+                    results.add(created);
+                }
+                case AddDelta delta -> {
+                    requireSet(delta.transactionId(), i, "transaction_id");
+                    requireSet(delta.accountId(), i, "account_id");
+                    requireSet(delta.assetId(), i, "asset_id");
+                    if (delta.amount() < 0) {
+                        throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                                "Operation " + i + ": delta amount must not be negative");
+                    }
+                    var deltaType = deltaTypes.require(delta.deltaTypeId());
+                    deltas.add(new BatchDelta(
+                            resolve(delta.transactionId(), i, CreateTransaction.class, operations, ids),
+                            new DeltaRow(
+                                    ids[i],
+                                    resolve(delta.accountId(), i, CreateAccount.class, operations, ids),
+                                    resolve(delta.assetId(), i, AddAsset.class, operations, ids),
+                                    delta.amount(),
+                                    delta.deltaTypeId(),
+                                    deltaType.multiplier()
+                            )));
+                    results.add(new TransactionDelta(ids[i], delta.amount()));
+                }
+            }
+        }
+
+        return storage.insertBatch(userId, new Batch(banks, accounts, assets, transactions, deltas))
+                .thenApply(ignored -> new BatchResult(results));
+    }
+
+    private static void requireSet(@Nullable Object value, int operation, String field) {
+        if (value == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Operation " + operation + ": " + field + " not set");
+        }
+    }
+
+    private static long resolve(Ref ref, int current, Class<? extends Operation> kind, List<Operation> operations,
+                                long[] ids) {
+        if (ref.id() != null) {
+            return ref.id();
+        }
+        int target = ref.operation();
+        if (target < 0 || target >= current || !kind.isInstance(operations.get(target))) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Operation " + current + ": $" + target + " is not earlier " + kind.getSimpleName() + " operation");
+        }
+        return ids[target];
+    }
+}
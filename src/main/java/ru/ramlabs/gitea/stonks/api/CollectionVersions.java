@@ -0,0 +1,89 @@
+package ru.ramlabs.gitea.stonks.api;
+
+import org.jetbrains.annotations.Nullable;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import ru.ramlabs.gitea.stonks.api.KeysetPagination.PageRequest;
+import ru.ramlabs.gitea.stonks.storage.CollectionVersionStorage;
+import ru.ramlabs.gitea.stonks.storage.CollectionVersionStorage.Collection;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Conditional list responses. ETag of a page is made of user id, collection version and exact page request,
+ * so a repeated request with {@code If-None-Match} is answered with 304 after one point read of version,
+ * without reading the list. User id is part of it because versions of different users are equal,
+ * e.g. 0 for every new user.
+ * <p>
+ * 304 is defined only for GET and HEAD, so only GET list requests are conditional. POST list requests
+ * are always answered with the list and its ETag, which GET of the same page accepts.
+ * <p>
+ * Version is read before the list: if a write happens in between, the list is newer than its ETag,
+ * and the next request just reads it again. Versions are stored in database, not cached per instance,
+ * so every instance gives the same answer right after a write.
+ */
+@Component
+public class CollectionVersions {
+
+    private final CollectionVersionStorage storage;
+
+    public CollectionVersions(CollectionVersionStorage storage) {
+        this.storage = storage;
+    }
+
+    public <T> CompletableFuture<ResponseEntity<T>> conditional(long userId, Collection collection, PageRequest page,
+                                                                @Nullable String ifNoneMatch,
+                                                                Supplier<CompletableFuture<T>> read) {
+        return storage.version(userId, collection).thenCompose(version -> {
+            var etag = etag(userId, collection, version, page);
+            if (matches(ifNoneMatch, etag)) {
+                return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                        .eTag(etag)
+                        .<T>build());
+            }
+            return read.get().thenApply(body -> ResponseEntity.ok().eTag(etag).body(body));
+        });
+    }
+
+    /**
+     * List with its ETag, without checking {@code If-None-Match}.
+     */
+    public <T> CompletableFuture<ResponseEntity<T>> tagged(long userId, Collection collection, PageRequest page,
+                                                           Supplier<CompletableFuture<T>> read) {
+        return conditional(userId, collection, page, null, read);
+    }
+
+    static String etag(long userId, Collection collection, long version, PageRequest page) {
+        return "\"" + Long.toUnsignedString(userId) + "-" + collection.key() + "-" + Long.toUnsignedString(version)
+                + "-s" + unsigned(page.startAt()) + "-e" + unsigned(page.endBefore())
+                + "-n" + (page.pageSize() == null ? "" : page.pageSize()) + "\"";
+    }
+
+    private static String unsigned(@Nullable Long value) {
+        return value == null ? "" : Long.toUnsignedString(value);
+    }
+
+    /**
+     * Weak comparison, as required for {@code If-None-Match}.
+     */
+    static boolean matches(@Nullable String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            var tag = candidate.trim();
+            if (tag.equals("*")) {
+                return true;
+            }
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
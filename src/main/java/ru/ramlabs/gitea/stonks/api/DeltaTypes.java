@@ -0,0 +1,96 @@
+package ru.ramlabs.gitea.stonks.api;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import ru.ramlabs.gitea.stonks.api.Transactions.DeltaType;
+import ru.ramlabs.gitea.stonks.storage.DeltaTypeStorage;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import static ru.ramlabs.gitea.stonks.utils.DatabaseSupport.await;
+
+/**
+ * In-memory copy of delta types reference table.
+ * <p>
+ * Table is loaded on startup and reloaded every {@code stonks.delta-types.refresh}. Every load replaces
+ * immutable snapshot at once, so readers never see partially updated data.
+ */
+@Component
+@Lazy(false)
+@Slf4j
+public class DeltaTypes {
+
+    private final DeltaTypeStorage storage;
+    private final ObjectMapper objectMapper;
+
+    private volatile Snapshot snapshot;
+
+    public DeltaTypes(DeltaTypeStorage storage, ObjectMapper objectMapper) {
+        this.storage = storage;
+        this.objectMapper = objectMapper;
+    }
+
+    private record Snapshot(Map<Long, DeltaType> byId, List<DeltaType> list, byte[] json) {
+
+    }
+
+    @PostConstruct
+    public void load() throws ExecutionException, InterruptedException, JsonProcessingException {
+        var list = await(storage.deltaTypes());
+        var byId = new HashMap<Long, DeltaType>();
+        for (DeltaType deltaType : list) {
+            byId.put(deltaType.id(), deltaType);
+        }
+
+        snapshot = new Snapshot(Map.copyOf(byId), List.copyOf(list), objectMapper.writeValueAsBytes(list));
+        log.debug("Loaded {} delta types", list.size());
+    }
+
+    @Scheduled(fixedDelayString = "${stonks.delta-types.refresh}", initialDelayString = "${stonks.delta-types.refresh}")
+    public void refresh() {
+        try {
+            load();
+        } catch (Exception e) {
+            //keep serving previous snapshot
+            log.warn("Cannot refresh delta types", e);
+        }
+    }
+
+    public List<DeltaType> all() {
+        return snapshot.list();
+    }
+
+    /**
+     * @return all delta types serialized as json array, shared between callers, so it must not be modified
+     */
+    public byte[] json() {
+        return snapshot.json();
+    }
+
+    @Nullable
+    public DeltaType get(long deltaTypeId) {
+        return snapshot.byId().get(deltaTypeId);
+    }
+
+    /**
+     * @throws ResponseStatusException when delta type does not exist
+     */
+    public DeltaType require(long deltaTypeId) {
+        var deltaType = get(deltaTypeId);
+        if (deltaType == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown delta type");
+        }
+        return deltaType;
+    }
+}
@@ -0,0 +1,265 @@
+package ru.ramlabs.gitea.stonks.api;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.ramlabs.gitea.stonks.storage.TransactionStorage;
+import ru.ramlabs.gitea.stonks.utils.UnsignedLongToString;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+/**
+ * Full history export. One row per delta, transaction columns are repeated in every row of transaction,
+ * transactions without deltas produce single row without delta columns.
+ * <p>
+ * Rows are streamed from consistent snapshot of storage through bounded queue of parts, so memory does not depend on
+ * history size. When client reads slowly, queue fills up and storage stream waits for it, blocking storage thread.
+ * Wait is limited by {@code stonks.export.stall-timeout}: client that does not read for that long gets broken stream.
+ * When response fails, storage stream is cancelled and parts read after that are dropped.
+ */
+@Component
+@Slf4j
+public class Exports {
+
+    private final TransactionStorage storage;
+    private final ObjectMapper objectMapper;
+    private final int bufferedParts;
+    private final Duration stallTimeout;
+
+    public Exports(TransactionStorage storage,
+                   ObjectMapper objectMapper,
+                   @Value("${stonks.export.buffered-parts}") int bufferedParts,
+                   @Value("${stonks.export.stall-timeout}") Duration stallTimeout) {
+        this.storage = storage;
+        this.objectMapper = objectMapper;
+        this.bufferedParts = bufferedParts;
+        this.stallTimeout = stallTimeout;
+    }
+
+    public enum Format {
+        NDJSON("application/x-ndjson", "ndjson"),
+        CSV("text/csv", "csv");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String contentType() {
+            return contentType;
+        }
+
+        public String extension() {
+            return extension;
+        }
+    }
+
+    public record ExportRow(
+            @JsonProperty("transaction_id")
+            @JsonSerialize(using = UnsignedLongToString.Serializer.class)
+            long transactionId,
+            @JsonProperty("transaction_name")
+            String transactionName,
+            @JsonProperty("transaction_timestamp")
+            @JsonFormat(shape = JsonFormat.Shape.STRING,
+                    timezone = "UTC",
+                    pattern = ApiSerializers.TIMESTAMP_PATTERN
+            )
+            Instant transactionTimestamp,
+            @JsonProperty("transaction_comment")
+            String transactionComment,
+            @JsonProperty("delta_id")
+            @JsonSerialize(using = UnsignedLongToString.Serializer.class)
+            Long deltaId,
+            @JsonProperty("account_id")
+            @JsonSerialize(using = UnsignedLongToString.Serializer.class)
+            Long accountId,
+            @JsonProperty("asset_id")
+            @JsonSerialize(using = UnsignedLongToString.Serializer.class)
+            Long assetId,
+            @JsonProperty("delta_amount")
+            Long deltaAmount,
+            @JsonProperty("delta_type_id")
+            @JsonSerialize(using = UnsignedLongToString.Serializer.class)
+            Long deltaTypeId
+    ) {
+
+    }
+
+    private static final String CSV_HEADER = "transaction_id,transaction_name,transaction_timestamp,transaction_comment,"
+            + "delta_id,account_id,asset_id,delta_amount,delta_type_id\n";
+
+    /**
+     * Marks end of stream in parts queue.
+     */
+    private record End(@Nullable Throwable error) {
+
+    }
+
+    /**
+     * State of one export, shared by storage stream and response writer.
+     */
+    private final class Export {
+        final BlockingQueue<Object> parts = new ArrayBlockingQueue<>(bufferedParts);
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        volatile CompletableFuture<Void> stream;
+
+        /**
+         * Called on storage thread, blocks while client is behind. Does nothing after export is cancelled.
+         */
+        void enqueue(Object item) {
+            long deadline = System.nanoTime() + stallTimeout.toNanos();
+            try {
+                while (!cancelled.get()) {
+                    if (parts.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                    if (System.nanoTime() - deadline > 0) {
+                        cancel(new TimeoutException("Client did not read export for " + stallTimeout));
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancel(e);
+            }
+        }
+
+        /**
+         * Stop storage stream and drop buffered parts. Writer, if it still waits for parts, gets {@code reason}.
+         */
+        void cancel(Throwable reason) {
+            if (cancelled.compareAndSet(false, true)) {
+                parts.clear();
+                parts.offer(new End(reason));
+                var stream = this.stream;
+                if (stream != null) {
+                    stream.cancel(true);
+                }
+            }
+        }
+    }
+
+    public StreamingResponseBody exportUserHistory(long userId, Format format) {
+        return outputStream -> {
+            var export = new Export();
+            export.stream = storage.exportHistory(userId, export::enqueue);
+            export.stream.whenComplete((result, error) -> export.enqueue(new End(error)));
+            if (export.cancelled.get()) {
+                //stalled before stream was assigned
+                export.stream.cancel(true);
+            }
+
+            try {
+                write(export.parts, format, outputStream);
+            } catch (IOException | RuntimeException e) {
+                export.cancel(e);
+                throw e;
+            }
+        };
+    }
+
+    private void write(BlockingQueue<Object> parts, Format format, OutputStream outputStream) throws IOException {
+        var writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
+        if (format == Format.CSV) {
+            writer.write(CSV_HEADER);
+        }
+
+        long rows = 0;
+        while (true) {
+            Object next;
+            try {
+                next = parts.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Export interrupted", e);
+            }
+
+            if (next instanceof End end) {
+                if (end.error() != null) {
+                    //response is already committed, so the only way to report error is to break the stream
+                    throw new IOException("Export failed", end.error());
+                }
+                break;
+            }
+
+            @SuppressWarnings("unchecked")
+            var part = (List<ExportRow>) next;
+            for (ExportRow row : part) {
+                if (format == Format.CSV) {
+                    writeCsv(writer, row);
+                } else {
+                    writer.write(objectMapper.writeValueAsString(row));
+                    writer.write('\n');
+                }
+                rows++;
+            }
+            writer.flush();
+        }
+        writer.flush();
+        log.debug("Exported {} rows", rows);
+    }
+
+    private static void writeCsv(Writer writer, ExportRow row) throws IOException {
+        writer.write(Long.toUnsignedString(row.transactionId()));
+        writer.write(',');
+        writeCsvText(writer, row.transactionName());
+        writer.write(',');
+        if (row.transactionTimestamp() != null) {
+            writer.write(ApiSerializers.TIMESTAMP_FORMAT.format(row.transactionTimestamp()));
+        }
+        writer.write(',');
+        writeCsvText(writer, row.transactionComment());
+        writer.write(',');
+        writeCsvId(writer, row.deltaId());
+        writer.write(',');
+        writeCsvId(writer, row.accountId());
+        writer.write(',');
+        writeCsvId(writer, row.assetId());
+        writer.write(',');
+        if (row.deltaAmount() != null) {
+            writer.write(Long.toUnsignedString(row.deltaAmount()));
+        }
+        writer.write(',');
+        writeCsvId(writer, row.deltaTypeId());
+        writer.write('\n');
+    }
+
+    private static void writeCsvId(Writer writer, @Nullable Long id) throws IOException {
+        if (id != null) {
+            writer.write(Long.toUnsignedString(id));
+        }
+    }
+
+    private static void writeCsvText(Writer writer, @Nullable String text) throws IOException {
+        if (text == null) {
+            return;
+        }
+        writer.write('"');
+        writer.write(text.replace("\"", "\"\""));
+        writer.write('"');
+    }
+}
@@ -0,0 +1,420 @@
+package ru.ramlabs.gitea.stonks.api;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import ru.ramlabs.gitea.stonks.api.KeysetPagination.Page;
+import ru.ramlabs.gitea.stonks.api.KeysetPagination.PageRequest;
+import ru.ramlabs.gitea.stonks.api.Transactions.Transaction;
+import ru.ramlabs.gitea.stonks.storage.AccountStorage;
+import ru.ramlabs.gitea.stonks.storage.AssetStorage;
+import ru.ramlabs.gitea.stonks.storage.BalanceStorage;
+import ru.ramlabs.gitea.stonks.storage.BatchStorage.BatchDelta;
+import ru.ramlabs.gitea.stonks.storage.CollectionVersionStorage;
+import ru.ramlabs.gitea.stonks.storage.CollectionVersionStorage.Collection;
+import ru.ramlabs.gitea.stonks.storage.ImportStorage;
+import ru.ramlabs.gitea.stonks.storage.TransactionStorage.DeltaRow;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+import static ru.ramlabs.gitea.stonks.utils.DatabaseSupport.await;
+
+/**
+ * Bulk import of history in {@link Exports} CSV format: one row per delta, rows without delta columns are
+ * transactions without deltas. Rows of one transaction may be anywhere in file.
+ * <p>
+ * Transaction and delta ids from file are kept, so exported history can be imported back and importing the same
+ * file twice does not duplicate anything. Missing delta id is derived from transaction id and row number,
+ * so such rows are not duplicated only when the same file is imported again: after rows are reordered, added
+ * or removed, their deltas get other ids. Accounts and assets must already exist.
+ * <p>
+ * Upload is parsed while it is received and written in batches of {@code stonks.import.batch-size} rows,
+ * with at most {@code stonks.import.parallel-batches} batches in flight, so memory does not depend on file size.
+ * Rows written before invalid row are kept. Balances are rebuilt from deltas once at the end.
+ */
+@Component
+@Slf4j
+public class Imports {
+
+    private static final List<String> REQUIRED_COLUMNS = List.of(
+            "transaction_id", "account_id", "asset_id", "delta_amount", "delta_type_id");
+
+    private final ImportStorage storage;
+    private final AccountStorage accounts;
+    private final AssetStorage assets;
+    private final BalanceStorage balances;
+    private final CollectionVersionStorage versions;
+    private final DeltaTypes deltaTypes;
+    private final int batchSize;
+    private final int parallelBatches;
+
+    public Imports(ImportStorage storage,
+                   AccountStorage accounts,
+                   AssetStorage assets,
+                   BalanceStorage balances,
+                   CollectionVersionStorage versions,
+                   DeltaTypes deltaTypes,
+                   @Value("${stonks.import.batch-size}") int batchSize,
+                   @Value("${stonks.import.parallel-batches}") int parallelBatches) {
+        this.storage = storage;
+        this.accounts = accounts;
+        this.assets = assets;
+        this.balances = balances;
+        this.versions = versions;
+        this.deltaTypes = deltaTypes;
+        this.batchSize = batchSize;
+        this.parallelBatches = parallelBatches;
+    }
+
+    public record ImportResult(
+            long rows,
+            long deltas,
+            @JsonProperty("duration_ms")
+            long durationMs,
+            @JsonProperty("rows_per_second")
+            double rowsPerSecond
+    ) {
+
+    }
+
+    /**
+     * Rows parsed since last write.
+     */
+    private static final class Batch {
+        final Map<Long, Transaction> transactions = new LinkedHashMap<>();
+        final List<BatchDelta> deltas = new ArrayList<>();
+        int rows;
+    }
+
+    /**
+     * Blocks until whole upload is read and written.
+     *
+     * @throws ResponseStatusException with 400 and row number when row is invalid
+     */
+    public ImportResult importCsv(long userId, InputStream csv)
+            throws IOException, ExecutionException, InterruptedException {
+        long start = System.nanoTime();
+        var accountIds = ids(page -> accounts.accounts(userId, page), Accounts.Account::accountId);
+        var assetIds = ids(page -> assets.assets(userId, page), Assets.Asset::id);
+
+        var inFlight = new Semaphore(parallelBatches);
+        var writeError = new AtomicReference<Throwable>();
+        var writtenRows = new AtomicLong();
+        var writtenDeltas = new AtomicLong();
+
+        ResponseStatusException rowError = null;
+        Exception readError = null;
+        try {
+            var reader = new BufferedReader(new InputStreamReader(csv, StandardCharsets.UTF_8));
+            var columns = header(readRecord(reader));
+            var batch = new Batch();
+            long row = 0;
+            List<String> fields;
+            while ((fields = readRecord(reader)) != null && writeError.get() == null) {
+                if (fields.size() == 1 && fields.get(0) == null) {
+                    //blank line
+                    continue;
+                }
+                row++;
+                parseRow(fields, columns, row, accountIds, assetIds, batch);
+                if (batch.rows >= batchSize) {
+                    write(userId, batch, inFlight, writeError, writtenRows, writtenDeltas);
+                    batch = new Batch();
+                }
+            }
+            if (batch.rows > 0) {
+                write(userId, batch, inFlight, writeError, writtenRows, writtenDeltas);
+            }
+        } catch (ResponseStatusException e) {
+            rowError = e;
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            readError = e;
+        }
+
+        //wait for batches in flight, balances must be rebuilt after all of them, also when import failed
+        inFlight.acquire(parallelBatches);
+        Exception balancesError = null;
+        if (writtenRows.get() > 0) {
+            try {
+                await(balances.verify(userId, true));
+            } catch (ExecutionException | RuntimeException e) {
+                balancesError = e;
+            }
+        }
+
+        //failure of rebuild is reported with the import error, not instead of it
+        if (readError != null) {
+            suppress(readError, balancesError);
+            if (readError instanceof IOException e) {
+                throw e;
+            }
+            if (readError instanceof InterruptedException e) {
+                throw e;
+            }
+            throw (RuntimeException) readError;
+        }
+        if (writeError.get() != null) {
+            throw suppress(new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR,
+                    "Import failed after " + writtenRows.get() + " rows", writeError.get()), balancesError);
+        }
+        if (rowError != null) {
+            throw suppress(new ResponseStatusException(rowError.getStatusCode(),
+                    rowError.getReason() + ", " + writtenRows.get() + " rows before it were imported"), balancesError);
+        }
+        if (balancesError instanceof ExecutionException e) {
+            throw e;
+        }
+        if (balancesError != null) {
+            throw (RuntimeException) balancesError;
+        }
+
+        long durationNanos = System.nanoTime() - start;
+        var result = new ImportResult(
+                writtenRows.get(),
+                writtenDeltas.get(),
+                durationNanos / 1_000_000,
+                durationNanos == 0 ? 0 : writtenRows.get() * 1e9 / durationNanos
+        );
+        log.info("Imported {} rows for user {} in {} ms, {} rows/s",
+                result.rows(), Long.toUnsignedString(userId), result.durationMs(), Math.round(result.rowsPerSecond()));
+        return result;
+    }
+
+    private static <E extends Exception> E suppress(E error, @Nullable Exception suppressed) {
+        if (suppressed != null) {
+            error.addSuppressed(suppressed);
+        }
+        return error;
+    }
+
+    private void write(long userId, Batch batch, Semaphore inFlight, AtomicReference<Throwable> writeError,
+                       AtomicLong writtenRows, AtomicLong writtenDeltas) throws InterruptedException {
+        inFlight.acquire();
+        var transactionIds = List.copyOf(batch.transactions.keySet());
+        CompletableFuture<Void> written;
+        try {
+            written = storage.bulkUpsert(userId, List.copyOf(batch.transactions.values()), batch.deltas);
+        } catch (RuntimeException e) {
+            written = CompletableFuture.failedFuture(e);
+        }
+        //bulk upsert is not transactional, failed batch may be written partially, so its changes are recorded anyway
+        written.handle((result, writeFailure) -> writeFailure).thenCompose(writeFailure -> versions
+                .changed(userId, Collection.TRANSACTIONS, transactionIds)
+                .handle((result, changeFailure) -> writeFailure != null ? writeFailure : changeFailure)
+        ).whenComplete((failure, error) -> {
+            if (failure != null || error != null) {
+                writeError.compareAndSet(null, failure != null ? failure : error);
+            } else {
+                writtenRows.addAndGet(batch.rows);
+                writtenDeltas.addAndGet(batch.deltas.size());
+            }
+            inFlight.release();
+        });
+    }
+
+    private void parseRow(List<String> record, Map<String, Integer> columns, long row,
+                          Set<Long> accountIds, Set<Long> assetIds, Batch batch) {
+        if (record.size() != columns.size()) {
+            throw rowError(row, "expected " + columns.size() + " columns, got " + record.size());
+        }
+        long transactionId = requireId(record, columns, "transaction_id", row);
+        batch.transactions.put(transactionId, new Transaction(
+                transactionId,
+                field(record, columns, "transaction_name"),
+                timestamp(field(record, columns, "transaction_timestamp"), row),
+                field(record, columns, "transaction_comment")
+        ));
+        batch.rows++;
+
+        var accountId = id(record, columns, "account_id", row);
+        var assetId = id(record, columns, "asset_id", row);
+        var amount = id(record, columns, "delta_amount", row);
+        var deltaTypeId = id(record, columns, "delta_type_id", row);
+        if (accountId == null && assetId == null && amount == null && deltaTypeId == null) {
+            return;
+        }
+        if (accountId == null || assetId == null || amount == null || deltaTypeId == null) {
+            throw rowError(row, "account_id, asset_id, delta_amount and delta_type_id must be all set or all empty");
+        }
+        if (!accountIds.contains(accountId)) {
+            throw rowError(row, "account " + Long.toUnsignedString(accountId) + " does not exist");
+        }
+        if (!assetIds.contains(assetId)) {
+            throw rowError(row, "asset " + Long.toUnsignedString(assetId) + " does not exist");
+        }
+        var deltaType = deltaTypes.get(deltaTypeId);
+        if (deltaType == null) {
+            throw rowError(row, "unknown delta type " + Long.toUnsignedString(deltaTypeId));
+        }
+        var deltaId = id(record, columns, "delta_id", row);
+        batch.deltas.add(new BatchDelta(transactionId, new DeltaRow(
+                deltaId == null ? deltaId(transactionId, row) : deltaId,
+                accountId,
+                assetId,
+                amount,
+                deltaTypeId,
+                deltaType.multiplier()
+        )));
+    }
+
+    /**
+     * Id of delta without id in file, the same for the same row of the same file.
+     * Bits are mixed with SplitMix64 finalizer, so ids do not collide with nearby ids of other transactions.
+     */
+    static long deltaId(long transactionId, long row) {
+        long z = transactionId * 0x9E3779B97F4A7C15L + row;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static Map<String, Integer> header(@Nullable List<String> record) {
+        if (record == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Empty file");
+        }
+        var columns = new HashMap<String, Integer>();
+        for (int i = 0; i < record.size(); i++) {
+            columns.put(record.get(i) == null ? "" : record.get(i).trim(), i);
+        }
+        for (String column : REQUIRED_COLUMNS) {
+            if (!columns.containsKey(column)) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "No " + column + " column in header");
+            }
+        }
+        return columns;
+    }
+
+    @Nullable
+    private static String field(List<String> record, Map<String, Integer> columns, String column) {
+        var index = columns.get(column);
+        return index == null ? null : record.get(index);
+    }
+
+    @Nullable
+    private static Long id(List<String> record, Map<String, Integer> columns, String column, long row) {
+        var value = field(record, columns, column);
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return Long.parseUnsignedLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw rowError(row, column + " is not unsigned number");
+        }
+    }
+
+    private static long requireId(List<String> record, Map<String, Integer> columns, String column, long row) {
+        var id = id(record, columns, column, row);
+        if (id == null) {
+            throw rowError(row, column + " is empty");
+        }
+        return id;
+    }
+
+    @Nullable
+    private static Instant timestamp(@Nullable String value, long row) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return Instant.parse(value.trim());
+        } catch (DateTimeParseException e) {
+            throw rowError(row, "transaction_timestamp is not ISO-8601 instant");
+        }
+    }
+
+    private static ResponseStatusException rowError(long row, String message) {
+        return new ResponseStatusException(HttpStatus.BAD_REQUEST, "Row " + row + ": " + message);
+    }
+
+    /**
+     * Read one CSV record. Quoted fields may contain commas, line breaks and doubled quotes.
+     * Unquoted empty field is null, quoted empty field is empty string, same as in export.
+     *
+     * @return null at end of input
+     */
+    @Nullable
+    static List<String> readRecord(Reader reader) throws IOException {
+        int c = reader.read();
+        if (c == -1) {
+            return null;
+        }
+        var record = new ArrayList<String>();
+        var field = new StringBuilder();
+        boolean quoted = false;
+        boolean inQuotes = false;
+        while (true) {
+            if (inQuotes) {
+                if (c == -1) {
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unterminated quoted field");
+                }
+                if (c == '"') {
+                    reader.mark(1);
+                    int next = reader.read();
+                    if (next == '"') {
+                        field.append('"');
+                    } else {
+                        inQuotes = false;
+                        if (next != -1) {
+                            reader.reset();
+                        }
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"') {
+                inQuotes = true;
+                quoted = true;
+            } else if (c == ',' || c == '\n' || c == -1) {
+                record.add(quoted || !field.isEmpty() ? field.toString() : null);
+                field.setLength(0);
+                quoted = false;
+                if (c != ',') {
+                    return record;
+                }
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+            c = reader.read();
+        }
+    }
+
+    private <T> Set<Long> ids(Function<PageRequest, CompletableFuture<Page<T>>> pages, ToLongFunction<T> key)
+            throws ExecutionException, InterruptedException {
+        var ids = new HashSet<Long>();
+        var request = PageRequest.FIRST;
+        while (true) {
+            var page = await(pages.apply(request));
+            page.items().forEach(item -> ids.add(key.applyAsLong(item)));
+            if (page.startAt() == null) {
+                return ids;
+            }
+            request = PageRequest.startAt(page.startAt());
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package ru.ramlabs.gitea.stonks.api;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import ru.ramlabs.gitea.stonks.storage.CollectionVersionStorage.Collection;
+import ru.ramlabs.gitea.stonks.utils.UnsignedLongToString;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * Keyset pagination over user owned collections ordered by unsigned id.
+ * <p>
+ * Page is fetched with one read that returns one extra row to find out whether next page exists.
+ * Forward page starts at {@code start_at} key inclusive, reverse page ends before {@code end_before} key.
+ * Every page returns cursors for both directions.
+ * <p>
+ * Storage backends only read rows, page is assembled here, so every backend follows the same contract.
+ */
+@Component
+public class KeysetPagination {
+
+    private final Map<Collection, Integer> defaultPageSizes;
+    private final int maxPageSize;
+
+    /**
+     * Default page size of every collection is {@code stonks.pagination.default-page-size.<collection>}.
+     */
+    @Autowired
+    public KeysetPagination(Environment environment, @Value("${stonks.pagination.max-page-size}") int maxPageSize) {
+        this(defaultPageSizes(environment), maxPageSize);
+    }
+
+    private static Map<Collection, Integer> defaultPageSizes(Environment environment) {
+        Map<Collection, Integer> sizes = new EnumMap<>(Collection.class);
+        for (Collection collection : Collection.values()) {
+            sizes.put(collection, environment.getRequiredProperty(
+                    "stonks.pagination.default-page-size." + collection.key(), Integer.class));
+        }
+        return sizes;
+    }
+
+    public KeysetPagination(Map<Collection, Integer> defaultPageSizes, int maxPageSize) {
+        this.defaultPageSizes = new EnumMap<>(defaultPageSizes);
+        this.maxPageSize = maxPageSize;
+    }
+
+    /**
+     * Page requested by client. Without cursors first page is returned.
+     */
+    public record PageRequest(
+            @JsonProperty("start_at")
+            @JsonDeserialize(using = UnsignedLongToString.Deserializer.class)
+            @Nullable
+            Long startAt,
+            @JsonProperty("end_before")
+            @JsonDeserialize(using = UnsignedLongToString.Deserializer.class)
+            @Nullable
+            Long endBefore,
+            @JsonProperty("page_size")
+            @Nullable
+            Integer pageSize
+    ) {
+        public static final PageRequest FIRST = new PageRequest(null, null, null);
+
+        public static PageRequest startAt(long startAt) {
+            return new PageRequest(startAt, null, null);
+        }
+
+        /**
+         * Page requested in query string, cursors are unsigned decimals same as in JSON body.
+         */
+        public static PageRequest of(@Nullable String startAt, @Nullable String endBefore, @Nullable Integer pageSize) {
+            return new PageRequest(cursor("start_at", startAt), cursor("end_before", endBefore), pageSize);
+        }
+
+        private static @Nullable Long cursor(String name, @Nullable String value) {
+            if (value == null) {
+                return null;
+            }
+            try {
+                return Long.parseUnsignedLong(value);
+            } catch (NumberFormatException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, name + " must be unsigned long");
+            }
+        }
+
+        public boolean reverse() {
+            return endBefore != null;
+        }
+
+        /**
+         * Key to read from: forward pages read keys {@code >= cursor} ascending,
+         * reverse pages read keys {@code < cursor} descending.
+         */
+        public long cursor() {
+            return endBefore != null ? endBefore : startAt == null ? 0 : startAt;
+        }
+    }
+
+    /**
+     * @param startAt   key of first item of next page, null when this page is the last one
+     * @param endBefore key to request previous page with, null when this page is the first one
+     */
+    public record Page<T>(List<T> items, @Nullable Long startAt, @Nullable Long endBefore) {
+
+    }
+
+    /**
+     * @return validated page size, rows to read are one more than that
+     */
+    public int pageSize(Collection collection, PageRequest request) {
+        if (request.pageSize() == null) {
+            return defaultPageSizes.get(collection);
+        }
+        if (request.pageSize() < 1 || request.pageSize() > maxPageSize) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "page_size must be between 1 and " + maxPageSize);
+        }
+        return request.pageSize();
+    }
+
+    /**
+     * @param rows up to {@code pageSize + 1} rows read from {@link PageRequest#cursor()} in direction of request
+     */
+    public static <T> Page<T> page(PageRequest request, int pageSize, List<T> rows, ToLongFunction<T> key) {
+        var items = new ArrayList<T>(rows.subList(0, Math.min(rows.size(), pageSize)));
+        Long extraKey = rows.size() > pageSize ? key.applyAsLong(rows.get(pageSize)) : null;
+        long cursor = request.cursor();
+
+        if (!request.reverse()) {
+            //first page can not have previous one, every other page may
+            Long endBefore = cursor == 0 || items.isEmpty() ? null : key.applyAsLong(items.get(0));
+            return new Page<>(items, extraKey, endBefore);
+        }
+
+        Collections.reverse(items);
+        //next page starts where client's previous request ended
+        Long endBefore = extraKey == null || items.isEmpty() ? null : key.applyAsLong(items.get(0));
+        return new Page<>(items, cursor, endBefore);
+    }
+}
@@ -0,0 +1,90 @@
+package ru.ramlabs.gitea.stonks.api;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import ru.ramlabs.gitea.stonks.utils.Argon2Parameters;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs cpu bound password hashing on dedicated bounded pool, so request threads only wait for it.
+ * When pool queue is full, new work is rejected with 429 instead of piling up.
+ */
+@Component
+public class PasswordHasher {
+
+    private final PasswordEncoder passwordEncoder;
+    private final Argon2Parameters argon2Parameters;
+    private final ThreadPoolExecutor pool;
+    private final ExecutorService executor;
+    private final Counter rejections;
+
+    public PasswordHasher(PasswordEncoder passwordEncoder,
+                          Argon2Parameters argon2Parameters,
+                          MeterRegistry meterRegistry,
+                          @Value("${stonks.passwords.threads}") int threads,
+                          @Value("${stonks.passwords.queue-size}") int queueSize) {
+        this.passwordEncoder = passwordEncoder;
+        this.argon2Parameters = argon2Parameters;
+
+        var threadNumber = new AtomicInteger();
+        pool = new ThreadPoolExecutor(
+                threads, threads,
+                0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                runnable -> {
+                    var thread = new Thread(runnable, "password-hashing-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+        executor = ExecutorServiceMetrics.monitor(meterRegistry, pool, "password_hashing");
+        rejections = Counter.builder("stonks.passwords.rejected")
+                .description("Password hashing requests rejected because pool queue is full")
+                .register(meterRegistry);
+    }
+
+    public CompletableFuture<String> encode(String password) {
+        return submit(() -> passwordEncoder.encode(password));
+    }
+
+    public CompletableFuture<Boolean> matches(String password, String encodedPassword) {
+        return submit(() -> passwordEncoder.matches(password, encodedPassword));
+    }
+
+    /**
+     * @return true when hash was created with other algorithm or lower Argon2 cost than current one
+     */
+    public boolean needsRehash(String encodedPassword) {
+        return passwordEncoder.upgradeEncoding(encodedPassword) || argon2Parameters.weaker(encodedPassword);
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, executor);
+        } catch (RejectedExecutionException e) {
+            rejections.increment();
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Too many password checks, retry later");
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,78 @@
+package ru.ramlabs.gitea.stonks.api;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Bounded in-process cache of sessions that were already validated against database.
+ * <p>
+ * Entry lives for configured ttl, but never longer than session itself. Logout on this instance
+ * evicts entry immediately, logout on other instances becomes visible here after ttl at most.
+ */
+@Component
+public class SessionCache {
+
+    private final Cache<Users.UserToken, CachedSession> cache;
+
+    public SessionCache(@Value("${stonks.sessions.cache.max-size}") long maxSize,
+                        @Value("${stonks.sessions.cache.ttl}") Duration ttl,
+                        MeterRegistry meterRegistry
+    ) {
+        cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new SessionExpiry(ttl))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "sessions");
+    }
+
+    public record CachedSession(long userId, Instant expiry) {
+
+    }
+
+    @Nullable
+    public CachedSession get(Users.UserToken token) {
+        var session = cache.getIfPresent(token);
+        if (session != null && !session.expiry().isAfter(Instant.now())) {
+            cache.invalidate(token);
+            return null;
+        }
+        return session;
+    }
+
+    public void put(Users.UserToken token, Instant expiry) {
+        cache.put(token, new CachedSession(token.userId(), expiry));
+    }
+
+    public void evict(Users.UserToken token) {
+        cache.invalidate(token);
+    }
+
+    private record SessionExpiry(Duration ttl) implements Expiry<Users.UserToken, CachedSession> {
+
+        @Override
+        public long expireAfterCreate(Users.UserToken key, CachedSession value, long currentTime) {
+            var untilExpiry = Duration.between(Instant.now(), value.expiry()).toNanos();
+            return Math.max(0, Math.min(ttl.toNanos(), untilExpiry));
+        }
+
+        @Override
+        public long expireAfterUpdate(Users.UserToken key, CachedSession value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(Users.UserToken key, CachedSession value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
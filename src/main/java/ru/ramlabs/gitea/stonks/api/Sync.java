@@ -0,0 +1,170 @@
+package ru.ramlabs.gitea.stonks.api;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import ru.ramlabs.gitea.stonks.api.Accounts.Account;
+import ru.ramlabs.gitea.stonks.api.Assets.Asset;
+import ru.ramlabs.gitea.stonks.api.Banks.Bank;
+import ru.ramlabs.gitea.stonks.api.Transactions.Transaction;
+import ru.ramlabs.gitea.stonks.storage.SyncStorage;
+import ru.ramlabs.gitea.stonks.storage.SyncStorage.Changes;
+import ru.ramlabs.gitea.stonks.storage.SyncStorage.Cursor;
+import ru.ramlabs.gitea.stonks.utils.UnsignedLongToString;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static ru.ramlabs.gitea.stonks.utils.DatabaseSupport.await;
+
+/**
+ * Incremental sync of user owned collections. Token is an opaque position in change log of every collection,
+ * response contains entities changed after it and token to continue from. Without token everything is returned,
+ * in responses of at most {@code stonks.sync.max-changes} changes per collection.
+ * <p>
+ * Entity written several times is returned once, in its current state. Deltas are not returned,
+ * transaction is returned as changed when a delta is added to it.
+ * <p>
+ * Tombstones of deleted entities are kept for {@code stonks.sync.tombstone-retention}. Token remembers since when
+ * the client has not read all changes; when that is longer ago than retention, tombstones it has not read may be gone,
+ * so the token is rejected with 410 and the client syncs again without token.
+ */
+@Component
+public class Sync {
+
+    private static final byte TOKEN_FORMAT = 2;
+    private static final int TOKEN_SIZE = 1 + Long.BYTES + 4 * 2 * Long.BYTES;
+
+    private final SyncStorage storage;
+    private final int maxChanges;
+    private final Duration tombstoneRetention;
+
+    public Sync(SyncStorage storage,
+                @Value("${stonks.sync.max-changes}") int maxChanges,
+                @Value("${stonks.sync.tombstone-retention}") Duration tombstoneRetention) {
+        this.storage = storage;
+        this.maxChanges = maxChanges;
+        this.tombstoneRetention = tombstoneRetention;
+    }
+
+    /**
+     * @param hasMore true when there are more changes, request again with returned token
+     */
+    public record SyncResult(
+            List<Bank> banks,
+            @JsonProperty("deleted_banks")
+            @JsonSerialize(contentUsing = UnsignedLongToString.Serializer.class)
+            List<Long> deletedBanks,
+            List<Account> accounts,
+            @JsonProperty("deleted_accounts")
+            @JsonSerialize(contentUsing = UnsignedLongToString.Serializer.class)
+            List<Long> deletedAccounts,
+            List<Asset> assets,
+            @JsonProperty("deleted_assets")
+            @JsonSerialize(contentUsing = UnsignedLongToString.Serializer.class)
+            List<Long> deletedAssets,
+            List<Transaction> transactions,
+            @JsonProperty("deleted_transactions")
+            @JsonSerialize(contentUsing = UnsignedLongToString.Serializer.class)
+            List<Long> deletedTransactions,
+            String token,
+            @JsonProperty("has_more")
+            boolean hasMore
+    ) {
+
+    }
+
+    /**
+     * Positions of all collections, in order of {@link SyncResult} fields.
+     *
+     * @param unreadSince time after which changes may be unread: time of the last response that had no more changes,
+     *                    or of the first request without token
+     */
+    record Token(Instant unreadSince, Cursor banks, Cursor accounts, Cursor assets, Cursor transactions) {
+
+        static Token start(Instant now) {
+            return new Token(now, Cursor.START, Cursor.START, Cursor.START, Cursor.START);
+        }
+
+        String encode() {
+            var buffer = ByteBuffer.allocate(TOKEN_SIZE).put(TOKEN_FORMAT).putLong(unreadSince.toEpochMilli());
+            for (Cursor cursor : List.of(banks, accounts, assets, transactions)) {
+                buffer.putLong(cursor.version()).putLong(cursor.entityId());
+            }
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+        }
+
+        /**
+         * @throws ResponseStatusException with 400 when token was not returned by {@link #encode()}
+         */
+        static Token decode(@Nullable String token, Instant now) {
+            if (token == null || token.isEmpty()) {
+                return start(now);
+            }
+            try {
+                var buffer = ByteBuffer.wrap(Base64.getUrlDecoder().decode(token));
+                if (buffer.remaining() != TOKEN_SIZE || buffer.get() != TOKEN_FORMAT) {
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid sync token");
+                }
+                return new Token(
+                        Instant.ofEpochMilli(buffer.getLong()),
+                        new Cursor(buffer.getLong(), buffer.getLong()),
+                        new Cursor(buffer.getLong(), buffer.getLong()),
+                        new Cursor(buffer.getLong(), buffer.getLong()),
+                        new Cursor(buffer.getLong(), buffer.getLong())
+                );
+            } catch (IllegalArgumentException | BufferUnderflowException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid sync token", e);
+            }
+        }
+    }
+
+    public SyncResult sync(long userId, @Nullable String token) throws ExecutionException, InterruptedException {
+        return await(syncAsync(userId, token));
+    }
+
+    /**
+     * @throws ResponseStatusException with 410 when token is older than tombstone retention
+     */
+    public CompletableFuture<SyncResult> syncAsync(long userId, @Nullable String token) {
+        var now = Instant.now();
+        var after = Token.decode(token, now);
+        if (after.unreadSince().isBefore(now.minus(tombstoneRetention))) {
+            throw new ResponseStatusException(HttpStatus.GONE, "Sync token expired, sync again without token");
+        }
+        var banks = storage.bankChanges(userId, after.banks(), maxChanges);
+        var accounts = storage.accountChanges(userId, after.accounts(), maxChanges);
+        var assets = storage.assetChanges(userId, after.assets(), maxChanges);
+        var transactions = storage.transactionChanges(userId, after.transactions(), maxChanges);
+        return CompletableFuture.allOf(banks, accounts, assets, transactions).thenApply(ignored -> result(
+                after, now, banks.join(), accounts.join(), assets.join(), transactions.join()));
+    }
+
+    /**
+     * @param now time before changes were read, when there are no more of them everything written before it is read
+     */
+    private static SyncResult result(Token after, Instant now, Changes<Bank> banks, Changes<Account> accounts,
+                                     Changes<Asset> assets, Changes<Transaction> transactions) {
+        boolean more = banks.more() || accounts.more() || assets.more() || transactions.more();
+        var token = new Token(more ? after.unreadSince() : now,
+                banks.last(), accounts.last(), assets.last(), transactions.last());
+        return new SyncResult(
+                banks.updated(), banks.deleted(),
+                accounts.updated(), accounts.deleted(),
+                assets.updated(), assets.deleted(),
+                transactions.updated(), transactions.deleted(),
+                token.encode(),
+                more
+        );
+    }
+}
@@ -6,34 +6,36 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import lombok.extern.slf4j.Slf4j;
-import org.intellij.lang.annotations.Language;
 import org.jetbrains.annotations.Nullable;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 import org.springframework.web.server.ResponseStatusException;
-import ru.ramlabs.gitea.stonks.utils.NullableParams;
+import ru.ramlabs.gitea.stonks.api.KeysetPagination.PageRequest;
+import ru.ramlabs.gitea.stonks.storage.TransactionStorage;
+import ru.ramlabs.gitea.stonks.storage.TransactionStorage.DeltaRow;
+import ru.ramlabs.gitea.stonks.utils.IdGenerator;
 import ru.ramlabs.gitea.stonks.utils.UnsignedLongToString;
-import tech.ydb.table.SessionRetryContext;
-import tech.ydb.table.query.Params;
-import tech.ydb.table.settings.ExecuteDataQuerySettings;
-import tech.ydb.table.transaction.TxControl;
-import tech.ydb.table.values.OptionalValue;
-import tech.ydb.table.values.PrimitiveValue;
 
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 
+import static ru.ramlabs.gitea.stonks.utils.DatabaseSupport.await;
+
 @Component
 @Slf4j
 public class Transactions {
 
-    private final SessionRetryContext db;
+    private final TransactionStorage storage;
+    private final DeltaTypes deltaTypes;
+    private final IdGenerator idGenerator;
 
-    public Transactions(SessionRetryContext db) {
-        this.db = db;
+    public Transactions(TransactionStorage storage, DeltaTypes deltaTypes, IdGenerator idGenerator) {
+        this.storage = storage;
+        this.deltaTypes = deltaTypes;
+        this.idGenerator = idGenerator;
     }
 
     public Transaction createTransaction(
@@ -41,90 +43,97 @@ public class Transactions {
             @Nullable String name,
             @Nullable Instant timestamp,
             @Nullable String comment) throws ExecutionException, InterruptedException {
-        long newTransactionId = new Random().nextLong();
-        @Language("SQL")
-        var insertTransactionQuery = """
-                DECLARE $user_id AS uint64;
-                DECLARE $transaction_id AS uint64;
-                DECLARE $transaction_name AS utf8?;
-                DECLARE $transaction_comment AS utf8?;
-                DECLARE $transaction_timestamp AS timestamp?;
-                                
-                insert INTO transactions
-                    ( user_id, transaction_id, transaction_comment, transaction_name, transaction_timestamp )
-                VALUES ( $user_id, $transaction_id, $transaction_comment, $transaction_name, cast($transaction_timestamp as timestamp));
-                """;
-
-        var insertResult = db.supplyResult(session -> session.executeDataQuery(
-                        insertTransactionQuery, TxControl.serializableRw(), NullableParams.ofNullable(
-                                "$user_id", PrimitiveValue.newUint64(userId),
-                                "$transaction_id", PrimitiveValue.newUint64(newTransactionId),
-                                "$transaction_name", name == null ? null : OptionalValue.of(PrimitiveValue.newText(name)),
-                                "$transaction_comment", comment == null ? null : OptionalValue.of(PrimitiveValue.newText(comment)),
-                                "$transaction_timestamp", timestamp == null ? null :
-                                        OptionalValue.of(PrimitiveValue.newTimestamp(timestamp))
-                        ),
-                        new ExecuteDataQuerySettings().setReportCostInfo(true)))
-                .get();
-
-        if (!insertResult.isSuccess()) {
-            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, insertResult.getStatus().toString());
-        }
+        return await(createTransactionAsync(userId, name, timestamp, comment));
+    }
 
-        log.info("Consumed {} RU", insertResult.getStatus().getConsumedRu());
+    public CompletableFuture<Transaction> createTransactionAsync(
+            long userId,
+            @Nullable String name,
+            @Nullable Instant timestamp,
+            @Nullable String comment) {
+        long newTransactionId = idGenerator.nextId();
 
-        return new Transaction(
-                newTransactionId,
-                name,
-                timestamp,
-                comment
-        );
+        var transaction = new Transaction(newTransactionId, name, timestamp, comment);
+        return storage.insertTransaction(userId, transaction).thenApply(ignored -> transaction);
     }
 
     public long addTransactionDelta(long user,long accountId, long txId, long assetId, int amount, long deltaTypeId)
             throws ExecutionException, InterruptedException {
-        long newDeltaId = new Random().nextLong();
-        @Language("SQL")
-        var insertTransactionQuery = """
-                DECLARE $user_id AS uint64;
-                DECLARE $account_id as uint64;
-                DECLARE $transaction_id AS uint64;
-                DECLARE $delta_id AS uint64;
-                DECLARE $asset_id AS uint64;
-                DECLARE $delta_amount AS uint64;
-                DECLARE $delta_type_id AS uint64;
-                DECLARE $delta_comment AS utf8?;
-                
-                                
-                discard select ensure(0, count(transaction_id) > 0,"TX_NOT_FOUND")
-                from transactions
-                where user_id = $user_id and transaction_id = $transaction_id;                
-                       
-                UPSERT INTO transaction_deltas
-                    ( user_id, account_id, asset_id, transaction_id, delta_id, delta_amount, delta_comment, delta_type_id )
-                VALUES ($user_id, $account_id, $asset_id, $transaction_id, $delta_id, $delta_amount, $delta_comment, $delta_type_id );
-                """;
-
-        var insertResult = db.supplyResult(session -> session.executeDataQuery(
-                        insertTransactionQuery, TxControl.serializableRw(), NullableParams.ofNullable(
-                                "$user_id", PrimitiveValue.newUint64(user),
-                                "$transaction_id", PrimitiveValue.newUint64(txId),
-                                "$delta_id", PrimitiveValue.newUint64(newDeltaId),
-                                "$asset_id", PrimitiveValue.newUint64(assetId),
-                                "$delta_amount", PrimitiveValue.newUint64(amount),
-                                "$delta_type_id", PrimitiveValue.newUint64(deltaTypeId),
-                                "$account_id", PrimitiveValue.newUint64(accountId)
-                        ),
-                        new ExecuteDataQuerySettings().setReportCostInfo(true)))
-                .get();
-
-        if (!insertResult.isSuccess()) {
-            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, insertResult.getStatus().toString());
+        return await(addTransactionDeltaAsync(user, accountId, txId, assetId, amount, deltaTypeId));
+    }
+
+    public CompletableFuture<Long> addTransactionDeltaAsync(long user, long accountId, long txId, long assetId, int amount,
+                                                            long deltaTypeId) {
+        var deltaType = deltaTypes.require(deltaTypeId);
+        long newDeltaId = idGenerator.nextId();
+
+        return storage.insertDelta(user, txId, new DeltaRow(
+                newDeltaId, accountId, assetId, amount, deltaTypeId, deltaType.multiplier()
+        )).thenApply(ignored -> newDeltaId);
+    }
+
+    /**
+     * Delta to be created together with its transaction.
+     */
+    public record NewDelta(
+            long accountId,
+            long assetId,
+            long amount,
+            long deltaTypeId
+    ) {
+
+    }
+
+    public record TransactionWithDeltas(
+            Transaction transaction,
+            List<TransactionDelta> deltas
+    ) {
+
+    }
+
+    public static final int MAX_DELTAS_PER_TRANSACTION = 100;
+
+    /**
+     * Create transaction and all of its deltas with single statement and single commit.
+     */
+    public TransactionWithDeltas createTransactionWithDeltas(
+            long userId,
+            @Nullable String name,
+            @Nullable Instant timestamp,
+            @Nullable String comment,
+            List<NewDelta> deltas) throws ExecutionException, InterruptedException {
+        return await(createTransactionWithDeltasAsync(userId, name, timestamp, comment, deltas));
+    }
+
+    public CompletableFuture<TransactionWithDeltas> createTransactionWithDeltasAsync(
+            long userId,
+            @Nullable String name,
+            @Nullable Instant timestamp,
+            @Nullable String comment,
+            List<NewDelta> deltas) {
+        if (deltas.size() > MAX_DELTAS_PER_TRANSACTION) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Too many deltas, max " + MAX_DELTAS_PER_TRANSACTION);
         }
 
-        log.info("Add transaction delta consumed {} RU", insertResult.getStatus().getConsumedRu());
+        long newTransactionId = idGenerator.nextId();
 
-        return newDeltaId;
+        var createdDeltas = new ArrayList<TransactionDelta>(deltas.size());
+        var deltaRows = new ArrayList<DeltaRow>(deltas.size());
+        for (NewDelta delta : deltas) {
+            if (delta.amount() < 0) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Delta amount must not be negative");
+            }
+            var deltaType = deltaTypes.require(delta.deltaTypeId());
+            long newDeltaId = idGenerator.nextId();
+            createdDeltas.add(new TransactionDelta(newDeltaId, delta.amount()));
+            deltaRows.add(new DeltaRow(newDeltaId, delta.accountId(), delta.assetId(),
+                    delta.amount(), delta.deltaTypeId(), deltaType.multiplier()));
+        }
+
+        var transaction = new Transaction(newTransactionId, name, timestamp, comment);
+        return storage.insertTransactionWithDeltas(userId, transaction, deltaRows)
+                .thenApply(ignored -> new TransactionWithDeltas(transaction, createdDeltas));
     }
 
     public record DeltaType(
@@ -135,31 +144,12 @@ public class Transactions {
 
     }
 
-    public List<DeltaType> getDeltaTypes() throws ExecutionException, InterruptedException {
-        @Language("SQL")
-        var getDeltaTypesQuery = """            
-                select *
-                from delta_types;
-                """;
-
-        var queryResult = db.supplyResult(session -> session.executeDataQuery(
-                getDeltaTypesQuery, TxControl.serializableRw(), Params.empty(),
-                new ExecuteDataQuerySettings().setReportCostInfo(true))).get();
-        var transactions = queryResult.getValue().getResultSet(0);
-
-        var result = new ArrayList<DeltaType>();
-
-        while (transactions.next()) {
-            result.add(new DeltaType(
-                    transactions.getColumn("delta_type_id").getUint64(),
-                    transactions.getColumn("delta_type_name").getText(),
-                    transactions.getColumn("delta_type_multiplier").getInt8()
-            ));
-        }
-
-        log.info("Consumed {} RU", queryResult.getStatus().getConsumedRu());
+    public List<DeltaType> getDeltaTypes() {
+        return deltaTypes.all();
+    }
 
-        return result;
+    public CompletableFuture<List<DeltaType>> getDeltaTypesAsync() {
+        return CompletableFuture.completedFuture(deltaTypes.all());
     }
 
 
@@ -172,37 +162,11 @@ public class Transactions {
     }
 
     public List<TransactionDelta> getTransactionDeltas(long userId, long transactionId) throws ExecutionException, InterruptedException {
-        @Language("SQL")
-        var getDeltasQuery = """
-                DECLARE $user_id AS uint64;
-                DECLARE $transaction_id AS uint64;
-                                
-                discard select ensure(0, count(transaction_id) > 0, "TX_NOT_FOUND")
-                from transactions
-                where user_id = $user_id and transaction_id = $transaction_id;
-                                
-                select *
-                from transaction_deltas
-                where transaction_id = $transaction_id;
-                """;
-
-        var queryResult = db.supplyResult(session -> session.executeDataQuery(
-                getDeltasQuery, TxControl.serializableRw(), Params.of(
-                        "$user_id", PrimitiveValue.newUint64(userId),
-                        "$transaction_id", PrimitiveValue.newUint64(transactionId)
-                ), new ExecuteDataQuerySettings().setReportCostInfo(true))).get();
-        var deltas = queryResult.getValue().getResultSet(1);
-
-        var result = new ArrayList<TransactionDelta>();
-
-        while (deltas.next()) {
-            result.add(new TransactionDelta(
-                    deltas.getColumn("delta_id").getUint64(),
-                    deltas.getColumn("delta_amount").getUint64()
-            ));
-        }
+        return await(getTransactionDeltasAsync(userId, transactionId));
+    }
 
-        return result;
+    public CompletableFuture<List<TransactionDelta>> getTransactionDeltasAsync(long userId, long transactionId) {
+        return storage.deltas(userId, transactionId);
     }
 
     public record Transaction(
@@ -213,7 +177,7 @@ public class Transactions {
             String name,
             @JsonFormat(shape = JsonFormat.Shape.STRING,
                     timezone = "UTC",
-                    pattern = "yyyy-MM-dd'T'HH:mm:ss.SSSSSS'Z'"
+                    pattern = ApiSerializers.TIMESTAMP_PATTERN
             )
             Instant timestamp,
             String comment
@@ -227,56 +191,23 @@ public class Transactions {
             @JsonSerialize(using = UnsignedLongToString.Serializer.class)
             @JsonDeserialize(using = UnsignedLongToString.Deserializer.class)
             @JsonInclude(JsonInclude.Include.NON_NULL)
-            Long startAt
+            Long startAt,
+            @JsonProperty("end_before")
+            @JsonSerialize(using = UnsignedLongToString.Serializer.class)
+            @JsonDeserialize(using = UnsignedLongToString.Deserializer.class)
+            @JsonInclude(JsonInclude.Include.NON_NULL)
+            Long endBefore
     ) {
 
     }
 
-    public GetTransactionsResult getTransactions(long userId, long start) throws ExecutionException, InterruptedException {
-        @Language("SQL")
-        var getTransactionsQuery = """
-                DECLARE $user_id AS uint64;
-                DECLARE $transaction_id_start AS uint64;
-                                
-                select *
-                from transactions
-                where user_id=$user_id and transaction_id >= $transaction_id_start
-                limit 11;
-                """;
-        var queryResult = db.supplyResult(session -> session.executeDataQuery(
-                getTransactionsQuery, TxControl.serializableRw(), Params.of(
-                        "$user_id", PrimitiveValue.newUint64(userId),
-                        "$transaction_id_start", PrimitiveValue.newUint64(start)
-                ), new ExecuteDataQuerySettings().setReportCostInfo(true))).get();
-        var transactions = queryResult.getValue().getResultSet(0);
-
-        var result = new ArrayList<Transaction>();
-
-        int counter = 0;
-        Long startAt = null;
-
-        while (transactions.next()) {
-            counter++;
-            if (counter <= 10) {
-                result.add(new Transaction(
-                        transactions.getColumn("transaction_id").getUint64(),
-                        transactions.getColumn("transaction_name").isOptionalItemPresent() ?
-                                transactions.getColumn("transaction_name").getText() : null,
-                        transactions.getColumn("transaction_timestamp").isOptionalItemPresent() ?
-                                transactions.getColumn("transaction_timestamp").getTimestamp() : null,
-                        transactions.getColumn("transaction_comment").isOptionalItemPresent() ?
-                                transactions.getColumn("transaction_comment").getText() : null
-                ));
-            } else {
-                startAt = transactions.getColumn("transaction_id").getUint64();
-            }
-        }
-
-        log.info("Consumed {} RU", queryResult.getStatus().getConsumedRu());
+    public GetTransactionsResult getTransactions(long userId, PageRequest page) throws ExecutionException, InterruptedException {
+        return await(getTransactionsAsync(userId, page));
+    }
 
-        return new GetTransactionsResult(
-                result, startAt
-        );
+    public CompletableFuture<GetTransactionsResult> getTransactionsAsync(long userId, PageRequest page) {
+        return storage.transactions(userId, page)
+                .thenApply(result -> new GetTransactionsResult(result.items(), result.startAt(), result.endBefore()));
     }
 
 }
@@ -1,47 +1,53 @@
 package ru.ramlabs.gitea.stonks.api;
 
 import lombok.extern.slf4j.Slf4j;
-import org.intellij.lang.annotations.Language;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.server.ResponseStatusException;
-import tech.ydb.core.Issue;
-import tech.ydb.table.SessionRetryContext;
-import tech.ydb.table.query.Params;
-import tech.ydb.table.settings.ExecuteDataQuerySettings;
-import tech.ydb.table.transaction.TxControl;
+import ru.ramlabs.gitea.stonks.storage.UserStorage;
+import ru.ramlabs.gitea.stonks.utils.IdGenerator;
 
 import java.security.SecureRandom;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.regex.Pattern;
 
 import static org.springframework.http.HttpStatus.*;
 import static ru.ramlabs.gitea.stonks.api.Users.UserToken.parseAuthCookie;
-import static tech.ydb.table.values.PrimitiveValue.*;
+import static ru.ramlabs.gitea.stonks.utils.DatabaseSupport.await;
 
 @Slf4j
 @Component
 public class Users {
 
-    private final SessionRetryContext db;
+    private final UserStorage storage;
     private final String captchaKey;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHasher passwordHasher;
+    private final SessionCache sessionCache;
+    private final IdGenerator idGenerator;
 
     public Users(@Value("${stonks.captcha.server_key}") String captchaKey,
-                 SessionRetryContext db,
-                 PasswordEncoder passwordEncoder
+                 UserStorage storage,
+                 PasswordHasher passwordHasher,
+                 SessionCache sessionCache,
+                 IdGenerator idGenerator
     ) {
-        this.db = db;
-        this.passwordEncoder = passwordEncoder;
+        this.storage = storage;
+        this.passwordHasher = passwordHasher;
         this.captchaKey = captchaKey;
+        this.sessionCache = sessionCache;
+        this.idGenerator = idGenerator;
     }
 
     private static final Pattern NAME_PATTERN = Pattern.compile("\\w+");
 
     public String register(String name, String password) throws ExecutionException, InterruptedException {
+        return await(registerAsync(name, password));
+    }
+
+    public CompletableFuture<String> registerAsync(String name, String password) {
         if (!NAME_PATTERN.matcher(name).matches()) {
             throw new ResponseStatusException(BAD_REQUEST, "Illegal characters in name");
         }
@@ -54,46 +60,9 @@ public class Users {
             throw new ResponseStatusException(BAD_REQUEST, "Password length must be >=8 and <=256");
         }
 
-        @Language("SQL")
-        String insertUserQuery = """
-                DECLARE $user_id AS uint64;
-                DECLARE $user_name AS utf8;
-                DECLARE $user_password AS utf8;
-                                
-                select ensure(0, count(*) = 0 ,"USER_EXISTS")
-                from users view user_name_index
-                where user_name = $user_name;
-                            
-                INSERT INTO users (user_id, user_name,user_password)
-                VALUES ($user_id, $user_name, $user_password);
-                """;
-
-        var insertResult = db.supplyResult(session -> session.executeDataQuery(
-                insertUserQuery,
-                TxControl.serializableRw(),
-                Params.of(
-                        "$user_id", newUint64(new SecureRandom().nextLong()),
-                        "$user_name", newText(name.toLowerCase()),
-                        "$user_password", newText(passwordEncoder.encode(password))
-                ),
-                new ExecuteDataQuerySettings().setReportCostInfo(true)
-        )).get();
-
-        if (!insertResult.isSuccess()) {
-            log.info("Cannot register user {}", insertResult.getStatus());
-            for (Issue issue : insertResult.getStatus().getIssues()) {
-                if (issue.getMessage().contains("USER_EXISTS")) {
-                    throw new ResponseStatusException(BAD_REQUEST, "User exists");
-                }
-            }
-            throw new ResponseStatusException(BAD_REQUEST, "Cannot register");
-        }
-
-        if (insertResult.getStatus().hasConsumedRu() && insertResult.getStatus().getConsumedRu() > 0) {
-            log.info("Register user consumed {} RU", insertResult.getStatus().getConsumedRu());
-        }
-
-        return name.toLowerCase();
+        return passwordHasher.encode(password)
+                .thenCompose(encodedPassword -> storage.insertUser(idGenerator.nextId(), name.toLowerCase(), encodedPassword))
+                .thenApply(ignored -> name.toLowerCase());
     }
 
     public static String generateSessionToken() {
@@ -109,6 +78,10 @@ public class Users {
     }
 
     public String getAccount(String auth) throws ExecutionException, InterruptedException {
+        return await(getAccountAsync(auth));
+    }
+
+    public CompletableFuture<String> getAccountAsync(String auth) {
         var authParts = auth.split("-");
         if (authParts.length != 2) {
             throw new ResponseStatusException(BAD_REQUEST, "Bad token format");
@@ -124,161 +97,107 @@ public class Users {
             throw new ResponseStatusException(BAD_REQUEST, "Bad token");
         }
 
-        @Language("SQL")
-        String getUserSessionQuery = """
-                DECLARE $user_id AS uint64;
-                DECLARE $session_token AS utf8;
-                SELECT *
-                FROM sessions
-                WHERE user_id==$user_id and session_token==$session_token;
-                """;
-
-        var sessionQuery = db.supplyResult(session -> session.executeDataQuery(
-                getUserSessionQuery,
-                TxControl.serializableRw(),
-                Params.of(
-                        "$user_id", newUint64(id),
-                        "$session_token", newText(token)
-                )
-        )).get();
-
-        if (sessionQuery.getValue().getRowCount(0) == 0) {
-            throw new ResponseStatusException(UNAUTHORIZED);
-        }
+        return storage.getSessionExpiry(id, token).thenCompose(expiry -> {
+            if (expiry == null || !expiry.isAfter(Instant.now())) {
+                throw new ResponseStatusException(UNAUTHORIZED);
+            }
 
-        @Language("SQL")
-        String getUserInfoQuery = """
-                DECLARE $user_id AS uint64;
-                SELECT user_id,user_name
-                FROM users
-                WHERE user_id=$user_id;
-                """;
-        var userQuery = db.supplyResult(session -> session.executeDataQuery(
-                getUserInfoQuery,
-                TxControl.serializableRw(),
-                Params.of(
-                        "$user_id", newUint64(id)
-                )
-        )).get();
-
-        var resultSet = userQuery.getValue().getResultSet(0);
-        resultSet.next();
-
-        return resultSet.getColumn("user_name").getText();
+            return storage.getUserName(id);
+        });
     }
 
     public String login(String name, String providedPassword) throws ExecutionException, InterruptedException {
-        @Language("SQL")
-        String getUserPasswordQuery = """
-                DECLARE $user_name AS utf8;
-                SELECT user_id, user_password
-                FROM users
-                WHERE user_name=$user_name
-                """;
-
-        var user = db.supplyResult(session -> session.executeDataQuery(
-                getUserPasswordQuery,
-                TxControl.serializableRw(),
-                Params.of("$user_name", newText(name.toLowerCase()))
-        )).get().getValue();
-
-        if (user.getRowCount(0) == 0) {
-            throw new ResponseStatusException(NOT_FOUND, "User not found");
-        }
-        var resultSet = user.getResultSet(0);
-        resultSet.next();
-        var savedPassword = resultSet.getColumn("user_password").getText();
-        var userId = resultSet.getColumn("user_id").getUint64();
+        return await(loginAsync(name, providedPassword));
+    }
 
-        if (!passwordEncoder.matches(providedPassword, savedPassword)) {
-            throw new ResponseStatusException(UNAUTHORIZED, "Bad password");
-        }
+    public CompletableFuture<String> loginAsync(String name, String providedPassword) {
+        return storage.getPassword(name.toLowerCase()).thenCompose(user -> {
+            if (user == null) {
+                throw new ResponseStatusException(NOT_FOUND, "User not found");
+            }
+            var savedPassword = user.encodedPassword();
+            var userId = user.userId();
+
+            return passwordHasher.matches(providedPassword, savedPassword).thenCompose(matches -> {
+                if (!matches) {
+                    throw new ResponseStatusException(UNAUTHORIZED, "Bad password");
+                }
+                if (passwordHasher.needsRehash(savedPassword)) {
+                    rehashPassword(userId, providedPassword);
+                }
+                return createSession(userId);
+            });
+        });
+    }
 
+    private CompletableFuture<String> createSession(long userId) {
         var sessionToken = generateSessionToken();
 
-        @Language("SQL")
-        String setUserTokenQuery = """
-                DECLARE $user_id AS uint64;
-                DECLARE $session_token AS utf8;
-                DECLARE $session_expiry AS datetime;
-                INSERT INTO sessions (user_id, session_token,session_expiry)
-                VALUES ($user_id, $session_token, $session_expiry);
-                """;
-
-        var dataQueryResult = db.supplyResult(session -> session.executeDataQuery(
-                setUserTokenQuery,
-                TxControl.serializableRw(),
-                Params.of(
-                        "$user_id", newUint64(userId),
-                        "$session_token", newText(sessionToken),
-                        "$session_expiry", newDatetime(Instant.now().plus(Duration.ofDays(30)))
-                )
-        )).get();
-
-        if (!dataQueryResult.isSuccess()) {
-            log.warn("Cannot save session token to db: {}", dataQueryResult.getStatus());
-            throw new ResponseStatusException(INTERNAL_SERVER_ERROR);
-        }
+        return storage.insertSession(userId, sessionToken, Instant.now().plus(Duration.ofDays(30)))
+                .thenApply(ignored -> Long.toUnsignedString(userId) + "-" + sessionToken);
+    }
 
-        return Long.toUnsignedString(userId) + "-" + sessionToken;
+    /**
+     * Replace hash made with outdated parameters. Runs in background, failure only delays rehash to next login.
+     */
+    private void rehashPassword(long userId, String password) {
+        try {
+            passwordHasher.encode(password)
+                    .thenCompose(encodedPassword -> storage.updatePassword(userId, encodedPassword))
+                    .whenComplete((result, error) -> {
+                        if (error != null) {
+                            log.warn("Cannot rehash password of user {}: {}", Long.toUnsignedString(userId), error.toString());
+                        }
+                    });
+        } catch (ResponseStatusException e) {
+            log.debug("Password hashing pool is busy, rehash is postponed");
+        }
     }
 
     public void logout(String auth) throws ExecutionException, InterruptedException {
+        await(logoutAsync(auth));
+    }
+
+    public CompletableFuture<Void> logoutAsync(String auth) {
         var token = parseAuthCookie(auth);
 
-        checkAuthAndGetUserId(auth);
-        //token is valid at this point
-
-        @Language("SQL")
-        String removeUserSessionQuery = """
-                DECLARE $user_id AS uint64;
-                DECLARE $session_token AS utf8;
-                DELETE from sessions
-                WHERE user_id==$user_id and session_token==$session_token;
-                """;
-        db.supplyResult(session -> session.executeDataQuery(
-                removeUserSessionQuery,
-                TxControl.serializableRw(),
-                Params.of(
-                        "$user_id", newUint64(token.userId()),
-                        "$session_token", newText(token.token())
-                )
-        )).get();
+        return checkAuthAndGetUserIdAsync(auth)
+                //token is valid at this point
+                .thenCompose(userId -> storage.deleteSession(token.userId(), token.token()))
+                .thenAccept(result -> sessionCache.evict(token));
     }
 
     /**
      * Check token validity and extract user id from it.
+     * Recently validated tokens are served from {@link SessionCache} without database round trip.
      *
      * @param auth auth string
      * @return user id
      * @throws ResponseStatusException when token is invalid
      */
     public long checkAuthAndGetUserId(String auth) throws ExecutionException, InterruptedException {
+        return await(checkAuthAndGetUserIdAsync(auth));
+    }
+
+    /**
+     * Async variant of {@link #checkAuthAndGetUserId(String)}. Cache hit completes immediately.
+     */
+    public CompletableFuture<Long> checkAuthAndGetUserIdAsync(String auth) {
         var token = parseAuthCookie(auth);
 
-        @Language("SQL")
-        String getUserSessionQuery = """
-                DECLARE $user_id AS uint64;
-                DECLARE $session_token AS utf8;
-                SELECT user_id, session_token, session_expiry
-                FROM sessions
-                WHERE user_id==$user_id and session_token==$session_token;
-                """;
-
-        var sessionQuery = db.supplyResult(session -> session.executeDataQuery(
-                getUserSessionQuery,
-                TxControl.serializableRw(),
-                Params.of(
-                        "$user_id", newUint64(token.userId()),
-                        "$session_token", newText(token.token())
-                )
-        )).get();
-
-        if (sessionQuery.getValue().getRowCount(0) == 0) {
-            throw new ResponseStatusException(UNAUTHORIZED);
+        var cachedSession = sessionCache.get(token);
+        if (cachedSession != null) {
+            return CompletableFuture.completedFuture(cachedSession.userId());
         }
 
-        return token.userId;
+        return storage.getSessionExpiry(token.userId(), token.token()).thenApply(expiry -> {
+            if (expiry == null || !expiry.isAfter(Instant.now())) {
+                throw new ResponseStatusException(UNAUTHORIZED);
+            }
+            sessionCache.put(token, expiry);
+
+            return token.userId;
+        });
     }
 
     public record UserToken(long userId, String token) {
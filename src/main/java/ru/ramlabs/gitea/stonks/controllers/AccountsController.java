@@ -1,33 +1,30 @@
 package ru.ramlabs.gitea.stonks.controllers;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
 import ru.ramlabs.gitea.stonks.api.Accounts;
+import ru.ramlabs.gitea.stonks.api.CollectionVersions;
+import ru.ramlabs.gitea.stonks.api.KeysetPagination.PageRequest;
 import ru.ramlabs.gitea.stonks.api.Users;
-import ru.ramlabs.gitea.stonks.utils.UnsignedLongToString;
+import ru.ramlabs.gitea.stonks.storage.CollectionVersionStorage.Collection;
 
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 public class AccountsController {
 
     private final Accounts accounts;
     private final Users users;
+    private final CollectionVersions versions;
 
-    public AccountsController(Accounts accounts, Users users) {
+    public AccountsController(Accounts accounts, Users users, CollectionVersions versions) {
         this.accounts = accounts;
         this.users = users;
-    }
-
-    public record GetUserAccountsParams(
-            @JsonProperty("start_at")
-            @JsonDeserialize(using = UnsignedLongToString.Deserializer.class)
-            long startAt
-    ) {
-
+        this.versions = versions;
     }
 
     @PostMapping(
@@ -35,9 +32,30 @@ public class AccountsController {
             produces = "application/json",
             consumes = "application/json"
     )
-    public Accounts.GetAccountsResult getUserAccounts(@CookieValue String auth, @RequestBody(required = false) GetUserAccountsParams params) throws ExecutionException, InterruptedException {
-        long userId = users.checkAuthAndGetUserId(auth);
-        return accounts.getUserAccounts(userId, params == null ? 0 : params.startAt);
+    public CompletableFuture<ResponseEntity<Accounts.GetAccountsResult>> getUserAccounts(
+            @CookieValue String auth,
+            @RequestBody(required = false) PageRequest page) {
+        var request = page == null ? PageRequest.FIRST : page;
+        return users.checkAuthAndGetUserIdAsync(auth)
+                .thenCompose(userId -> versions.tagged(userId, Collection.ACCOUNTS, request,
+                        () -> accounts.getUserAccountsAsync(userId, request)));
+    }
+
+    /**
+     * Same page as POST, but may be answered with 304 when {@code If-None-Match} has its current ETag.
+     */
+    @GetMapping(path = "/api/accounts",
+            produces = "application/json")
+    public CompletableFuture<ResponseEntity<Accounts.GetAccountsResult>> getUserAccountsByQuery(
+            @CookieValue String auth,
+            @RequestParam(value = "start_at", required = false) String startAt,
+            @RequestParam(value = "end_before", required = false) String endBefore,
+            @RequestParam(value = "page_size", required = false) Integer pageSize,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        var request = PageRequest.of(startAt, endBefore, pageSize);
+        return users.checkAuthAndGetUserIdAsync(auth)
+                .thenCompose(userId -> versions.conditional(userId, Collection.ACCOUNTS, request, ifNoneMatch,
+                        () -> accounts.getUserAccountsAsync(userId, request)));
     }
 
     public record CreateUserAccountParameters(
@@ -55,12 +73,13 @@ public class AccountsController {
             consumes = "application/json",
             produces = "application/json"
     )
-    public Accounts.Account createUserAccount(@CookieValue String auth, @RequestBody CreateUserAccountParameters params) throws ExecutionException, InterruptedException {
-        long userId = users.checkAuthAndGetUserId(auth);
-        if (params.accountName == null) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "account_name not set");
-        }
-        return accounts.createUserAccount(userId, params.accountName, params.description, params.bankId);
+    public CompletableFuture<Accounts.Account> createUserAccount(@CookieValue String auth, @RequestBody CreateUserAccountParameters params) {
+        return users.checkAuthAndGetUserIdAsync(auth).thenCompose(userId -> {
+            if (params.accountName == null) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "account_name not set");
+            }
+            return accounts.createUserAccountAsync(userId, params.accountName, params.description, params.bankId);
+        });
     }
 
     public record DeleteUserAccountParameters(
@@ -73,12 +92,14 @@ public class AccountsController {
     @DeleteMapping(path = "/api/accounts",
             consumes = "application/json"
     )
-    public void deleteUserAccount(@CookieValue String auth, @RequestBody DeleteUserAccountParameters params) throws ExecutionException, InterruptedException {
-        long userId = users.checkAuthAndGetUserId(auth);
-        var deleted = accounts.deleteUserAccount(userId, params.accountId);
-        if (!deleted) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Account not found");
-        }
+    public CompletableFuture<Void> deleteUserAccount(@CookieValue String auth, @RequestBody DeleteUserAccountParameters params) {
+        return users.checkAuthAndGetUserIdAsync(auth)
+                .thenCompose(userId -> accounts.deleteUserAccountAsync(userId, params.accountId))
+                .thenAccept(deleted -> {
+                    if (!deleted) {
+                        throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Account not found");
+                    }
+                });
     }
 
 
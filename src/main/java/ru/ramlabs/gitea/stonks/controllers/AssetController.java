@@ -3,26 +3,33 @@ package ru.ramlabs.gitea.stonks.controllers;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
 import ru.ramlabs.gitea.stonks.api.Assets;
+import ru.ramlabs.gitea.stonks.api.CollectionVersions;
+import ru.ramlabs.gitea.stonks.api.KeysetPagination.PageRequest;
 import ru.ramlabs.gitea.stonks.api.Users;
+import ru.ramlabs.gitea.stonks.storage.CollectionVersionStorage.Collection;
 import ru.ramlabs.gitea.stonks.utils.UnsignedLongToString;
 
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @Slf4j
 public class AssetController {
 
-    public AssetController(Users users, Assets assets) {
+    public AssetController(Users users, Assets assets, CollectionVersions versions) {
         this.users = users;
         this.assets = assets;
+        this.versions = versions;
     }
 
     private final Users users;
     private final Assets assets;
+    private final CollectionVersions versions;
 
     public record AddAssetParams(
             String name,
@@ -35,25 +42,47 @@ public class AssetController {
 
     @PostMapping(path = "/api/assets",
             produces = "application/json")
-    public Assets.GetAssetsResult getUserBanks(@CookieValue String auth) throws ExecutionException, InterruptedException {
-        long userId = users.checkAuthAndGetUserId(auth);
-        return assets.getUserAssets(userId);
+    public CompletableFuture<ResponseEntity<Assets.GetAssetsResult>> getUserBanks(
+            @CookieValue String auth,
+            @RequestBody(required = false) PageRequest page) {
+        var request = page == null ? PageRequest.FIRST : page;
+        return users.checkAuthAndGetUserIdAsync(auth)
+                .thenCompose(userId -> versions.tagged(userId, Collection.ASSETS, request,
+                        () -> assets.getUserAssetsAsync(userId, request)));
+    }
+
+    /**
+     * Same page as POST, but may be answered with 304 when {@code If-None-Match} has its current ETag.
+     */
+    @GetMapping(path = "/api/assets",
+            produces = "application/json")
+    public CompletableFuture<ResponseEntity<Assets.GetAssetsResult>> getUserAssetsByQuery(
+            @CookieValue String auth,
+            @RequestParam(value = "start_at", required = false) String startAt,
+            @RequestParam(value = "end_before", required = false) String endBefore,
+            @RequestParam(value = "page_size", required = false) Integer pageSize,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        var request = PageRequest.of(startAt, endBefore, pageSize);
+        return users.checkAuthAndGetUserIdAsync(auth)
+                .thenCompose(userId -> versions.conditional(userId, Collection.ASSETS, request, ifNoneMatch,
+                        () -> assets.getUserAssetsAsync(userId, request)));
     }
 
     @PutMapping(path = "/api/assets",
             consumes = "application/json",
             produces = "application/json")
-    public Assets.Asset addUserAsset(@RequestBody AddAssetParams params, @CookieValue String auth) throws ExecutionException, InterruptedException {
-        long userId = users.checkAuthAndGetUserId(auth);
-        if (params.name == null) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Asset name is null");
-        }
-        return assets.addUserAsset(
-                userId,
-                params.name,
-                params.comment,
-                params.decimalPlaces
-        );
+    public CompletableFuture<Assets.Asset> addUserAsset(@RequestBody AddAssetParams params, @CookieValue String auth) {
+        return users.checkAuthAndGetUserIdAsync(auth).thenCompose(userId -> {
+            if (params.name == null) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Asset name is null");
+            }
+            return assets.addUserAssetAsync(
+                    userId,
+                    params.name,
+                    params.comment,
+                    params.decimalPlaces
+            );
+        });
     }
 
     public record DeleteUserAssetParams(
@@ -67,12 +96,13 @@ public class AssetController {
     @DeleteMapping(path = "/api/assets",
             consumes = "application/json",
             produces = "application/json")
-    public void deleteUserBank(@CookieValue String auth, @RequestBody DeleteUserAssetParams params) throws ExecutionException, InterruptedException {
-        long userId = users.checkAuthAndGetUserId(auth);
-        var deleted = assets.deleteUserAsset(userId, params.id);
-        if (!deleted) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Asset not found");
-        }
+    public CompletableFuture<Void> deleteUserBank(@CookieValue String auth, @RequestBody DeleteUserAssetParams params) {
+        return users.checkAuthAndGetUserIdAsync(auth).thenAccept(userId -> {
+            var deleted = assets.deleteUserAsset(userId, params.id);
+            if (!deleted) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Asset not found");
+            }
+        });
     }
 
 }
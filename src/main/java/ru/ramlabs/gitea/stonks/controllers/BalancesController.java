@@ -1,7 +1,52 @@
 package ru.ramlabs.gitea.stonks.controllers;
 
-import org.springframework.web.bind.annotation.RestController;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import org.springframework.web.bind.annotation.*;
+import ru.ramlabs.gitea.stonks.api.Balances;
+import ru.ramlabs.gitea.stonks.api.Users;
+import ru.ramlabs.gitea.stonks.utils.UnsignedLongToString;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 public class BalancesController {
+
+    private final Balances balances;
+    private final Users users;
+
+    public BalancesController(Balances balances, Users users) {
+        this.balances = balances;
+        this.users = users;
+    }
+
+    public record GetAccountBalanceParams(
+            @JsonProperty("account_id")
+            @JsonDeserialize(using = UnsignedLongToString.Deserializer.class)
+            long accountId
+    ) {
+
+    }
+
+    @PostMapping(
+            path = "/api/balances",
+            produces = "application/json",
+            consumes = "application/json"
+    )
+    public CompletableFuture<List<Balances.AssetBalance>> getAccountBalance(@CookieValue String auth,
+                                                                            @RequestBody GetAccountBalanceParams params) {
+        return users.checkAuthAndGetUserIdAsync(auth)
+                .thenCompose(userId -> balances.getAccountBalanceAsync(userId, params.accountId));
+    }
+
+    @PostMapping(
+            path = "/api/balances/verify",
+            produces = "application/json"
+    )
+    public CompletableFuture<Balances.VerifyResult> verifyBalances(@CookieValue String auth,
+                                                                   @RequestParam(defaultValue = "false") boolean rebuild) {
+        return users.checkAuthAndGetUserIdAsync(auth)
+                .thenCompose(userId -> balances.verifyUserBalancesAsync(userId, rebuild));
+    }
 }
@@ -3,31 +3,33 @@ package ru.ramlabs.gitea.stonks.controllers;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
 import ru.ramlabs.gitea.stonks.api.Banks;
+import ru.ramlabs.gitea.stonks.api.CollectionVersions;
+import ru.ramlabs.gitea.stonks.api.KeysetPagination.PageRequest;
 import ru.ramlabs.gitea.stonks.api.Users;
+import ru.ramlabs.gitea.stonks.storage.CollectionVersionStorage.Collection;
 import ru.ramlabs.gitea.stonks.utils.UnsignedLongToString;
 
-import java.util.List;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @Slf4j
 public class BanksController {
 
-    public BanksController(Users users, Banks banks) {
+    public BanksController(Users users, Banks banks, CollectionVersions versions) {
         this.users = users;
         this.banks = banks;
+        this.versions = versions;
     }
 
     private final Users users;
     private final Banks banks;
-
-    public record GetBanksResult(List<Banks.Bank> banks) {
-
-    }
+    private final CollectionVersions versions;
 
     public record BankInfo(
             @JsonProperty("bank_name")
@@ -40,25 +42,46 @@ public class BanksController {
 
     @PostMapping(path = "/api/banks",
             produces = "application/json")
-    public GetBanksResult getUserBanks(@CookieValue String auth) throws ExecutionException, InterruptedException {
-        long userId = users.checkAuthAndGetUserId(auth);
-        var userBanks = banks.getUserBanks(userId);
-        return new GetBanksResult(userBanks);
+    public CompletableFuture<ResponseEntity<Banks.GetBanksResult>> getUserBanks(
+            @CookieValue String auth,
+            @RequestBody(required = false) PageRequest page) {
+        var request = page == null ? PageRequest.FIRST : page;
+        return users.checkAuthAndGetUserIdAsync(auth)
+                .thenCompose(userId -> versions.tagged(userId, Collection.BANKS, request,
+                        () -> banks.getUserBanksAsync(userId, request)));
+    }
+
+    /**
+     * Same page as POST, but may be answered with 304 when {@code If-None-Match} has its current ETag.
+     */
+    @GetMapping(path = "/api/banks",
+            produces = "application/json")
+    public CompletableFuture<ResponseEntity<Banks.GetBanksResult>> getUserBanksByQuery(
+            @CookieValue String auth,
+            @RequestParam(value = "start_at", required = false) String startAt,
+            @RequestParam(value = "end_before", required = false) String endBefore,
+            @RequestParam(value = "page_size", required = false) Integer pageSize,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        var request = PageRequest.of(startAt, endBefore, pageSize);
+        return users.checkAuthAndGetUserIdAsync(auth)
+                .thenCompose(userId -> versions.conditional(userId, Collection.BANKS, request, ifNoneMatch,
+                        () -> banks.getUserBanksAsync(userId, request)));
     }
 
     @PutMapping(path = "/api/banks",
             consumes = "application/json",
             produces = "application/json")
-    public Banks.Bank addUserBank(@RequestBody BankInfo bankInfo, @CookieValue String auth) throws ExecutionException, InterruptedException {
-        long userId = users.checkAuthAndGetUserId(auth);
-        if (bankInfo.bankName == null) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Bank name is null");
-        }
-        return banks.addUserBank(
-                userId,
-                bankInfo.bankName,
-                bankInfo.bankComment == null ? "" : bankInfo.bankComment
-        );
+    public CompletableFuture<Banks.Bank> addUserBank(@RequestBody BankInfo bankInfo, @CookieValue String auth) {
+        return users.checkAuthAndGetUserIdAsync(auth).thenCompose(userId -> {
+            if (bankInfo.bankName == null) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Bank name is null");
+            }
+            return banks.addUserBankAsync(
+                    userId,
+                    bankInfo.bankName,
+                    bankInfo.bankComment == null ? "" : bankInfo.bankComment
+            );
+        });
     }
 
     public record UpdateUserBank(
@@ -73,9 +96,9 @@ public class BanksController {
     @PatchMapping(path = "/api/banks",
             consumes = "application/json",
             produces = "application/json")
-    public Banks.Bank updateUserBank(@RequestBody UpdateUserBank updateUserBank, @CookieValue String auth) throws ExecutionException, InterruptedException {
-        long userId = users.checkAuthAndGetUserId(auth);
-        return banks.updateUserBank(userId, updateUserBank.bankId, updateUserBank.bankInfo);
+    public CompletableFuture<Banks.Bank> updateUserBank(@RequestBody UpdateUserBank updateUserBank, @CookieValue String auth) {
+        return users.checkAuthAndGetUserIdAsync(auth)
+                .thenApply(userId -> banks.updateUserBank(userId, updateUserBank.bankId, updateUserBank.bankInfo));
     }
 
     public record DeleteUserBankParameters(
@@ -89,12 +112,14 @@ public class BanksController {
     @DeleteMapping(path = "/api/banks",
             consumes = "application/json",
             produces = "application/json")
-    public void deleteUserBank(@CookieValue String auth, @RequestBody DeleteUserBankParameters updateUserBank) throws ExecutionException, InterruptedException {
-        long userId = users.checkAuthAndGetUserId(auth);
-        var deleted = banks.deleteUserBank(userId, updateUserBank.bankId);
-        if (!deleted) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Bank not found");
-        }
+    public CompletableFuture<Void> deleteUserBank(@CookieValue String auth, @RequestBody DeleteUserBankParameters updateUserBank) {
+        return users.checkAuthAndGetUserIdAsync(auth)
+                .thenCompose(userId -> banks.deleteUserBankAsync(userId, updateUserBank.bankId))
+                .thenAccept(deleted -> {
+                    if (!deleted) {
+                        throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Bank not found");
+                    }
+                });
     }
 
 }
@@ -0,0 +1,44 @@
+package ru.ramlabs.gitea.stonks.controllers;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import ru.ramlabs.gitea.stonks.api.Batches;
+import ru.ramlabs.gitea.stonks.api.Users;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+@RestController
+public class BatchController {
+
+    private final Batches batches;
+    private final Users users;
+
+    public BatchController(Batches batches, Users users) {
+        this.batches = batches;
+        this.users = users;
+    }
+
+    public record BatchParams(
+            List<Batches.Operation> operations
+    ) {
+
+    }
+
+    /**
+     * Authenticate once and apply all operations in one transaction. Nothing is written when any operation fails.
+     */
+    @PostMapping(
+            path = "/api/batch",
+            produces = "application/json",
+            consumes = "application/json"
+    )
+    public CompletableFuture<Batches.BatchResult> executeBatch(@CookieValue String auth, @RequestBody BatchParams params) {
+        if (params.operations == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "operations not set");
+        }
+        return users.checkAuthAndGetUserIdAsync(auth)
+                .thenCompose(userId -> batches.executeAsync(userId, params.operations));
+    }
+}
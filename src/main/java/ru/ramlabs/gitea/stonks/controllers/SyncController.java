@@ -0,0 +1,40 @@
+package ru.ramlabs.gitea.stonks.controllers;
+
+import org.jetbrains.annotations.Nullable;
+import org.springframework.web.bind.annotation.*;
+import ru.ramlabs.gitea.stonks.api.Sync;
+import ru.ramlabs.gitea.stonks.api.Users;
+
+import java.util.concurrent.CompletableFuture;
+
+@RestController
+public class SyncController {
+
+    private final Sync sync;
+    private final Users users;
+
+    public SyncController(Sync sync, Users users) {
+        this.sync = sync;
+        this.users = users;
+    }
+
+    public record SyncParams(
+            @Nullable
+            String token
+    ) {
+
+    }
+
+    /**
+     * Changes since token returned by previous call, everything without token.
+     */
+    @PostMapping(
+            path = "/api/sync",
+            produces = "application/json"
+    )
+    public CompletableFuture<Sync.SyncResult> sync(@CookieValue String auth,
+                                                   @RequestBody(required = false) SyncParams params) {
+        return users.checkAuthAndGetUserIdAsync(auth)
+                .thenCompose(userId -> sync.syncAsync(userId, params == null ? null : params.token));
+    }
+}
@@ -2,32 +2,53 @@ package ru.ramlabs.gitea.stonks.controllers;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import ru.ramlabs.gitea.stonks.api.CollectionVersions;
+import ru.ramlabs.gitea.stonks.api.DeltaTypes;
+import ru.ramlabs.gitea.stonks.api.Exports;
+import ru.ramlabs.gitea.stonks.api.Imports;
+import ru.ramlabs.gitea.stonks.api.KeysetPagination.PageRequest;
 import ru.ramlabs.gitea.stonks.api.Transactions;
 import ru.ramlabs.gitea.stonks.api.Users;
+import ru.ramlabs.gitea.stonks.storage.CollectionVersionStorage.Collection;
 import ru.ramlabs.gitea.stonks.utils.UnsignedLongToString;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 
 @RestController
 public class TransactionsController {
 
     private final Transactions transactions;
+    private final DeltaTypes deltaTypes;
+    private final Exports exports;
+    private final Imports imports;
     private final Users users;
+    private final CollectionVersions versions;
+    private final Duration exportTimeout;
 
-    public TransactionsController(Transactions transactions, Users users) {
+    public TransactionsController(Transactions transactions, DeltaTypes deltaTypes, Exports exports, Imports imports,
+                                  Users users, CollectionVersions versions,
+                                  @Value("${stonks.export.timeout}") Duration exportTimeout) {
         this.transactions = transactions;
+        this.deltaTypes = deltaTypes;
+        this.exports = exports;
+        this.imports = imports;
         this.users = users;
-    }
-
-    public record GetUserTransactionsParams(
-            @JsonProperty("start_at")
-            @JsonDeserialize(using = UnsignedLongToString.Deserializer.class)
-            long startAt
-    ) {
-
+        this.versions = versions;
+        this.exportTimeout = exportTimeout;
     }
 
     @PostMapping(
@@ -35,12 +56,30 @@ public class TransactionsController {
             produces = "application/json",
             consumes = "application/json"
     )
-    public Transactions.GetTransactionsResult getTransaction(
+    public CompletableFuture<ResponseEntity<Transactions.GetTransactionsResult>> getTransaction(
             @CookieValue String auth,
-            @RequestBody(required = false) GetUserTransactionsParams params)
-            throws ExecutionException, InterruptedException {
-        long userId = users.checkAuthAndGetUserId(auth);
-        return transactions.getTransactions(userId, params == null ? 0 : params.startAt);
+            @RequestBody(required = false) PageRequest page) {
+        var request = page == null ? PageRequest.FIRST : page;
+        return users.checkAuthAndGetUserIdAsync(auth)
+                .thenCompose(userId -> versions.tagged(userId, Collection.TRANSACTIONS, request,
+                        () -> transactions.getTransactionsAsync(userId, request)));
+    }
+
+    /**
+     * Same page as POST, but may be answered with 304 when {@code If-None-Match} has its current ETag.
+     */
+    @GetMapping(path = "/api/transactions",
+            produces = "application/json")
+    public CompletableFuture<ResponseEntity<Transactions.GetTransactionsResult>> getTransactionsByQuery(
+            @CookieValue String auth,
+            @RequestParam(value = "start_at", required = false) String startAt,
+            @RequestParam(value = "end_before", required = false) String endBefore,
+            @RequestParam(value = "page_size", required = false) Integer pageSize,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        var request = PageRequest.of(startAt, endBefore, pageSize);
+        return users.checkAuthAndGetUserIdAsync(auth)
+                .thenCompose(userId -> versions.conditional(userId, Collection.TRANSACTIONS, request, ifNoneMatch,
+                        () -> transactions.getTransactionsAsync(userId, request)));
     }
 
 
@@ -57,10 +96,50 @@ public class TransactionsController {
             produces = "application/json",
             consumes = "application/json"
     )
-    public Transactions.Transaction createTransaction(@CookieValue String auth, @RequestBody CreateTransactionsParams params)
-            throws ExecutionException, InterruptedException {
-        long userId = users.checkAuthAndGetUserId(auth);
-        return transactions.createTransaction(userId, params.name, params.timestamp, params.comment);
+    public CompletableFuture<Transactions.Transaction> createTransaction(@CookieValue String auth,
+                                                                         @RequestBody CreateTransactionsParams params) {
+        return users.checkAuthAndGetUserIdAsync(auth)
+                .thenCompose(userId -> transactions.createTransactionAsync(userId, params.name, params.timestamp, params.comment));
+    }
+
+    public record NewDeltaParams(
+            @JsonProperty("account_id")
+            @JsonDeserialize(using = UnsignedLongToString.Deserializer.class)
+            long accountId,
+            @JsonProperty("asset_id")
+            @JsonDeserialize(using = UnsignedLongToString.Deserializer.class)
+            long assetId,
+            long amount,
+            @JsonProperty("delta_type_id")
+            @JsonDeserialize(using = UnsignedLongToString.Deserializer.class)
+            long deltaTypeId
+    ) {
+
+    }
+
+    public record CreateTransactionWithDeltasParams(
+            String name,
+            String comment,
+            Instant timestamp,
+            List<NewDeltaParams> deltas
+    ) {
+
+    }
+
+    @PutMapping(
+            path = "/api/transactions/full",
+            produces = "application/json",
+            consumes = "application/json"
+    )
+    public CompletableFuture<Transactions.TransactionWithDeltas> createTransactionWithDeltas(
+            @CookieValue String auth,
+            @RequestBody CreateTransactionWithDeltasParams params) {
+        var deltas = params.deltas == null ? List.<Transactions.NewDelta>of() : params.deltas.stream()
+                .map(d -> new Transactions.NewDelta(d.accountId, d.assetId, d.amount, d.deltaTypeId))
+                .toList();
+        return users.checkAuthAndGetUserIdAsync(auth)
+                .thenCompose(userId -> transactions.createTransactionWithDeltasAsync(
+                        userId, params.name, params.timestamp, params.comment, deltas));
     }
 
     public record GetTransactionDeltasParams(
@@ -76,10 +155,10 @@ public class TransactionsController {
             produces = "application/json",
             consumes = "application/json"
     )
-    public List<Transactions.TransactionDelta> getTransactionDeltas(@CookieValue String auth, @RequestBody GetTransactionDeltasParams params)
-            throws ExecutionException, InterruptedException {
-        long userId = users.checkAuthAndGetUserId(auth);
-        return transactions.getTransactionDeltas(userId, params.transactionId);
+    public CompletableFuture<List<Transactions.TransactionDelta>> getTransactionDeltas(@CookieValue String auth,
+                                                                                       @RequestBody GetTransactionDeltasParams params) {
+        return users.checkAuthAndGetUserIdAsync(auth)
+                .thenCompose(userId -> transactions.getTransactionDeltasAsync(userId, params.transactionId));
     }
 
     @PostMapping(
@@ -87,9 +166,45 @@ public class TransactionsController {
             produces = "application/json",
             consumes = "application/json"
     )
-    public List<Transactions.DeltaType> getDeltaTypes(@CookieValue String auth) throws ExecutionException, InterruptedException {
-        users.checkAuthAndGetUserId(auth);
-        return transactions.getDeltaTypes();
+    public CompletableFuture<ResponseEntity<byte[]>> getDeltaTypes(@CookieValue String auth) {
+        //delta types are serialized once per refresh, not per request
+        return users.checkAuthAndGetUserIdAsync(auth)
+                .thenApply(userId -> ResponseEntity.ok()
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(deltaTypes.json()));
+    }
+
+    /**
+     * Export is the only long async request, so it gets its own {@code stonks.export.timeout}
+     * instead of raising default timeout of every other one.
+     */
+    @GetMapping(path = "/api/transactions/export")
+    public WebAsyncTask<Void> exportTransactions(
+            @CookieValue String auth,
+            @RequestParam(defaultValue = "NDJSON") Exports.Format format,
+            HttpServletResponse response) {
+        return new WebAsyncTask<>(exportTimeout.toMillis(), () -> {
+            long userId = users.checkAuthAndGetUserId(auth);
+            response.setContentType(format.contentType());
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                    .filename("transactions." + format.extension())
+                    .build()
+                    .toString());
+            exports.exportUserHistory(userId, format).writeTo(response.getOutputStream());
+            return null;
+        });
     }
 
+    /**
+     * Import history in export CSV format. Upload is streamed, request thread is busy until everything is written.
+     */
+    @PostMapping(
+            path = "/api/transactions/import",
+            consumes = "text/csv",
+            produces = "application/json"
+    )
+    public Imports.ImportResult importTransactions(@CookieValue String auth, InputStream csv)
+            throws IOException, ExecutionException, InterruptedException {
+        return imports.importCsv(users.checkAuthAndGetUserId(auth), csv);
+    }
 }
@@ -1,11 +1,11 @@
 package ru.ramlabs.gitea.stonks.controllers;
 
-import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseCookie;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CookieValue;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -14,7 +14,7 @@ import org.springframework.web.server.ResponseStatusException;
 import ru.ramlabs.gitea.stonks.api.Users;
 
 import java.time.Duration;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 public class UserController {
@@ -36,7 +36,7 @@ public class UserController {
     @PostMapping(path = "/api/user/register",
             consumes = "application/json",
             produces = "application/json")
-    public RegisterResult register(@RequestBody UserInfo registrationInfo) throws ExecutionException, InterruptedException {
+    public CompletableFuture<RegisterResult> register(@RequestBody UserInfo registrationInfo) {
         if (registrationInfo.username == null) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "No username");
         }
@@ -44,9 +44,10 @@ public class UserController {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "No password");
         }
 
-        var name = users.register(registrationInfo.username, registrationInfo.password);
-        LOGGER.info("Registered user: {}", registrationInfo.username);
-        return new RegisterResult(name);
+        return users.registerAsync(registrationInfo.username, registrationInfo.password).thenApply(name -> {
+            LOGGER.info("Registered user: {}", registrationInfo.username);
+            return new RegisterResult(name);
+        });
     }
 
     public record LoginResponse(String auth) {
@@ -55,7 +56,7 @@ public class UserController {
     @PostMapping(path = "/api/user/login",
             consumes = "application/json",
             produces = "application/json")
-    public LoginResponse login(HttpServletResponse response, @RequestBody UserInfo loginInfo) throws ExecutionException, InterruptedException {
+    public CompletableFuture<ResponseEntity<LoginResponse>> login(@RequestBody UserInfo loginInfo) {
         if (loginInfo.username == null) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "No username");
         }
@@ -64,20 +65,20 @@ public class UserController {
         }
 
         LOGGER.info("Register {}:{}", loginInfo.username, loginInfo.password);
-        var token = users.login(loginInfo.username, loginInfo.password);
-
-        var cookie = ResponseCookie.from("auth", token)
-                .httpOnly(true)
-                .secure(true)
-                .sameSite("strict")
-                .maxAge(Duration.ofDays(30))
-                .path("/")
-                .domain("")
-                .build();
-
-        response.addHeader(HttpHeaders.SET_COOKIE, cookie.toString());
-
-        return new LoginResponse(token);
+        return users.loginAsync(loginInfo.username, loginInfo.password).thenApply(token -> {
+            var cookie = ResponseCookie.from("auth", token)
+                    .httpOnly(true)
+                    .secure(true)
+                    .sameSite("strict")
+                    .maxAge(Duration.ofDays(30))
+                    .path("/")
+                    .domain("")
+                    .build();
+
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.SET_COOKIE, cookie.toString())
+                    .body(new LoginResponse(token));
+        });
     }
 
     public record GetUserResult(String username) {
@@ -86,9 +87,8 @@ public class UserController {
 
     @PostMapping(path = "/api/user",
             produces = "application/json")
-    public GetUserResult getAccount(@CookieValue String auth) throws ExecutionException, InterruptedException {
-        String username = users.getAccount(auth);
-        return new GetUserResult(username);
+    public CompletableFuture<GetUserResult> getAccount(@CookieValue String auth) {
+        return users.getAccountAsync(auth).thenApply(GetUserResult::new);
     }
 
     /**
@@ -96,18 +96,21 @@ public class UserController {
      * if and only if token is valid.
      */
     @PostMapping(path = "/api/user/logout")
-    public void logout(HttpServletResponse response, @CookieValue String auth) throws ExecutionException, InterruptedException {
-        users.logout(auth);
-        var cookie = ResponseCookie.from("auth", "0-00000000000000000000000000000000")
-                .secure(true)
-                .maxAge(0)
-                .httpOnly(true)
-                .sameSite("strict")
-                .path("/")
-                .domain("")
-                .build();
-
-        response.addHeader(HttpHeaders.SET_COOKIE, cookie.toString());
+    public CompletableFuture<ResponseEntity<Void>> logout(@CookieValue String auth) {
+        return users.logoutAsync(auth).thenApply(ignored -> {
+            var cookie = ResponseCookie.from("auth", "0-00000000000000000000000000000000")
+                    .secure(true)
+                    .maxAge(0)
+                    .httpOnly(true)
+                    .sameSite("strict")
+                    .path("/")
+                    .domain("")
+                    .build();
+
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.SET_COOKIE, cookie.toString())
+                    .<Void>build();
+        });
     }
 
 }
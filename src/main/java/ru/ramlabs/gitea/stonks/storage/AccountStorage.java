@@ -0,0 +1,19 @@
+package ru.ramlabs.gitea.stonks.storage;
+
+import ru.ramlabs.gitea.stonks.api.Accounts.Account;
+import ru.ramlabs.gitea.stonks.api.KeysetPagination.Page;
+import ru.ramlabs.gitea.stonks.api.KeysetPagination.PageRequest;
+
+import java.util.concurrent.CompletableFuture;
+
+public interface AccountStorage {
+
+    CompletableFuture<Void> insertAccount(long userId, Account account);
+
+    /**
+     * @return true when account existed
+     */
+    CompletableFuture<Boolean> deleteAccount(long userId, long accountId);
+
+    CompletableFuture<Page<Account>> accounts(long userId, PageRequest page);
+}
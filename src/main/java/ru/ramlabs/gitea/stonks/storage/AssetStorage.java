@@ -0,0 +1,14 @@
+package ru.ramlabs.gitea.stonks.storage;
+
+import ru.ramlabs.gitea.stonks.api.Assets.Asset;
+import ru.ramlabs.gitea.stonks.api.KeysetPagination.Page;
+import ru.ramlabs.gitea.stonks.api.KeysetPagination.PageRequest;
+
+import java.util.concurrent.CompletableFuture;
+
+public interface AssetStorage {
+
+    CompletableFuture<Void> insertAsset(long userId, Asset asset);
+
+    CompletableFuture<Page<Asset>> assets(long userId, PageRequest page);
+}
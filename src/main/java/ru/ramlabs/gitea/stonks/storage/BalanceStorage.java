@@ -0,0 +1,24 @@
+package ru.ramlabs.gitea.stonks.storage;
+
+import ru.ramlabs.gitea.stonks.api.Balances.AssetBalance;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public interface BalanceStorage {
+
+    CompletableFuture<List<AssetBalance>> balances(long userId, long accountId);
+
+    /**
+     * Compare stored balances with balances computed from deltas.
+     *
+     * @param rebuild replace stored balances with computed ones
+     * @return number of mismatched balances
+     */
+    CompletableFuture<Long> verify(long userId, boolean rebuild);
+
+    /**
+     * @return ids of users starting with {@code startUserId} inclusive, in unsigned order
+     */
+    CompletableFuture<List<Long>> userIds(long startUserId, int limit);
+}
@@ -0,0 +1,19 @@
+package ru.ramlabs.gitea.stonks.storage;
+
+import ru.ramlabs.gitea.stonks.api.Banks.Bank;
+import ru.ramlabs.gitea.stonks.api.KeysetPagination.Page;
+import ru.ramlabs.gitea.stonks.api.KeysetPagination.PageRequest;
+
+import java.util.concurrent.CompletableFuture;
+
+public interface BankStorage {
+
+    CompletableFuture<Void> insertBank(long userId, Bank bank);
+
+    /**
+     * @return true when bank existed
+     */
+    CompletableFuture<Boolean> deleteBank(long userId, long bankId);
+
+    CompletableFuture<Page<Bank>> banks(long userId, PageRequest page);
+}
@@ -0,0 +1,39 @@
+package ru.ramlabs.gitea.stonks.storage;
+
+import ru.ramlabs.gitea.stonks.api.Accounts.Account;
+import ru.ramlabs.gitea.stonks.api.Assets.Asset;
+import ru.ramlabs.gitea.stonks.api.Banks.Bank;
+import ru.ramlabs.gitea.stonks.api.Transactions.Transaction;
+import ru.ramlabs.gitea.stonks.storage.TransactionStorage.DeltaRow;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Inserts of several kinds committed together: either everything is written or nothing.
+ */
+public interface BatchStorage {
+
+    record BatchDelta(long transactionId, DeltaRow delta) {
+
+    }
+
+    /**
+     * New rows of one user. Deltas may reference transactions of the same batch.
+     */
+    record Batch(
+            List<Bank> banks,
+            List<Account> accounts,
+            List<Asset> assets,
+            List<Transaction> transactions,
+            List<BatchDelta> deltas
+    ) {
+
+    }
+
+    /**
+     * @throws org.springframework.web.server.ResponseStatusException (in future) with 404 when delta references
+     *                                                                 transaction that neither exists nor is in batch
+     */
+    CompletableFuture<Void> insertBatch(long userId, Batch batch);
+}
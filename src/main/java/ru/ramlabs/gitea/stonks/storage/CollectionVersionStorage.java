@@ -0,0 +1,45 @@
+package ru.ramlabs.gitea.stonks.storage;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Version of every user owned collection, increased by every write to that collection in the same transaction.
+ * Equal versions mean equal collection contents, so list can be answered as not modified without reading it.
+ * <p>
+ * Last change of every written entity, including deleted ones, is kept in change log of collection with the new
+ * version, see {@link SyncStorage}. Tombstones of deleted entities expire after {@code stonks.sync.tombstone-retention}.
+ */
+public interface CollectionVersionStorage {
+
+    enum Collection {
+        BANKS("banks"),
+        ACCOUNTS("accounts"),
+        ASSETS("assets"),
+        TRANSACTIONS("transactions");
+
+        private final String key;
+
+        Collection(String key) {
+            this.key = key;
+        }
+
+        /**
+         * Stored name of collection.
+         */
+        public String key() {
+            return key;
+        }
+    }
+
+    /**
+     * @return 0 when collection was never written
+     */
+    CompletableFuture<Long> version(long userId, Collection collection);
+
+    /**
+     * Record changes separately from write, for writes that bypass transactions, e.g. bulk upsert:
+     * increase version and add entities to change log with it.
+     */
+    CompletableFuture<Void> changed(long userId, Collection collection, List<Long> entityIds);
+}
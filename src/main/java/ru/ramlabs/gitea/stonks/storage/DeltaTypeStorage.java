@@ -0,0 +1,11 @@
+package ru.ramlabs.gitea.stonks.storage;
+
+import ru.ramlabs.gitea.stonks.api.Transactions.DeltaType;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public interface DeltaTypeStorage {
+
+    CompletableFuture<List<DeltaType>> deltaTypes();
+}
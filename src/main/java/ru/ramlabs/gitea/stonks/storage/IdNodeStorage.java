@@ -0,0 +1,26 @@
+package ru.ramlabs.gitea.stonks.storage;
+
+import java.time.Duration;
+import java.util.OptionalInt;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Leases of snowflake node ids. Lease belongs to one running instance until it expires,
+ * so replicas started from the same config get different node ids.
+ */
+public interface IdNodeStorage {
+
+    /**
+     * Lease the lowest node id in {@code [0, nodes)} that has no lease or has expired one.
+     *
+     * @return leased node id, or empty when every node id is leased
+     */
+    CompletableFuture<OptionalInt> acquire(String owner, int nodes, Duration ttl);
+
+    /**
+     * Extend lease of {@code owner}, even expired one, when nobody took it.
+     *
+     * @return false when node id is leased by another owner
+     */
+    CompletableFuture<Boolean> renew(int node, String owner, Duration ttl);
+}
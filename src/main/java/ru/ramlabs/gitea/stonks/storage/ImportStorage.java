@@ -0,0 +1,17 @@
+package ru.ramlabs.gitea.stonks.storage;
+
+import ru.ramlabs.gitea.stonks.api.Transactions.Transaction;
+import ru.ramlabs.gitea.stonks.storage.BatchStorage.BatchDelta;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Unchecked writes for bulk import. Rows are upserted as is, so writing the same rows again changes nothing.
+ * Balances are not maintained: caller rebuilds them with {@link BalanceStorage#verify(long, boolean)}
+ * after the last write.
+ */
+public interface ImportStorage {
+
+    CompletableFuture<Void> bulkUpsert(long userId, List<Transaction> transactions, List<BatchDelta> deltas);
+}
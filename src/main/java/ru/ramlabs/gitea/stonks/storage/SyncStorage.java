@@ -0,0 +1,43 @@
+package ru.ramlabs.gitea.stonks.storage;
+
+import ru.ramlabs.gitea.stonks.api.Accounts.Account;
+import ru.ramlabs.gitea.stonks.api.Assets.Asset;
+import ru.ramlabs.gitea.stonks.api.Banks.Bank;
+import ru.ramlabs.gitea.stonks.api.Transactions.Transaction;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Reads change log written by {@link CollectionVersionStorage}. Changes of collection are ordered by version,
+ * then by entity id, and are read after given position, so cost depends on number of changes, not on collection size.
+ * Log has one change per entity, entities written before change tracking have version 0, so reading from
+ * {@link Cursor#START} returns every entity.
+ */
+public interface SyncStorage {
+
+    /**
+     * Position in change log of one collection.
+     */
+    record Cursor(long version, long entityId) {
+        public static final Cursor START = new Cursor(0, 0);
+    }
+
+    /**
+     * @param updated current state of changed entities that exist
+     * @param deleted ids of changed entities that no longer exist
+     * @param last    position of last read change, or the given one when there are no changes
+     * @param more    true when there are changes after {@code last}
+     */
+    record Changes<T>(List<T> updated, List<Long> deleted, Cursor last, boolean more) {
+
+    }
+
+    CompletableFuture<Changes<Bank>> bankChanges(long userId, Cursor after, int limit);
+
+    CompletableFuture<Changes<Account>> accountChanges(long userId, Cursor after, int limit);
+
+    CompletableFuture<Changes<Asset>> assetChanges(long userId, Cursor after, int limit);
+
+    CompletableFuture<Changes<Transaction>> transactionChanges(long userId, Cursor after, int limit);
+}
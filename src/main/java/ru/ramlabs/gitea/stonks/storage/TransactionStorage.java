@@ -0,0 +1,53 @@
+package ru.ramlabs.gitea.stonks.storage;
+
+import ru.ramlabs.gitea.stonks.api.Exports.ExportRow;
+import ru.ramlabs.gitea.stonks.api.KeysetPagination.Page;
+import ru.ramlabs.gitea.stonks.api.KeysetPagination.PageRequest;
+import ru.ramlabs.gitea.stonks.api.Transactions.Transaction;
+import ru.ramlabs.gitea.stonks.api.Transactions.TransactionDelta;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Transactions and deltas. Every delta insert updates account balance atomically with it.
+ */
+public interface TransactionStorage {
+
+    /**
+     * Delta with generated id and multiplier of its type.
+     */
+    record DeltaRow(
+            long deltaId,
+            long accountId,
+            long assetId,
+            long amount,
+            long deltaTypeId,
+            int multiplier
+    ) {
+
+    }
+
+    CompletableFuture<Void> insertTransaction(long userId, Transaction transaction);
+
+    /**
+     * @throws org.springframework.web.server.ResponseStatusException (in future) with 404 when transaction does not exist
+     */
+    CompletableFuture<Void> insertDelta(long userId, long transactionId, DeltaRow delta);
+
+    CompletableFuture<Void> insertTransactionWithDeltas(long userId, Transaction transaction, List<DeltaRow> deltas);
+
+    /**
+     * @throws org.springframework.web.server.ResponseStatusException (in future) with 404 when transaction does not exist
+     */
+    CompletableFuture<List<TransactionDelta>> deltas(long userId, long transactionId);
+
+    CompletableFuture<Page<Transaction>> transactions(long userId, PageRequest page);
+
+    /**
+     * Read consistent snapshot of full history and pass it to consumer part by part. Consumer may block,
+     * next part is not read until it returns. Cancelling returned future stops reading.
+     */
+    CompletableFuture<Void> exportHistory(long userId, Consumer<List<ExportRow>> consumer);
+}
@@ -0,0 +1,36 @@
+package ru.ramlabs.gitea.stonks.storage;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Users and their sessions. User names are unique.
+ */
+public interface UserStorage {
+
+    record UserPassword(long userId, String encodedPassword) {
+
+    }
+
+    /**
+     * @throws org.springframework.web.server.ResponseStatusException (in future) when name is taken
+     */
+    CompletableFuture<Void> insertUser(long userId, String name, String encodedPassword);
+
+    CompletableFuture<@Nullable UserPassword> getPassword(String name);
+
+    CompletableFuture<Void> updatePassword(long userId, String encodedPassword);
+
+    CompletableFuture<@Nullable String> getUserName(long userId);
+
+    CompletableFuture<Void> insertSession(long userId, String token, Instant expiry);
+
+    /**
+     * @return expiry of session, null when session does not exist
+     */
+    CompletableFuture<@Nullable Instant> getSessionExpiry(long userId, String token);
+
+    CompletableFuture<Void> deleteSession(long userId, String token);
+}
@@ -0,0 +1,631 @@
+package ru.ramlabs.gitea.stonks.storage.memory;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import ru.ramlabs.gitea.stonks.api.Accounts.Account;
+import ru.ramlabs.gitea.stonks.api.Assets.Asset;
+import ru.ramlabs.gitea.stonks.api.Balances.AssetBalance;
+import ru.ramlabs.gitea.stonks.api.Banks.Bank;
+import ru.ramlabs.gitea.stonks.api.Exports.ExportRow;
+import ru.ramlabs.gitea.stonks.api.KeysetPagination;
+import ru.ramlabs.gitea.stonks.api.KeysetPagination.Page;
+import ru.ramlabs.gitea.stonks.api.KeysetPagination.PageRequest;
+import ru.ramlabs.gitea.stonks.api.Transactions.DeltaType;
+import ru.ramlabs.gitea.stonks.api.Transactions.Transaction;
+import ru.ramlabs.gitea.stonks.api.Transactions.TransactionDelta;
+import ru.ramlabs.gitea.stonks.storage.AccountStorage;
+import ru.ramlabs.gitea.stonks.storage.AssetStorage;
+import ru.ramlabs.gitea.stonks.storage.BalanceStorage;
+import ru.ramlabs.gitea.stonks.storage.BankStorage;
+import ru.ramlabs.gitea.stonks.storage.BatchStorage;
+import ru.ramlabs.gitea.stonks.storage.CollectionVersionStorage;
+import ru.ramlabs.gitea.stonks.storage.DeltaTypeStorage;
+import ru.ramlabs.gitea.stonks.storage.ImportStorage;
+import ru.ramlabs.gitea.stonks.storage.SyncStorage;
+import ru.ramlabs.gitea.stonks.storage.TransactionStorage;
+import ru.ramlabs.gitea.stonks.storage.UserStorage;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Storage backend that keeps everything in process memory, enabled with {@code memory} profile.
+ * For load tests and local profiling without database, data is lost on restart.
+ * <p>
+ * Data of every user is guarded by its own monitor, so operations of one user are serializable
+ * (like YDB transactions over rows of that user), while different users do not contend.
+ * Ids are ordered as unsigned, same as YDB {@code Uint64} keys.
+ */
+@Component
+@Profile(InMemoryStorage.PROFILE)
+public class InMemoryStorage implements UserStorage, AccountStorage, BankStorage, AssetStorage,
+        TransactionStorage, BalanceStorage, DeltaTypeStorage, BatchStorage, ImportStorage, CollectionVersionStorage,
+        SyncStorage {
+
+    public static final String PROFILE = "memory";
+
+    /**
+     * Same rows as {@code delta_type_id.yql}.
+     */
+    static final List<DeltaType> DELTA_TYPES = List.of(
+            new DeltaType(0, "fee", -1),
+            new DeltaType(100, "buy", 1),
+            new DeltaType(101, "buy payment", -1),
+            new DeltaType(200, "sell", -1),
+            new DeltaType(201, "sell revenue", 1),
+            new DeltaType(300, "deposit", 1),
+            new DeltaType(301, "deposit payment", -1),
+            new DeltaType(302, "deposit interest", 1),
+            new DeltaType(400, "undeposit", -1),
+            new DeltaType(401, "undeposit revenue", 1),
+            new DeltaType(402, "undeposit interest", 1)
+    );
+
+    private static final int EXPORT_PART_SIZE = 1000;
+
+    /**
+     * Order of change log, same as {@code changes_by_version} index of {@code collection_changes}.
+     */
+    private static final Comparator<Cursor> CHANGE_ORDER = Comparator.comparingLong(Cursor::version)
+            .thenComparing(Cursor::entityId, Long::compareUnsigned);
+
+    private record User(String name, String encodedPassword) {
+
+    }
+
+    private record SessionKey(long userId, String token) {
+
+    }
+
+    private record BalanceKey(long accountId, long assetId) {
+
+    }
+
+    /**
+     * Everything owned by one user.
+     */
+    private static final class UserData {
+        final NavigableMap<Long, Account> accounts = new TreeMap<>(Long::compareUnsigned);
+        final NavigableMap<Long, Bank> banks = new TreeMap<>(Long::compareUnsigned);
+        final NavigableMap<Long, Asset> assets = new TreeMap<>(Long::compareUnsigned);
+        final NavigableMap<Long, Transaction> transactions = new TreeMap<>(Long::compareUnsigned);
+        final Map<Long, List<DeltaRow>> deltas = new HashMap<>();
+        final Map<BalanceKey, Long> balances = new HashMap<>();
+        final Map<Collection, Long> versions = new EnumMap<>(Collection.class);
+        final Map<Collection, NavigableSet<Cursor>> changes = new EnumMap<>(Collection.class);
+        /**
+         * Last change of every entity, change log keeps only it, same as {@code collection_changes} keyed by entity.
+         */
+        final Map<Collection, Map<Long, Cursor>> lastChanges = new EnumMap<>(Collection.class);
+
+        void changed(Collection collection, List<Long> entityIds) {
+            if (entityIds.isEmpty()) {
+                return;
+            }
+            long version = versions.merge(collection, 1L, Long::sum);
+            var log = changes.computeIfAbsent(collection, key -> new TreeSet<>(CHANGE_ORDER));
+            var last = lastChanges.computeIfAbsent(collection, key -> new HashMap<>());
+            for (long entityId : entityIds) {
+                var change = new Cursor(version, entityId);
+                var previous = last.put(entityId, change);
+                if (previous != null) {
+                    log.remove(previous);
+                }
+                log.add(change);
+            }
+        }
+    }
+
+    private final KeysetPagination pagination;
+    private final Map<Long, DeltaType> deltaTypesById = DELTA_TYPES.stream()
+            .collect(Collectors.toUnmodifiableMap(DeltaType::id, deltaType -> deltaType));
+    private final ConcurrentSkipListMap<Long, User> users = new ConcurrentSkipListMap<>(Long::compareUnsigned);
+    private final Map<String, Long> userIdsByName = new ConcurrentHashMap<>();
+    private final Map<SessionKey, Instant> sessions = new ConcurrentHashMap<>();
+    private final Map<Long, UserData> userData = new ConcurrentHashMap<>();
+
+    public InMemoryStorage(KeysetPagination pagination) {
+        this.pagination = pagination;
+    }
+
+    /**
+     * Errors are returned in future, same as from database backend.
+     */
+    private static <T> CompletableFuture<T> supply(Supplier<T> supplier) {
+        try {
+            return CompletableFuture.completedFuture(supplier.get());
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private static CompletableFuture<Void> run(Runnable action) {
+        return supply(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    private UserData data(long userId) {
+        return userData.computeIfAbsent(userId, id -> new UserData());
+    }
+
+    private <T> Page<T> page(Collection collection, NavigableMap<Long, T> items, PageRequest request,
+                             ToLongFunction<T> key) {
+        int pageSize = pagination.pageSize(collection, request);
+        var range = request.reverse()
+                ? items.headMap(request.cursor(), false).descendingMap()
+                : items.tailMap(request.cursor(), true);
+
+        var rows = new ArrayList<T>(pageSize + 1);
+        for (T item : range.values()) {
+            if (rows.size() > pageSize) {
+                break;
+            }
+            rows.add(item);
+        }
+        return KeysetPagination.page(request, pageSize, rows, key);
+    }
+
+    @Override
+    public CompletableFuture<Void> insertUser(long userId, String name, String encodedPassword) {
+        return run(() -> {
+            if (userIdsByName.putIfAbsent(name, userId) != null) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "User exists");
+            }
+            users.put(userId, new User(name, encodedPassword));
+        });
+    }
+
+    @Override
+    public CompletableFuture<UserPassword> getPassword(String name) {
+        return supply(() -> {
+            var userId = userIdsByName.get(name);
+            var user = userId == null ? null : users.get(userId);
+            return user == null ? null : new UserPassword(userId, user.encodedPassword());
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> updatePassword(long userId, String encodedPassword) {
+        return run(() -> users.computeIfPresent(userId, (id, user) -> new User(user.name(), encodedPassword)));
+    }
+
+    @Override
+    public CompletableFuture<String> getUserName(long userId) {
+        return supply(() -> {
+            var user = users.get(userId);
+            return user == null ? null : user.name();
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> insertSession(long userId, String token, Instant expiry) {
+        return run(() -> sessions.put(new SessionKey(userId, token), expiry));
+    }
+
+    @Override
+    public CompletableFuture<Instant> getSessionExpiry(long userId, String token) {
+        return supply(() -> sessions.get(new SessionKey(userId, token)));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteSession(long userId, String token) {
+        return run(() -> sessions.remove(new SessionKey(userId, token)));
+    }
+
+    @Override
+    public CompletableFuture<Void> insertAccount(long userId, Account account) {
+        var data = data(userId);
+        return run(() -> {
+            synchronized (data) {
+                data.accounts.put(account.accountId(), account);
+                data.changed(Collection.ACCOUNTS, List.of(account.accountId()));
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteAccount(long userId, long accountId) {
+        var data = data(userId);
+        return supply(() -> {
+            synchronized (data) {
+                if (data.accounts.remove(accountId) == null) {
+                    return false;
+                }
+                data.changed(Collection.ACCOUNTS, List.of(accountId));
+                return true;
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Page<Account>> accounts(long userId, PageRequest page) {
+        var data = data(userId);
+        return supply(() -> {
+            synchronized (data) {
+                return page(Collection.ACCOUNTS, data.accounts, page, Account::accountId);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> insertBank(long userId, Bank bank) {
+        var data = data(userId);
+        return run(() -> {
+            synchronized (data) {
+                data.banks.put(bank.bankId(), bank);
+                data.changed(Collection.BANKS, List.of(bank.bankId()));
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteBank(long userId, long bankId) {
+        var data = data(userId);
+        return supply(() -> {
+            synchronized (data) {
+                if (data.banks.remove(bankId) == null) {
+                    return false;
+                }
+                data.changed(Collection.BANKS, List.of(bankId));
+                return true;
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Page<Bank>> banks(long userId, PageRequest page) {
+        var data = data(userId);
+        return supply(() -> {
+            synchronized (data) {
+                return page(Collection.BANKS, data.banks, page, Bank::bankId);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> insertAsset(long userId, Asset asset) {
+        var data = data(userId);
+        return run(() -> {
+            synchronized (data) {
+                data.assets.put(asset.id(), asset);
+                data.changed(Collection.ASSETS, List.of(asset.id()));
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Page<Asset>> assets(long userId, PageRequest page) {
+        var data = data(userId);
+        return supply(() -> {
+            synchronized (data) {
+                return page(Collection.ASSETS, data.assets, page, Asset::id);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> insertTransaction(long userId, Transaction transaction) {
+        var data = data(userId);
+        return run(() -> {
+            synchronized (data) {
+                data.transactions.put(transaction.transactionId(), transaction);
+                data.changed(Collection.TRANSACTIONS, List.of(transaction.transactionId()));
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> insertDelta(long userId, long transactionId, DeltaRow delta) {
+        var data = data(userId);
+        return run(() -> {
+            synchronized (data) {
+                requireTransaction(data, transactionId);
+                addDelta(data, transactionId, delta);
+                data.changed(Collection.TRANSACTIONS, List.of(transactionId));
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> insertTransactionWithDeltas(long userId, Transaction transaction, List<DeltaRow> deltas) {
+        var data = data(userId);
+        return run(() -> {
+            synchronized (data) {
+                data.transactions.put(transaction.transactionId(), transaction);
+                for (DeltaRow delta : deltas) {
+                    addDelta(data, transaction.transactionId(), delta);
+                }
+                data.changed(Collection.TRANSACTIONS, List.of(transaction.transactionId()));
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> insertBatch(long userId, Batch batch) {
+        var data = data(userId);
+        return run(() -> {
+            synchronized (data) {
+                //validate before first write, so failed batch leaves no trace
+                var newTransactions = new HashSet<Long>();
+                batch.transactions().forEach(transaction -> newTransactions.add(transaction.transactionId()));
+                for (BatchDelta delta : batch.deltas()) {
+                    if (!newTransactions.contains(delta.transactionId())) {
+                        requireTransaction(data, delta.transactionId());
+                    }
+                }
+
+                batch.banks().forEach(bank -> data.banks.put(bank.bankId(), bank));
+                batch.accounts().forEach(account -> data.accounts.put(account.accountId(), account));
+                batch.assets().forEach(asset -> data.assets.put(asset.id(), asset));
+                batch.transactions().forEach(transaction -> data.transactions.put(transaction.transactionId(), transaction));
+                batch.deltas().forEach(delta -> addDelta(data, delta.transactionId(), delta.delta()));
+                data.changed(Collection.BANKS, batch.banks().stream().map(Bank::bankId).toList());
+                data.changed(Collection.ACCOUNTS, batch.accounts().stream().map(Account::accountId).toList());
+                data.changed(Collection.ASSETS, batch.assets().stream().map(Asset::id).toList());
+                //existing transactions that got deltas are changed too
+                var changedTransactions = new LinkedHashSet<Long>();
+                batch.transactions().forEach(transaction -> changedTransactions.add(transaction.transactionId()));
+                batch.deltas().forEach(delta -> changedTransactions.add(delta.transactionId()));
+                data.changed(Collection.TRANSACTIONS, List.copyOf(changedTransactions));
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> bulkUpsert(long userId, List<Transaction> transactions, List<BatchDelta> deltas) {
+        var data = data(userId);
+        return run(() -> {
+            synchronized (data) {
+                transactions.forEach(transaction -> data.transactions.put(transaction.transactionId(), transaction));
+                for (BatchDelta delta : deltas) {
+                    var transactionDeltas = data.deltas.computeIfAbsent(delta.transactionId(), id -> new ArrayList<>());
+                    transactionDeltas.removeIf(existing -> existing.deltaId() == delta.delta().deltaId());
+                    transactionDeltas.add(delta.delta());
+                }
+            }
+        });
+    }
+
+    private static void requireTransaction(UserData data, long transactionId) {
+        if (!data.transactions.containsKey(transactionId)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Transaction not found");
+        }
+    }
+
+    private static void addDelta(UserData data, long transactionId, DeltaRow delta) {
+        data.deltas.computeIfAbsent(transactionId, id -> new ArrayList<>()).add(delta);
+        data.balances.merge(new BalanceKey(delta.accountId(), delta.assetId()),
+                delta.amount() * delta.multiplier(), Long::sum);
+    }
+
+    @Override
+    public CompletableFuture<List<TransactionDelta>> deltas(long userId, long transactionId) {
+        var data = data(userId);
+        return supply(() -> {
+            synchronized (data) {
+                requireTransaction(data, transactionId);
+                return data.deltas.getOrDefault(transactionId, List.of()).stream()
+                        .map(delta -> new TransactionDelta(delta.deltaId(), delta.amount()))
+                        .toList();
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Page<Transaction>> transactions(long userId, PageRequest page) {
+        var data = data(userId);
+        return supply(() -> {
+            synchronized (data) {
+                return page(Collection.TRANSACTIONS, data.transactions, page, Transaction::transactionId);
+            }
+        });
+    }
+
+    /**
+     * Snapshot is copied under user lock, consumer is called on another thread, since it may block until
+     * caller reads previous parts.
+     */
+    @Override
+    public CompletableFuture<Void> exportHistory(long userId, Consumer<List<ExportRow>> consumer) {
+        var data = data(userId);
+        var rows = new ArrayList<ExportRow>();
+        synchronized (data) {
+            for (Transaction tx : data.transactions.values()) {
+                var deltas = data.deltas.getOrDefault(tx.transactionId(), List.of());
+                if (deltas.isEmpty()) {
+                    rows.add(new ExportRow(tx.transactionId(), tx.name(), tx.timestamp(), tx.comment(),
+                            null, null, null, null, null));
+                }
+                for (DeltaRow delta : deltas) {
+                    rows.add(new ExportRow(tx.transactionId(), tx.name(), tx.timestamp(), tx.comment(),
+                            delta.deltaId(), delta.accountId(), delta.assetId(), delta.amount(), delta.deltaTypeId()));
+                }
+            }
+        }
+
+        var result = new CompletableFuture<Void>();
+        CompletableFuture.runAsync(() -> {
+            for (int i = 0; i < rows.size() && !result.isDone(); i += EXPORT_PART_SIZE) {
+                consumer.accept(rows.subList(i, Math.min(rows.size(), i + EXPORT_PART_SIZE)));
+            }
+        }).whenComplete((ignored, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(null);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<List<AssetBalance>> balances(long userId, long accountId) {
+        var data = data(userId);
+        return supply(() -> {
+            synchronized (data) {
+                var result = new ArrayList<AssetBalance>();
+                data.balances.forEach((key, balance) -> {
+                    if (key.accountId() == accountId) {
+                        result.add(new AssetBalance(key.assetId(), balance));
+                    }
+                });
+                return result;
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Long> verify(long userId, boolean rebuild) {
+        var data = data(userId);
+        return supply(() -> {
+            synchronized (data) {
+                var computed = new HashMap<BalanceKey, Long>();
+                data.deltas.values().forEach(deltas -> deltas.forEach(delta -> {
+                    var deltaType = deltaTypesById.get(delta.deltaTypeId());
+                    if (deltaType != null) {
+                        computed.merge(new BalanceKey(delta.accountId(), delta.assetId()),
+                                delta.amount() * deltaType.multiplier(), Long::sum);
+                    }
+                }));
+
+                var keys = new HashSet<>(computed.keySet());
+                keys.addAll(data.balances.keySet());
+                long mismatches = keys.stream()
+                        .filter(key -> computed.getOrDefault(key, 0L).longValue()
+                                != data.balances.getOrDefault(key, 0L).longValue())
+                        .count();
+
+                if (rebuild) {
+                    data.balances.clear();
+                    data.balances.putAll(computed);
+                }
+                return mismatches;
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<Long>> userIds(long startUserId, int limit) {
+        return supply(() -> users.tailMap(startUserId, true).keySet().stream()
+                .limit(limit)
+                .toList());
+    }
+
+    @Override
+    public CompletableFuture<Long> version(long userId, Collection collection) {
+        var data = data(userId);
+        return supply(() -> {
+            synchronized (data) {
+                return data.versions.getOrDefault(collection, 0L);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> changed(long userId, Collection collection, List<Long> entityIds) {
+        var data = data(userId);
+        return run(() -> {
+            synchronized (data) {
+                data.changed(collection, entityIds);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Changes<Bank>> bankChanges(long userId, Cursor after, int limit) {
+        var data = data(userId);
+        return supply(() -> {
+            synchronized (data) {
+                return changes(data, Collection.BANKS, data.banks, after, limit);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Changes<Account>> accountChanges(long userId, Cursor after, int limit) {
+        var data = data(userId);
+        return supply(() -> {
+            synchronized (data) {
+                return changes(data, Collection.ACCOUNTS, data.accounts, after, limit);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Changes<Asset>> assetChanges(long userId, Cursor after, int limit) {
+        var data = data(userId);
+        return supply(() -> {
+            synchronized (data) {
+                return changes(data, Collection.ASSETS, data.assets, after, limit);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Changes<Transaction>> transactionChanges(long userId, Cursor after, int limit) {
+        var data = data(userId);
+        return supply(() -> {
+            synchronized (data) {
+                return changes(data, Collection.TRANSACTIONS, data.transactions, after, limit);
+            }
+        });
+    }
+
+    private static <T> Changes<T> changes(UserData data, Collection collection, Map<Long, T> items,
+                                          Cursor after, int limit) {
+        var log = data.changes.get(collection);
+        var changed = new LinkedHashSet<Long>();
+        var last = after;
+        int rows = 0;
+        boolean more = false;
+        if (log != null) {
+            for (Cursor change : log.tailSet(after, false)) {
+                if (rows++ == limit) {
+                    more = true;
+                    break;
+                }
+                last = change;
+                changed.add(change.entityId());
+            }
+        }
+
+        var updated = new ArrayList<T>();
+        var deleted = new ArrayList<Long>();
+        for (long entityId : changed) {
+            var entity = items.get(entityId);
+            if (entity == null) {
+                deleted.add(entityId);
+            } else {
+                updated.add(entity);
+            }
+        }
+        return new Changes<>(updated, deleted, last, more);
+    }
+
+    @Override
+    public CompletableFuture<List<DeltaType>> deltaTypes() {
+        return CompletableFuture.completedFuture(DELTA_TYPES);
+    }
+}
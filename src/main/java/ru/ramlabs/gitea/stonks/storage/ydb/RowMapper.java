@@ -0,0 +1,86 @@
+package ru.ramlabs.gitea.stonks.storage.ydb;
+
+import org.jetbrains.annotations.Nullable;
+import tech.ydb.table.result.ResultSetReader;
+import tech.ydb.table.result.ValueReader;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Maps rows of result set to records by column index.
+ * <p>
+ * Column names are resolved to indexes once per result set by {@code compiler}, which returns reader of
+ * single row. Reading row by index skips name lookup for every column of every row:
+ * <pre>{@code
+ * RowMapper<Bank> BANK_ROWS = RowMapper.of(resultSet -> {
+ *     int id = index(resultSet, "bank_id");
+ *     int name = index(resultSet, "bank_name");
+ *     return row -> new Bank(row.getColumn(id).getUint64(), row.getColumn(name).getText());
+ * });
+ * }</pre>
+ */
+public final class RowMapper<T> {
+
+    @FunctionalInterface
+    public interface Row<T> {
+        T read(ResultSetReader row);
+    }
+
+    private final Function<ResultSetReader, Row<T>> compiler;
+
+    private RowMapper(Function<ResultSetReader, Row<T>> compiler) {
+        this.compiler = compiler;
+    }
+
+    public static <T> RowMapper<T> of(Function<ResultSetReader, Row<T>> compiler) {
+        return new RowMapper<>(compiler);
+    }
+
+    /**
+     * Reader of rows of given result set. Must not be used with other result sets, even of the same query.
+     */
+    public Row<T> compile(ResultSetReader resultSet) {
+        return compiler.apply(resultSet);
+    }
+
+    /**
+     * Map remaining rows of result set.
+     */
+    public List<T> readAll(ResultSetReader resultSet) {
+        var row = compile(resultSet);
+        var result = new ArrayList<T>(resultSet.getRowCount());
+        while (resultSet.next()) {
+            result.add(row.read(resultSet));
+        }
+        return result;
+    }
+
+    /**
+     * @throws IllegalStateException when result set has no such column
+     */
+    public static int index(ResultSetReader resultSet, String column) {
+        int index = resultSet.getColumnIndex(column);
+        if (index < 0) {
+            throw new IllegalStateException("No column " + column + " in result set");
+        }
+        return index;
+    }
+
+    public static @Nullable String optionalText(ResultSetReader row, int column) {
+        ValueReader value = row.getColumn(column);
+        return value.isOptionalItemPresent() ? value.getText() : null;
+    }
+
+    public static @Nullable Long optionalUint64(ResultSetReader row, int column) {
+        ValueReader value = row.getColumn(column);
+        return value.isOptionalItemPresent() ? value.getUint64() : null;
+    }
+
+    public static @Nullable Instant optionalTimestamp(ResultSetReader row, int column) {
+        ValueReader value = row.getColumn(column);
+        return value.isOptionalItemPresent() ? value.getTimestamp() : null;
+    }
+}
@@ -0,0 +1,140 @@
+package ru.ramlabs.gitea.stonks.storage.ydb;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import ru.ramlabs.gitea.stonks.api.Accounts.Account;
+import ru.ramlabs.gitea.stonks.api.KeysetPagination.Page;
+import ru.ramlabs.gitea.stonks.api.KeysetPagination.PageRequest;
+import ru.ramlabs.gitea.stonks.storage.AccountStorage;
+import ru.ramlabs.gitea.stonks.storage.memory.InMemoryStorage;
+import ru.ramlabs.gitea.stonks.storage.ydb.YdbPagination.Keyset;
+import ru.ramlabs.gitea.stonks.utils.DatabaseSupport;
+import ru.ramlabs.gitea.stonks.utils.DatabaseSupport.Query;
+import ru.ramlabs.gitea.stonks.utils.NullableParams;
+import tech.ydb.core.Issue;
+import tech.ydb.table.query.Params;
+import tech.ydb.table.values.OptionalValue;
+import tech.ydb.table.values.PrimitiveValue;
+
+import java.util.concurrent.CompletableFuture;
+
+import static ru.ramlabs.gitea.stonks.storage.CollectionVersionStorage.Collection.ACCOUNTS;
+import static ru.ramlabs.gitea.stonks.storage.ydb.RowMapper.index;
+import static ru.ramlabs.gitea.stonks.storage.ydb.RowMapper.optionalText;
+import static ru.ramlabs.gitea.stonks.storage.ydb.RowMapper.optionalUint64;
+import static ru.ramlabs.gitea.stonks.storage.ydb.YdbCollectionVersionStorage.changed;
+import static ru.ramlabs.gitea.stonks.storage.ydb.YdbCollectionVersionStorage.deleted;
+import static ru.ramlabs.gitea.stonks.storage.ydb.YdbCollectionVersionStorage.one;
+import static ru.ramlabs.gitea.stonks.storage.ydb.YdbPagination.keyset;
+import static ru.ramlabs.gitea.stonks.utils.DatabaseSupport.query;
+import static tech.ydb.table.values.PrimitiveValue.newUint64;
+
+@Component
+@Profile("!" + InMemoryStorage.PROFILE)
+public class YdbAccountStorage implements AccountStorage {
+
+    private final DatabaseSupport db;
+    private final YdbPagination pagination;
+
+    public YdbAccountStorage(DatabaseSupport db, YdbPagination pagination) {
+        this.db = db;
+        this.pagination = pagination;
+    }
+
+    private static final Query INSERT_ACCOUNT_QUERY = query("accounts.insert", """
+            DECLARE $user_id AS uint64;
+            DECLARE $account_id AS uint64;
+            DECLARE $account_description AS utf8?;
+            DECLARE $account_name AS utf8;
+            DECLARE $bank_id AS uint64?;
+
+            /*
+             discard select ensure(0, count(*)>0, 'bank_id does not exist')
+            from accounts
+            where user_id=$user_id and bank_id=$bank_id;
+            */
+
+            INSERT INTO accounts
+                ( user_id, account_id, account_description, account_name, bank_id )
+            VALUES ($user_id, $account_id,$account_description,$account_name,$bank_id);
+            """ + changed(one(ACCOUNTS, "$account_id")));
+
+    @Override
+    public CompletableFuture<Void> insertAccount(long userId, Account account) {
+        return db.executeQueryAsync(
+                INSERT_ACCOUNT_QUERY, NullableParams.ofNullable(
+                        "$user_id", PrimitiveValue.newUint64(userId),
+                        "$account_id", PrimitiveValue.newUint64(account.accountId()),
+                        "$account_name", PrimitiveValue.newText(account.name()),
+                        "$account_description",
+                        account.description() == null ? null : OptionalValue.of(PrimitiveValue.newText(account.description())),
+                        "$bank_id", account.bankId() == null ? null : PrimitiveValue.newUint64(account.bankId())
+                )
+        ).thenAccept(insertResult -> {
+            if (!insertResult.isSuccess()) {
+                for (Issue issue : insertResult.getStatus().getIssues()) {
+                    if (issue.getMessage().contains("bank_id does not exist")) {
+                        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Bank does not exist");
+                    }
+                }
+                throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, insertResult.getStatus().toString());
+            }
+        });
+    }
+
+    private static final Query DELETE_ACCOUNT_QUERY = query("accounts.delete", """
+            DECLARE $user_id AS uint64;
+            DECLARE $account_id AS uint64;
+
+            $deleted = select account_id
+            from accounts
+            where user_id = $user_id and account_id = $account_id;
+
+            select count(*)
+            from $deleted;
+            """ + changed(deleted(ACCOUNTS, "$deleted", "account_id")) + """
+
+            delete from accounts
+            where user_id = $user_id and account_id = $account_id;
+            """);
+
+    @Override
+    public CompletableFuture<Boolean> deleteAccount(long userId, long accountId) {
+        return db.executeQueryAsync(
+                DELETE_ACCOUNT_QUERY,
+                Params.of(
+                        "$user_id", newUint64(userId),
+                        "$account_id", newUint64(accountId)
+                )
+        ).thenApply(queryResult -> {
+            var result = queryResult.getValue().getResultSet(0);
+            result.next();
+            return result.getColumn(0).getUint64() > 0;
+        });
+    }
+
+    private static final Keyset ACCOUNTS_KEYSET = keyset(ACCOUNTS, "accounts.list", "accounts", "account_id");
+
+    @Override
+    public CompletableFuture<Page<Account>> accounts(long userId, PageRequest page) {
+        return pagination.page(ACCOUNTS_KEYSET, userId, page, ACCOUNT_ROWS, Account::accountId);
+    }
+
+    /**
+     * Rows of {@code accounts} table.
+     */
+    public static final RowMapper<Account> ACCOUNT_ROWS = RowMapper.of(accounts -> {
+        int accountId = index(accounts, "account_id");
+        int bankId = index(accounts, "bank_id");
+        int accountName = index(accounts, "account_name");
+        int accountDescription = index(accounts, "account_description");
+        return row -> new Account(
+                row.getColumn(accountId).getUint64(),
+                optionalUint64(row, bankId),
+                row.getColumn(accountName).getText(),
+                optionalText(row, accountDescription)
+        );
+    });
+}
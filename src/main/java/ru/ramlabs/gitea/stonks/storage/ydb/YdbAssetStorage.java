@@ -0,0 +1,87 @@
+package ru.ramlabs.gitea.stonks.storage.ydb;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import ru.ramlabs.gitea.stonks.api.Assets.Asset;
+import ru.ramlabs.gitea.stonks.api.KeysetPagination.Page;
+import ru.ramlabs.gitea.stonks.api.KeysetPagination.PageRequest;
+import ru.ramlabs.gitea.stonks.storage.AssetStorage;
+import ru.ramlabs.gitea.stonks.storage.memory.InMemoryStorage;
+import ru.ramlabs.gitea.stonks.storage.ydb.YdbPagination.Keyset;
+import ru.ramlabs.gitea.stonks.utils.DatabaseSupport;
+import ru.ramlabs.gitea.stonks.utils.DatabaseSupport.Query;
+import ru.ramlabs.gitea.stonks.utils.NullableParams;
+
+import java.util.concurrent.CompletableFuture;
+
+import static ru.ramlabs.gitea.stonks.storage.CollectionVersionStorage.Collection.ASSETS;
+import static ru.ramlabs.gitea.stonks.storage.ydb.RowMapper.index;
+import static ru.ramlabs.gitea.stonks.storage.ydb.RowMapper.optionalText;
+import static ru.ramlabs.gitea.stonks.storage.ydb.YdbCollectionVersionStorage.changed;
+import static ru.ramlabs.gitea.stonks.storage.ydb.YdbCollectionVersionStorage.one;
+import static ru.ramlabs.gitea.stonks.storage.ydb.YdbPagination.keyset;
+import static ru.ramlabs.gitea.stonks.utils.DatabaseSupport.query;
+import static tech.ydb.table.values.OptionalValue.of;
+import static tech.ydb.table.values.PrimitiveValue.*;
+
+@Component
+@Profile("!" + InMemoryStorage.PROFILE)
+public class YdbAssetStorage implements AssetStorage {
+
+    private final DatabaseSupport db;
+    private final YdbPagination pagination;
+
+    public YdbAssetStorage(DatabaseSupport db, YdbPagination pagination) {
+        this.db = db;
+        this.pagination = pagination;
+    }
+
+    private static final Query INSERT_ASSET_QUERY = query("assets.insert", """
+            DECLARE $user_id AS uint64;
+            DECLARE $asset_id AS uint64;
+            DECLARE $asset_name AS utf8;
+            DECLARE $asset_comment AS utf8?;
+            DECLARE $asset_decimal_places AS uint16;
+
+            INSERT INTO assets
+                ( user_id, asset_id, asset_comment, asset_decimal_places, asset_name )
+            VALUES ( $user_id, $asset_id, $asset_comment, $asset_decimal_places, $asset_name );
+            """ + changed(one(ASSETS, "$asset_id")));
+
+    @Override
+    public CompletableFuture<Void> insertAsset(long userId, Asset asset) {
+        return db.executeQueryAsync(
+                INSERT_ASSET_QUERY,
+                NullableParams.ofNullable(
+                        "$user_id", newUint64(userId),
+                        "$asset_id", newUint64(asset.id()),
+                        "$asset_name", newText(asset.name()),
+                        "$asset_comment", asset.comment() == null ? null : of(newText(asset.comment())),
+                        "$asset_decimal_places", newUint16(asset.decimalPlaces())
+                )
+        ).thenAccept(insertResult -> insertResult.getValue());
+    }
+
+    private static final Keyset ASSETS_KEYSET = keyset(ASSETS, "assets.list", "assets", "asset_id");
+
+    @Override
+    public CompletableFuture<Page<Asset>> assets(long userId, PageRequest page) {
+        return pagination.page(ASSETS_KEYSET, userId, page, ASSET_ROWS, Asset::id);
+    }
+
+    /**
+     * Rows of {@code assets} table.
+     */
+    public static final RowMapper<Asset> ASSET_ROWS = RowMapper.of(assets -> {
+        int assetId = index(assets, "asset_id");
+        int assetName = index(assets, "asset_name");
+        int assetComment = index(assets, "asset_comment");
+        int decimalPlaces = index(assets, "asset_decimal_places");
+        return row -> new Asset(
+                row.getColumn(assetId).getUint64(),
+                row.getColumn(assetName).getText(),
+                optionalText(row, assetComment),
+                row.getColumn(decimalPlaces).getUint16()
+        );
+    });
+}
@@ -0,0 +1,153 @@
+package ru.ramlabs.gitea.stonks.storage.ydb;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import ru.ramlabs.gitea.stonks.api.Balances.AssetBalance;
+import ru.ramlabs.gitea.stonks.storage.BalanceStorage;
+import ru.ramlabs.gitea.stonks.storage.memory.InMemoryStorage;
+import ru.ramlabs.gitea.stonks.utils.DatabaseSupport;
+import ru.ramlabs.gitea.stonks.utils.DatabaseSupport.Query;
+import tech.ydb.table.query.Params;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static ru.ramlabs.gitea.stonks.utils.DatabaseSupport.TxMode.*;
+import static ru.ramlabs.gitea.stonks.utils.DatabaseSupport.query;
+import static tech.ydb.table.values.PrimitiveValue.newUint64;
+
+@Component
+@Profile("!" + InMemoryStorage.PROFILE)
+public class YdbBalanceStorage implements BalanceStorage {
+
+    private final DatabaseSupport db;
+
+    public YdbBalanceStorage(DatabaseSupport db) {
+        this.db = db;
+    }
+
+    private static final Query GET_ACCOUNT_BALANCE_QUERY = query("account_balances.get", ONLINE_RO, """
+            DECLARE $user_id AS uint64;
+            DECLARE $account_id AS uint64;
+
+            select asset_id, balance
+            from account_balances
+            where user_id = $user_id and account_id = $account_id;
+            """);
+
+    @Override
+    public CompletableFuture<List<AssetBalance>> balances(long userId, long accountId) {
+        return db.executeQueryAsync(
+                GET_ACCOUNT_BALANCE_QUERY,
+                Params.of(
+                        "$user_id", newUint64(userId),
+                        "$account_id", newUint64(accountId)
+                )
+        ).thenApply(queryResult -> {
+            if (!queryResult.isSuccess()) {
+                throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, queryResult.getStatus().toString());
+            }
+            var balances = queryResult.getValue().getResultSet(0);
+
+            var result = new ArrayList<AssetBalance>(balances.getRowCount());
+            while (balances.next()) {
+                result.add(new AssetBalance(
+                        balances.getColumn("asset_id").getUint64(),
+                        balances.getColumn("balance").getInt64()
+                ));
+            }
+            return result;
+        });
+    }
+
+    private static final Query VERIFY_BALANCES_QUERY = query("account_balances.verify", SNAPSHOT_RO, """
+            DECLARE $user_id AS uint64;
+
+            $computed = select deltas.account_id AS account_id, deltas.asset_id AS asset_id,
+                   sum(cast(deltas.delta_amount as int64) * cast(delta_types.delta_type_multiplier as int64)) AS balance
+            from transaction_deltas AS deltas
+            JOIN delta_types ON deltas.delta_type_id = delta_types.delta_type_id
+            where deltas.user_id = $user_id
+            group by deltas.account_id, deltas.asset_id;
+
+            select count(*)
+            from $computed AS computed
+            FULL JOIN (select * from account_balances where user_id = $user_id) AS stored
+                ON computed.account_id = stored.account_id AND computed.asset_id = stored.asset_id
+            where coalesce(computed.balance, 0) != coalesce(stored.balance, 0);
+            """);
+
+    private static final Query REBUILD_BALANCES_QUERY = query("account_balances.rebuild", """
+            DECLARE $user_id AS uint64;
+
+            $computed = select deltas.account_id AS account_id, deltas.asset_id AS asset_id,
+                   sum(cast(deltas.delta_amount as int64) * cast(delta_types.delta_type_multiplier as int64)) AS balance
+            from transaction_deltas AS deltas
+            JOIN delta_types ON deltas.delta_type_id = delta_types.delta_type_id
+            where deltas.user_id = $user_id
+            group by deltas.account_id, deltas.asset_id;
+
+            select count(*)
+            from $computed AS computed
+            FULL JOIN (select * from account_balances where user_id = $user_id) AS stored
+                ON computed.account_id = stored.account_id AND computed.asset_id = stored.asset_id
+            where coalesce(computed.balance, 0) != coalesce(stored.balance, 0);
+
+            delete from account_balances
+            where user_id = $user_id;
+
+            upsert into account_balances ( user_id, account_id, asset_id, balance )
+            select $user_id AS user_id, account_id, asset_id, balance
+            from $computed;
+            """);
+
+    @Override
+    public CompletableFuture<Long> verify(long userId, boolean rebuild) {
+        return db.executeQueryAsync(
+                rebuild ? REBUILD_BALANCES_QUERY : VERIFY_BALANCES_QUERY,
+                Params.of("$user_id", newUint64(userId))
+        ).thenApply(queryResult -> {
+            if (!queryResult.isSuccess()) {
+                throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, queryResult.getStatus().toString());
+            }
+            var mismatches = queryResult.getValue().getResultSet(0);
+            mismatches.next();
+            return mismatches.getColumn(0).getUint64();
+        });
+    }
+
+    private static final Query LIST_USERS_QUERY = query("account_balances.list_users", STALE_RO, """
+            DECLARE $user_id_start AS uint64;
+            DECLARE $limit AS uint64;
+
+            select user_id
+            from users
+            where user_id >= $user_id_start
+            order by user_id
+            limit $limit;
+            """);
+
+    @Override
+    public CompletableFuture<List<Long>> userIds(long startUserId, int limit) {
+        return db.executeQueryAsync(
+                LIST_USERS_QUERY,
+                Params.of(
+                        "$user_id_start", newUint64(startUserId),
+                        "$limit", newUint64(limit)
+                )
+        ).thenApply(usersResult -> {
+            if (!usersResult.isSuccess()) {
+                throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, usersResult.getStatus().toString());
+            }
+            var users = usersResult.getValue().getResultSet(0);
+            var userIds = new ArrayList<Long>(users.getRowCount());
+            while (users.next()) {
+                userIds.add(users.getColumn("user_id").getUint64());
+            }
+            return userIds;
+        });
+    }
+}
@@ -0,0 +1,113 @@
+package ru.ramlabs.gitea.stonks.storage.ydb;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import ru.ramlabs.gitea.stonks.api.Banks.Bank;
+import ru.ramlabs.gitea.stonks.api.KeysetPagination.Page;
+import ru.ramlabs.gitea.stonks.api.KeysetPagination.PageRequest;
+import ru.ramlabs.gitea.stonks.storage.BankStorage;
+import ru.ramlabs.gitea.stonks.storage.memory.InMemoryStorage;
+import ru.ramlabs.gitea.stonks.storage.ydb.YdbPagination.Keyset;
+import ru.ramlabs.gitea.stonks.utils.DatabaseSupport;
+import ru.ramlabs.gitea.stonks.utils.DatabaseSupport.Query;
+import tech.ydb.table.query.Params;
+
+import java.util.concurrent.CompletableFuture;
+
+import static ru.ramlabs.gitea.stonks.storage.CollectionVersionStorage.Collection.BANKS;
+import static ru.ramlabs.gitea.stonks.storage.ydb.RowMapper.index;
+import static ru.ramlabs.gitea.stonks.storage.ydb.YdbCollectionVersionStorage.changed;
+import static ru.ramlabs.gitea.stonks.storage.ydb.YdbCollectionVersionStorage.deleted;
+import static ru.ramlabs.gitea.stonks.storage.ydb.YdbCollectionVersionStorage.one;
+import static ru.ramlabs.gitea.stonks.storage.ydb.YdbPagination.keyset;
+import static ru.ramlabs.gitea.stonks.utils.DatabaseSupport.query;
+import static tech.ydb.table.values.PrimitiveValue.newText;
+import static tech.ydb.table.values.PrimitiveValue.newUint64;
+
+@Component
+@Profile("!" + InMemoryStorage.PROFILE)
+public class YdbBankStorage implements BankStorage {
+
+    private final DatabaseSupport db;
+    private final YdbPagination pagination;
+
+    public YdbBankStorage(DatabaseSupport db, YdbPagination pagination) {
+        this.db = db;
+        this.pagination = pagination;
+    }
+
+    private static final Query INSERT_BANK_QUERY = query("banks.insert", """
+            DECLARE $user_id AS uint64;
+            DECLARE $bank_id AS uint64;
+            DECLARE $bank_name AS utf8;
+            DECLARE $bank_comment AS utf8;
+            INSERT INTO banks
+            ( user_id, bank_id, bank_name, bank_comment )
+            VALUES ($user_id, $bank_id, $bank_name, $bank_comment );
+            """ + changed(one(BANKS, "$bank_id")));
+
+    @Override
+    public CompletableFuture<Void> insertBank(long userId, Bank bank) {
+        return db.executeQueryAsync(
+                INSERT_BANK_QUERY,
+                Params.of(
+                        "$user_id", newUint64(userId),
+                        "$bank_id", newUint64(bank.bankId()),
+                        "$bank_name", newText(bank.name()),
+                        "$bank_comment", newText(bank.comment())
+                )
+        ).thenAccept(insertResult -> insertResult.getValue());
+    }
+
+    private static final Query DELETE_BANK_QUERY = query("banks.delete", """
+            DECLARE $user_id AS uint64;
+            DECLARE $bank_id AS uint64;
+
+            $deleted = select bank_id
+            from banks
+            where user_id = $user_id and bank_id = $bank_id;
+
+            select count(*)
+            from $deleted;
+            """ + changed(deleted(BANKS, "$deleted", "bank_id")) + """
+
+            delete from banks
+            where user_id = $user_id and bank_id = $bank_id;
+            """);
+
+    @Override
+    public CompletableFuture<Boolean> deleteBank(long userId, long bankId) {
+        return db.executeQueryAsync(
+                DELETE_BANK_QUERY,
+                Params.of(
+                        "$user_id", newUint64(userId),
+                        "$bank_id", newUint64(bankId)
+                )
+        ).thenApply(queryResult -> {
+            var result = queryResult.getValue().getResultSet(0);
+            result.next();
+            return result.getColumn(0).getUint64() > 0;
+        });
+    }
+
+    private static final Keyset BANKS_KEYSET = keyset(BANKS, "banks.list", "banks", "bank_id");
+
+    @Override
+    public CompletableFuture<Page<Bank>> banks(long userId, PageRequest page) {
+        return pagination.page(BANKS_KEYSET, userId, page, BANK_ROWS, Bank::bankId);
+    }
+
+    /**
+     * Rows of {@code banks} table.
+     */
+    public static final RowMapper<Bank> BANK_ROWS = RowMapper.of(banks -> {
+        int bankId = index(banks, "bank_id");
+        int bankName = index(banks, "bank_name");
+        int bankComment = index(banks, "bank_comment");
+        return row -> new Bank(
+                row.getColumn(bankId).getUint64(),
+                row.getColumn(bankName).getText(),
+                row.getColumn(bankComment).getText()
+        );
+    });
+}
@@ -0,0 +1,219 @@
+package ru.ramlabs.gitea.stonks.storage.ydb;
+
+import org.jetbrains.annotations.Nullable;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import ru.ramlabs.gitea.stonks.storage.BatchStorage;
+import ru.ramlabs.gitea.stonks.storage.memory.InMemoryStorage;
+import ru.ramlabs.gitea.stonks.utils.DatabaseSupport;
+import ru.ramlabs.gitea.stonks.utils.DatabaseSupport.Query;
+import tech.ydb.table.query.Params;
+import tech.ydb.table.values.ListType;
+import tech.ydb.table.values.ListValue;
+import tech.ydb.table.values.OptionalType;
+import tech.ydb.table.values.PrimitiveType;
+import tech.ydb.table.values.StructType;
+import tech.ydb.table.values.Type;
+import tech.ydb.table.values.Value;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import static ru.ramlabs.gitea.stonks.storage.CollectionVersionStorage.Collection.ACCOUNTS;
+import static ru.ramlabs.gitea.stonks.storage.CollectionVersionStorage.Collection.ASSETS;
+import static ru.ramlabs.gitea.stonks.storage.CollectionVersionStorage.Collection.BANKS;
+import static ru.ramlabs.gitea.stonks.storage.CollectionVersionStorage.Collection.TRANSACTIONS;
+import static ru.ramlabs.gitea.stonks.storage.ydb.YdbCollectionVersionStorage.changed;
+import static ru.ramlabs.gitea.stonks.storage.ydb.YdbCollectionVersionStorage.each;
+import static ru.ramlabs.gitea.stonks.utils.DatabaseSupport.query;
+import static tech.ydb.table.values.PrimitiveValue.*;
+
+/**
+ * Whole batch is one static query with list parameter per row kind, so it is prepared once
+ * and committed with single serializable transaction, whatever the mix of operations is.
+ */
+@Component
+@Profile("!" + InMemoryStorage.PROFILE)
+public class YdbBatchStorage implements BatchStorage {
+
+    private static final Type OPTIONAL_TEXT = OptionalType.of(PrimitiveType.Text);
+
+    private static final StructType BANK_TYPE = StructType.of(Map.of(
+            "bank_id", PrimitiveType.Uint64,
+            "bank_name", PrimitiveType.Text,
+            "bank_comment", PrimitiveType.Text
+    ));
+
+    private static final StructType ACCOUNT_TYPE = StructType.of(Map.of(
+            "account_id", PrimitiveType.Uint64,
+            "bank_id", OptionalType.of(PrimitiveType.Uint64),
+            "account_name", PrimitiveType.Text,
+            "account_description", OPTIONAL_TEXT
+    ));
+
+    private static final StructType ASSET_TYPE = StructType.of(Map.of(
+            "asset_id", PrimitiveType.Uint64,
+            "asset_name", PrimitiveType.Text,
+            "asset_comment", OPTIONAL_TEXT,
+            "asset_decimal_places", PrimitiveType.Uint16
+    ));
+
+    private static final StructType TRANSACTION_TYPE = StructType.of(Map.of(
+            "transaction_id", PrimitiveType.Uint64,
+            "transaction_name", OPTIONAL_TEXT,
+            "transaction_comment", OPTIONAL_TEXT,
+            "transaction_timestamp", OptionalType.of(PrimitiveType.Timestamp)
+    ));
+
+    private static final StructType DELTA_TYPE = StructType.of(Map.of(
+            "transaction_id", PrimitiveType.Uint64,
+            "account_id", PrimitiveType.Uint64,
+            "asset_id", PrimitiveType.Uint64,
+            "delta_id", PrimitiveType.Uint64,
+            "delta_amount", PrimitiveType.Uint64,
+            "delta_type_id", PrimitiveType.Uint64,
+            "delta_multiplier", PrimitiveType.Int64
+    ));
+
+    private static final Query INSERT_BATCH_QUERY = query("batch.insert", """
+            DECLARE $user_id AS uint64;
+            DECLARE $banks AS List<Struct<bank_id: uint64, bank_name: utf8, bank_comment: utf8>>;
+            DECLARE $accounts AS List<Struct<
+                account_id: uint64,
+                bank_id: uint64?,
+                account_name: utf8,
+                account_description: utf8?
+            >>;
+            DECLARE $assets AS List<Struct<
+                asset_id: uint64,
+                asset_name: utf8,
+                asset_comment: utf8?,
+                asset_decimal_places: uint16
+            >>;
+            DECLARE $transactions AS List<Struct<
+                transaction_id: uint64,
+                transaction_name: utf8?,
+                transaction_comment: utf8?,
+                transaction_timestamp: timestamp?
+            >>;
+            DECLARE $deltas AS List<Struct<
+                transaction_id: uint64,
+                account_id: uint64,
+                asset_id: uint64,
+                delta_id: uint64,
+                delta_amount: uint64,
+                delta_type_id: uint64,
+                delta_multiplier: int64
+            >>;
+
+            $referenced = select distinct $user_id AS user_id, d.transaction_id AS transaction_id
+            from AS_TABLE($deltas) AS d
+            LEFT ONLY JOIN AS_TABLE($transactions) AS n ON d.transaction_id = n.transaction_id;
+
+            discard select ensure(0, count(*) = 0, "TX_NOT_FOUND")
+            from $referenced AS r
+            LEFT ONLY JOIN transactions AS t ON r.user_id = t.user_id AND r.transaction_id = t.transaction_id;
+
+            $changes = select account_id, asset_id, sum(cast(delta_amount as int64) * delta_multiplier) AS change
+            from AS_TABLE($deltas)
+            group by account_id, asset_id;
+
+            INSERT INTO banks ( user_id, bank_id, bank_name, bank_comment )
+            SELECT $user_id AS user_id, bank_id, bank_name, bank_comment
+            FROM AS_TABLE($banks);
+
+            INSERT INTO accounts ( user_id, account_id, account_description, account_name, bank_id )
+            SELECT $user_id AS user_id, account_id, account_description, account_name, bank_id
+            FROM AS_TABLE($accounts);
+
+            INSERT INTO assets ( user_id, asset_id, asset_comment, asset_decimal_places, asset_name )
+            SELECT $user_id AS user_id, asset_id, asset_comment, asset_decimal_places, asset_name
+            FROM AS_TABLE($assets);
+
+            INSERT INTO transactions
+                ( user_id, transaction_id, transaction_comment, transaction_name, transaction_timestamp )
+            SELECT $user_id AS user_id, transaction_id, transaction_comment, transaction_name, transaction_timestamp
+            FROM AS_TABLE($transactions);
+
+            UPSERT INTO transaction_deltas
+                ( user_id, account_id, asset_id, transaction_id, delta_id, delta_amount, delta_type_id )
+            SELECT $user_id AS user_id, account_id, asset_id, transaction_id, delta_id, delta_amount, delta_type_id
+            FROM AS_TABLE($deltas);
+
+            UPSERT INTO account_balances ( user_id, account_id, asset_id, balance )
+            SELECT $user_id AS user_id, changes.account_id AS account_id, changes.asset_id AS asset_id,
+                   coalesce(balances.balance, 0) + changes.change AS balance
+            FROM $changes AS changes
+            LEFT JOIN (select * from account_balances where user_id = $user_id) AS balances
+                ON changes.account_id = balances.account_id AND changes.asset_id = balances.asset_id;
+            """ + changed(
+            each(BANKS, "$banks", "bank_id"),
+            each(ACCOUNTS, "$accounts", "account_id"),
+            each(ASSETS, "$assets", "asset_id"),
+            each(TRANSACTIONS, "$transactions", "transaction_id"),
+            //existing transactions that got deltas
+            each(TRANSACTIONS, "$deltas", "transaction_id")));
+
+    private final DatabaseSupport db;
+
+    public YdbBatchStorage(DatabaseSupport db) {
+        this.db = db;
+    }
+
+    @Override
+    public CompletableFuture<Void> insertBatch(long userId, Batch batch) {
+        var params = Params.of(
+                "$user_id", newUint64(userId),
+                "$banks", list(BANK_TYPE, batch.banks(), bank -> Map.of(
+                        "bank_id", newUint64(bank.bankId()),
+                        "bank_name", newText(bank.name()),
+                        "bank_comment", newText(bank.comment())
+                )),
+                "$accounts", list(ACCOUNT_TYPE, batch.accounts(), account -> Map.of(
+                        "account_id", newUint64(account.accountId()),
+                        "bank_id", account.bankId() == null
+                                ? PrimitiveType.Uint64.makeOptional().emptyValue()
+                                : newUint64(account.bankId()).makeOptional(),
+                        "account_name", newText(account.name()),
+                        "account_description", optionalText(account.description())
+                )),
+                "$assets", list(ASSET_TYPE, batch.assets(), asset -> Map.of(
+                        "asset_id", newUint64(asset.id()),
+                        "asset_name", newText(asset.name()),
+                        "asset_comment", optionalText(asset.comment()),
+                        "asset_decimal_places", newUint16(asset.decimalPlaces())
+                )),
+                "$transactions", list(TRANSACTION_TYPE, batch.transactions(), transaction -> Map.of(
+                        "transaction_id", newUint64(transaction.transactionId()),
+                        "transaction_name", optionalText(transaction.name()),
+                        "transaction_comment", optionalText(transaction.comment()),
+                        "transaction_timestamp", transaction.timestamp() == null
+                                ? PrimitiveType.Timestamp.makeOptional().emptyValue()
+                                : newTimestamp(transaction.timestamp()).makeOptional()
+                )),
+                "$deltas", list(DELTA_TYPE, batch.deltas(), delta -> Map.of(
+                        "transaction_id", newUint64(delta.transactionId()),
+                        "account_id", newUint64(delta.delta().accountId()),
+                        "asset_id", newUint64(delta.delta().assetId()),
+                        "delta_id", newUint64(delta.delta().deltaId()),
+                        "delta_amount", newUint64(delta.delta().amount()),
+                        "delta_type_id", newUint64(delta.delta().deltaTypeId()),
+                        "delta_multiplier", newInt64(delta.delta().multiplier())
+                ))
+        );
+        return db.executeQueryAsync(INSERT_BATCH_QUERY, params)
+                .thenAccept(result -> YdbTransactionStorage.checkTransactionFound(result.getStatus()));
+    }
+
+    private static <T> ListValue list(StructType type, List<T> rows, Function<T, Map<String, Value<?>>> row) {
+        return ListType.of(type).newValue(rows.stream()
+                .<Value<?>>map(item -> type.newValue(row.apply(item)))
+                .toList());
+    }
+
+    private static Value<?> optionalText(@Nullable String text) {
+        return text == null ? PrimitiveType.Text.makeOptional().emptyValue() : newText(text).makeOptional();
+    }
+}
@@ -0,0 +1,173 @@
+package ru.ramlabs.gitea.stonks.storage.ydb;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import ru.ramlabs.gitea.stonks.storage.CollectionVersionStorage;
+import ru.ramlabs.gitea.stonks.storage.memory.InMemoryStorage;
+import ru.ramlabs.gitea.stonks.utils.DatabaseSupport;
+import ru.ramlabs.gitea.stonks.utils.DatabaseSupport.Query;
+import tech.ydb.table.query.Params;
+import tech.ydb.table.values.ListType;
+import tech.ydb.table.values.PrimitiveType;
+import tech.ydb.table.values.StructType;
+import tech.ydb.table.values.Value;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import static ru.ramlabs.gitea.stonks.utils.DatabaseSupport.TxMode.ONLINE_RO;
+import static ru.ramlabs.gitea.stonks.utils.DatabaseSupport.query;
+import static tech.ydb.table.values.PrimitiveValue.newText;
+import static tech.ydb.table.values.PrimitiveValue.newUint64;
+
+/**
+ * Versions in {@code collection_versions} table and change log in {@code collection_changes} table.
+ * Write queries append {@link #changed} to their text, so both are written in the same transaction as collection.
+ */
+@Component
+@Profile("!" + InMemoryStorage.PROFILE)
+public class YdbCollectionVersionStorage implements CollectionVersionStorage {
+
+    private final DatabaseSupport db;
+
+    public YdbCollectionVersionStorage(DatabaseSupport db) {
+        this.db = db;
+    }
+
+    /**
+     * Ids of entities written by a query, as YQL select of {@code collection}, {@code entity_id}
+     * and {@code deleted_at} columns.
+     */
+    record Change(String select) {
+
+    }
+
+    private static final String NOT_DELETED = "Nothing(Timestamp?)";
+
+    /**
+     * Entity which id is a query parameter.
+     */
+    static Change one(Collection collection, String idParameter) {
+        return new Change("SELECT %s AS collection, %s AS entity_id, %s AS deleted_at".formatted(
+                literal(collection), idParameter, NOT_DELETED));
+    }
+
+    /**
+     * Deleted entities, every row of named select of rows to delete, so deleting a missing id changes nothing.
+     * Their changes are kept as tombstones until TTL of {@code deleted_at} removes them.
+     * Select reads the table, so {@link #changed} with it goes before the delete statement.
+     */
+    static Change deleted(Collection collection, String rows, String idColumn) {
+        return new Change("SELECT %s AS collection, %s AS entity_id, %s AS deleted_at FROM %s".formatted(
+                literal(collection), idColumn, "Just(CurrentUtcTimestamp())", rows));
+    }
+
+    /**
+     * Every entity of list of structs parameter.
+     */
+    static Change each(Collection collection, String listParameter, String idColumn) {
+        return new Change(
+                "SELECT %s AS collection, %s AS entity_id, %s AS deleted_at FROM AS_TABLE(%s)".formatted(
+                        literal(collection), idColumn, NOT_DELETED, listParameter));
+    }
+
+    private static String literal(Collection collection) {
+        return "'" + collection.key() + "'u";
+    }
+
+    /**
+     * Statements setting next version of their collection as last change of changed entities of {@code $user_id},
+     * then increasing versions. Change log is keyed by entity, so it keeps only the last change of every entity
+     * and does not grow with number of writes. Entity may be selected by several changes, it is written once.
+     * Only versions of collections with changed entities are increased, so e.g. empty list parameter
+     * does not invalidate cached lists of its collection. Write only {@code collection_versions} and
+     * {@code collection_changes}, so they can follow writes to other tables, unless a change reads one of them.
+     * Change log is written first, because YDB does not allow reading a table after writing it
+     * in the same transaction.
+     */
+    static String changed(Change... changes) {
+        var selects = Arrays.stream(changes)
+                .map(Change::select)
+                .collect(Collectors.joining("\n    UNION ALL\n    "));
+        return """
+
+                $changed = select distinct collection, entity_id, deleted_at from (
+                    %s
+                );
+
+                UPSERT INTO collection_changes ( user_id, collection, entity_id, version, deleted_at )
+                SELECT $user_id AS user_id, changed.collection AS collection, changed.entity_id AS entity_id,
+                       coalesce(versions.version, 0ul) + 1ul AS version, changed.deleted_at AS deleted_at
+                FROM $changed AS changed
+                LEFT JOIN (select * from collection_versions where user_id = $user_id) AS versions
+                    ON changed.collection = versions.collection;
+
+                UPSERT INTO collection_versions ( user_id, collection, version )
+                SELECT $user_id AS user_id, bumped.collection AS collection,
+                       coalesce(versions.version, 0ul) + 1ul AS version
+                FROM (select distinct collection from $changed) AS bumped
+                LEFT JOIN (select * from collection_versions where user_id = $user_id) AS versions
+                    ON bumped.collection = versions.collection;
+                """.formatted(selects);
+    }
+
+    private static final Query GET_VERSION_QUERY = query("collection_versions.get", ONLINE_RO, """
+            DECLARE $user_id AS uint64;
+            DECLARE $collection AS utf8;
+
+            select version
+            from collection_versions
+            where user_id = $user_id and collection = $collection;
+            """);
+
+    @Override
+    public CompletableFuture<Long> version(long userId, Collection collection) {
+        return db.executeQueryAsync(
+                GET_VERSION_QUERY,
+                Params.of(
+                        "$user_id", newUint64(userId),
+                        "$collection", newText(collection.key())
+                )
+        ).thenApply(queryResult -> {
+            var result = queryResult.getValue().getResultSet(0);
+            if (!result.next()) {
+                return 0L;
+            }
+            var version = result.getColumn(0);
+            return version.isOptionalItemPresent() ? version.getUint64() : 0L;
+        });
+    }
+
+    private static final Map<Collection, Query> CHANGED_QUERIES = Arrays.stream(Collection.values())
+            .collect(Collectors.toUnmodifiableMap(collection -> collection, collection -> query(
+                    "collection_versions.changed." + collection.key(),
+                    """
+                            DECLARE $user_id AS uint64;
+                            DECLARE $entity_ids AS List<Struct<entity_id: uint64>>;
+                            """ + changed(each(collection, "$entity_ids", "entity_id")))));
+
+    private static final StructType ENTITY_ID = StructType.of(Map.of("entity_id", PrimitiveType.Uint64));
+
+    @Override
+    public CompletableFuture<Void> changed(long userId, Collection collection, List<Long> entityIds) {
+        var ids = ListType.of(ENTITY_ID).newValue(entityIds.stream()
+                .<Value<?>>map(id -> ENTITY_ID.newValue(Map.of("entity_id", newUint64(id))))
+                .toList());
+        return db.executeQueryAsync(
+                CHANGED_QUERIES.get(collection),
+                Params.of(
+                        "$user_id", newUint64(userId),
+                        "$entity_ids", ids
+                )
+        ).thenAccept(result -> {
+            if (!result.isSuccess()) {
+                throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, result.getStatus().toString());
+            }
+        });
+    }
+}
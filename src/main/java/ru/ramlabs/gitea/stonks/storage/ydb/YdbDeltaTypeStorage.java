@@ -0,0 +1,53 @@
+package ru.ramlabs.gitea.stonks.storage.ydb;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import ru.ramlabs.gitea.stonks.api.Transactions.DeltaType;
+import ru.ramlabs.gitea.stonks.storage.DeltaTypeStorage;
+import ru.ramlabs.gitea.stonks.storage.memory.InMemoryStorage;
+import ru.ramlabs.gitea.stonks.utils.DatabaseSupport;
+import ru.ramlabs.gitea.stonks.utils.DatabaseSupport.Query;
+import tech.ydb.table.query.Params;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static ru.ramlabs.gitea.stonks.utils.DatabaseSupport.TxMode.STALE_RO;
+import static ru.ramlabs.gitea.stonks.utils.DatabaseSupport.query;
+
+@Component
+@Profile("!" + InMemoryStorage.PROFILE)
+public class YdbDeltaTypeStorage implements DeltaTypeStorage {
+
+    private final DatabaseSupport db;
+
+    public YdbDeltaTypeStorage(DatabaseSupport db) {
+        this.db = db;
+    }
+
+    private static final Query GET_DELTA_TYPES_QUERY = query("delta_types.list", STALE_RO, """
+            select *
+            from delta_types;
+            """);
+
+    @Override
+    public CompletableFuture<List<DeltaType>> deltaTypes() {
+        return db.executeQueryAsync(GET_DELTA_TYPES_QUERY, Params.empty()).thenApply(queryResult -> {
+            if (!queryResult.isSuccess()) {
+                throw new IllegalStateException("Cannot load delta types: " + queryResult.getStatus());
+            }
+            var deltaTypes = queryResult.getValue().getResultSet(0);
+
+            var list = new ArrayList<DeltaType>(deltaTypes.getRowCount());
+            while (deltaTypes.next()) {
+                list.add(new DeltaType(
+                        deltaTypes.getColumn("delta_type_id").getUint64(),
+                        deltaTypes.getColumn("delta_type_name").getText(),
+                        deltaTypes.getColumn("delta_type_multiplier").getInt8()
+                ));
+            }
+            return list;
+        });
+    }
+}
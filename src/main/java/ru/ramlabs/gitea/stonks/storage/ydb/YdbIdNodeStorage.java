@@ -0,0 +1,100 @@
+package ru.ramlabs.gitea.stonks.storage.ydb;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import ru.ramlabs.gitea.stonks.storage.IdNodeStorage;
+import ru.ramlabs.gitea.stonks.storage.memory.InMemoryStorage;
+import ru.ramlabs.gitea.stonks.utils.DatabaseSupport;
+import ru.ramlabs.gitea.stonks.utils.DatabaseSupport.Query;
+import tech.ydb.table.query.Params;
+
+import java.time.Duration;
+import java.util.OptionalInt;
+import java.util.concurrent.CompletableFuture;
+
+import static ru.ramlabs.gitea.stonks.utils.DatabaseSupport.query;
+import static tech.ydb.table.values.PrimitiveValue.newInterval;
+import static tech.ydb.table.values.PrimitiveValue.newText;
+import static tech.ydb.table.values.PrimitiveValue.newUint32;
+
+/**
+ * Leases in {@code id_node_leases} table. Expiry is compared with database time, so clocks of instances
+ * do not matter for who may take a node id.
+ */
+@Component
+@Profile("!" + InMemoryStorage.PROFILE)
+public class YdbIdNodeStorage implements IdNodeStorage {
+
+    private static final Query ACQUIRE_QUERY = query("id_node_leases.acquire", """
+            DECLARE $owner AS utf8;
+            DECLARE $nodes AS uint32;
+            DECLARE $ttl AS interval;
+
+            $taken = select node from id_node_leases where expires_at > CurrentUtcTimestamp();
+
+            $free = select min(candidates.node) AS node
+            from AS_TABLE(ListMap(ListFromRange(0u, $nodes), ($x) -> (AsStruct($x AS node)))) AS candidates
+            LEFT ONLY JOIN $taken AS taken ON candidates.node = taken.node;
+
+            select node from $free;
+
+            UPSERT INTO id_node_leases ( node, owner, expires_at )
+            SELECT unwrap(node) AS node, $owner AS owner, CurrentUtcTimestamp() + $ttl AS expires_at
+            FROM $free
+            WHERE node IS NOT NULL;
+            """);
+
+    private static final Query RENEW_QUERY = query("id_node_leases.renew", """
+            DECLARE $node AS uint32;
+            DECLARE $owner AS utf8;
+            DECLARE $ttl AS interval;
+
+            $lease = select node from id_node_leases where node = $node and owner = $owner;
+
+            select count(*) AS renewed from $lease;
+
+            UPSERT INTO id_node_leases ( node, owner, expires_at )
+            SELECT node, $owner AS owner, CurrentUtcTimestamp() + $ttl AS expires_at
+            FROM $lease;
+            """);
+
+    private final DatabaseSupport db;
+
+    public YdbIdNodeStorage(DatabaseSupport db) {
+        this.db = db;
+    }
+
+    @Override
+    public CompletableFuture<OptionalInt> acquire(String owner, int nodes, Duration ttl) {
+        return db.executeQueryAsync(ACQUIRE_QUERY, Params.of(
+                "$owner", newText(owner),
+                "$nodes", newUint32(nodes),
+                "$ttl", newInterval(ttl)
+        )).thenApply(queryResult -> {
+            if (!queryResult.isSuccess()) {
+                throw new IllegalStateException("Cannot lease snowflake node id: " + queryResult.getStatus());
+            }
+            var result = queryResult.getValue().getResultSet(0);
+            if (!result.next()) {
+                return OptionalInt.empty();
+            }
+            var node = result.getColumn("node");
+            return node.isOptionalItemPresent() ? OptionalInt.of((int) node.getUint32()) : OptionalInt.empty();
+        });
+    }
+
+    @Override
+    public CompletableFuture<Boolean> renew(int node, String owner, Duration ttl) {
+        return db.executeQueryAsync(RENEW_QUERY, Params.of(
+                "$node", newUint32(node),
+                "$owner", newText(owner),
+                "$ttl", newInterval(ttl)
+        )).thenApply(queryResult -> {
+            if (!queryResult.isSuccess()) {
+                throw new IllegalStateException("Cannot renew snowflake node id lease: " + queryResult.getStatus());
+            }
+            var result = queryResult.getValue().getResultSet(0);
+            return result.next() && result.getColumn("renewed").getUint64() > 0;
+        });
+    }
+}
@@ -0,0 +1,100 @@
+package ru.ramlabs.gitea.stonks.storage.ydb;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import ru.ramlabs.gitea.stonks.api.Transactions.Transaction;
+import ru.ramlabs.gitea.stonks.storage.BatchStorage.BatchDelta;
+import ru.ramlabs.gitea.stonks.storage.ImportStorage;
+import ru.ramlabs.gitea.stonks.storage.memory.InMemoryStorage;
+import ru.ramlabs.gitea.stonks.utils.DatabaseSupport;
+import tech.ydb.core.Status;
+import tech.ydb.table.values.ListType;
+import tech.ydb.table.values.OptionalType;
+import tech.ydb.table.values.PrimitiveType;
+import tech.ydb.table.values.StructType;
+import tech.ydb.table.values.Value;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static tech.ydb.table.values.PrimitiveValue.*;
+
+/**
+ * Rows go through YDB bulk upsert: one request per table per batch, no transaction and no reads.
+ */
+@Component
+@Profile("!" + InMemoryStorage.PROFILE)
+public class YdbImportStorage implements ImportStorage {
+
+    private static final StructType TRANSACTION_ROW = StructType.of(Map.of(
+            "user_id", PrimitiveType.Uint64,
+            "transaction_id", PrimitiveType.Uint64,
+            "transaction_name", OptionalType.of(PrimitiveType.Text),
+            "transaction_comment", OptionalType.of(PrimitiveType.Text),
+            "transaction_timestamp", OptionalType.of(PrimitiveType.Timestamp)
+    ));
+
+    private static final StructType DELTA_ROW = StructType.of(Map.of(
+            "user_id", PrimitiveType.Uint64,
+            "transaction_id", PrimitiveType.Uint64,
+            "delta_id", PrimitiveType.Uint64,
+            "account_id", PrimitiveType.Uint64,
+            "asset_id", PrimitiveType.Uint64,
+            "delta_amount", PrimitiveType.Uint64,
+            "delta_type_id", PrimitiveType.Uint64
+    ));
+
+    private final DatabaseSupport db;
+
+    public YdbImportStorage(DatabaseSupport db) {
+        this.db = db;
+    }
+
+    @Override
+    public CompletableFuture<Void> bulkUpsert(long userId, List<Transaction> transactions, List<BatchDelta> deltas) {
+        var transactionRows = ListType.of(TRANSACTION_ROW).newValue(transactions.stream()
+                .<Value<?>>map(transaction -> TRANSACTION_ROW.newValue(Map.of(
+                        "user_id", newUint64(userId),
+                        "transaction_id", newUint64(transaction.transactionId()),
+                        "transaction_name", transaction.name() == null
+                                ? PrimitiveType.Text.makeOptional().emptyValue()
+                                : newText(transaction.name()).makeOptional(),
+                        "transaction_comment", transaction.comment() == null
+                                ? PrimitiveType.Text.makeOptional().emptyValue()
+                                : newText(transaction.comment()).makeOptional(),
+                        "transaction_timestamp", transaction.timestamp() == null
+                                ? PrimitiveType.Timestamp.makeOptional().emptyValue()
+                                : newTimestamp(transaction.timestamp()).makeOptional()
+                )))
+                .toList());
+        var deltaRows = ListType.of(DELTA_ROW).newValue(deltas.stream()
+                .<Value<?>>map(delta -> DELTA_ROW.newValue(Map.of(
+                        "user_id", newUint64(userId),
+                        "transaction_id", newUint64(delta.transactionId()),
+                        "delta_id", newUint64(delta.delta().deltaId()),
+                        "account_id", newUint64(delta.delta().accountId()),
+                        "asset_id", newUint64(delta.delta().assetId()),
+                        "delta_amount", newUint64(delta.delta().amount()),
+                        "delta_type_id", newUint64(delta.delta().deltaTypeId())
+                )))
+                .toList());
+
+        var transactionsWritten = transactions.isEmpty()
+                ? CompletableFuture.completedFuture(Status.SUCCESS)
+                : db.bulkUpsertAsync("transactions", transactionRows);
+        var deltasWritten = deltas.isEmpty()
+                ? CompletableFuture.completedFuture(Status.SUCCESS)
+                : db.bulkUpsertAsync("transaction_deltas", deltaRows);
+        return transactionsWritten.thenCombine(deltasWritten, (transactionStatus, deltaStatus) -> {
+            for (Status status : List.of(transactionStatus, deltaStatus)) {
+                if (!status.isSuccess()) {
+                    throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, status.toString());
+                }
+            }
+            return null;
+        });
+    }
+}
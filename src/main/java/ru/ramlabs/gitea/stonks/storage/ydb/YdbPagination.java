@@ -0,0 +1,95 @@
+package ru.ramlabs.gitea.stonks.storage.ydb;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import ru.ramlabs.gitea.stonks.api.KeysetPagination;
+import ru.ramlabs.gitea.stonks.api.KeysetPagination.Page;
+import ru.ramlabs.gitea.stonks.api.KeysetPagination.PageRequest;
+import ru.ramlabs.gitea.stonks.storage.CollectionVersionStorage.Collection;
+import ru.ramlabs.gitea.stonks.storage.memory.InMemoryStorage;
+import ru.ramlabs.gitea.stonks.utils.DatabaseSupport;
+import ru.ramlabs.gitea.stonks.utils.DatabaseSupport.Query;
+import tech.ydb.table.query.Params;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.ToLongFunction;
+
+import static ru.ramlabs.gitea.stonks.utils.DatabaseSupport.TxMode.ONLINE_RO;
+import static ru.ramlabs.gitea.stonks.utils.DatabaseSupport.query;
+import static tech.ydb.table.values.PrimitiveValue.newUint64;
+
+/**
+ * {@link KeysetPagination} over tables with primary key {@code (user_id, <key column>)}.
+ */
+@Component
+@Profile("!" + InMemoryStorage.PROFILE)
+public class YdbPagination {
+
+    private final DatabaseSupport db;
+    private final KeysetPagination pagination;
+
+    public YdbPagination(DatabaseSupport db, KeysetPagination pagination) {
+        this.db = db;
+        this.pagination = pagination;
+    }
+
+    /**
+     * Pair of page queries for a table. Created once per table in static initializer, same as other queries.
+     */
+    public record Keyset(Collection collection, Query forward, Query reverse) {
+
+    }
+
+    public static Keyset keyset(Collection collection, String name, String table, String keyColumn) {
+        return new Keyset(
+                collection,
+                query(name, ONLINE_RO, """
+                        DECLARE $user_id AS uint64;
+                        DECLARE $cursor AS uint64;
+                        DECLARE $limit AS uint64;
+
+                        select *
+                        from %1$s
+                        where user_id = $user_id and %2$s >= $cursor
+                        order by %2$s
+                        limit $limit;
+                        """.formatted(table, keyColumn)),
+                query(name + "_reverse", ONLINE_RO, """
+                        DECLARE $user_id AS uint64;
+                        DECLARE $cursor AS uint64;
+                        DECLARE $limit AS uint64;
+
+                        select *
+                        from %1$s
+                        where user_id = $user_id and %2$s < $cursor
+                        order by %2$s desc
+                        limit $limit;
+                        """.formatted(table, keyColumn))
+        );
+    }
+
+    public <T> CompletableFuture<Page<T>> page(Keyset keyset,
+                                               long userId,
+                                               PageRequest request,
+                                               RowMapper<T> mapper,
+                                               ToLongFunction<T> key) {
+        int pageSize = pagination.pageSize(keyset.collection(), request);
+
+        return db.executeQueryAsync(
+                request.reverse() ? keyset.reverse() : keyset.forward(),
+                Params.of(
+                        "$user_id", newUint64(userId),
+                        "$cursor", newUint64(request.cursor()),
+                        "$limit", newUint64(pageSize + 1)
+                )
+        ).thenApply(queryResult -> {
+            if (!queryResult.isSuccess()) {
+                throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, queryResult.getStatus().toString());
+            }
+            var items = mapper.readAll(queryResult.getValue().getResultSet(0));
+            return KeysetPagination.page(request, pageSize, items, key);
+        });
+    }
+}
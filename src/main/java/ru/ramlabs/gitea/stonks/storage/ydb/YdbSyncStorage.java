@@ -0,0 +1,148 @@
+package ru.ramlabs.gitea.stonks.storage.ydb;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import ru.ramlabs.gitea.stonks.api.Accounts.Account;
+import ru.ramlabs.gitea.stonks.api.Assets.Asset;
+import ru.ramlabs.gitea.stonks.api.Banks.Bank;
+import ru.ramlabs.gitea.stonks.api.Transactions.Transaction;
+import ru.ramlabs.gitea.stonks.storage.CollectionVersionStorage.Collection;
+import ru.ramlabs.gitea.stonks.storage.SyncStorage;
+import ru.ramlabs.gitea.stonks.storage.memory.InMemoryStorage;
+import ru.ramlabs.gitea.stonks.utils.DatabaseSupport;
+import ru.ramlabs.gitea.stonks.utils.DatabaseSupport.Query;
+import tech.ydb.table.query.Params;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.ToLongFunction;
+
+import static ru.ramlabs.gitea.stonks.storage.ydb.RowMapper.index;
+import static ru.ramlabs.gitea.stonks.storage.ydb.YdbAccountStorage.ACCOUNT_ROWS;
+import static ru.ramlabs.gitea.stonks.storage.ydb.YdbAssetStorage.ASSET_ROWS;
+import static ru.ramlabs.gitea.stonks.storage.ydb.YdbBankStorage.BANK_ROWS;
+import static ru.ramlabs.gitea.stonks.storage.ydb.YdbTransactionStorage.TRANSACTION_ROWS;
+import static ru.ramlabs.gitea.stonks.utils.DatabaseSupport.TxMode.SNAPSHOT_RO;
+import static ru.ramlabs.gitea.stonks.utils.DatabaseSupport.query;
+import static tech.ydb.table.values.PrimitiveValue.newUint64;
+
+/**
+ * Changes are read from {@code collection_changes} by {@code changes_by_version} index, current state of changed
+ * entities is joined by full primary key, so both reads are range or point lookups. Entities missing from their
+ * table were deleted.
+ */
+@Component
+@Profile("!" + InMemoryStorage.PROFILE)
+public class YdbSyncStorage implements SyncStorage {
+
+    private final DatabaseSupport db;
+
+    public YdbSyncStorage(DatabaseSupport db) {
+        this.db = db;
+    }
+
+    /**
+     * Query of changes of a collection, with two result sets: change log rows and current state of changed entities.
+     */
+    private static Query changesQuery(Collection collection, String table, String keyColumn) {
+        return query("sync." + collection.key(), SNAPSHOT_RO, """
+                DECLARE $user_id AS uint64;
+                DECLARE $version AS uint64;
+                DECLARE $entity_id AS uint64;
+                DECLARE $limit AS uint64;
+
+                $changes = (
+                    select version, entity_id
+                    from collection_changes VIEW changes_by_version
+                    where user_id = $user_id and collection = '%1$s'u
+                        and (version > $version or (version = $version and entity_id > $entity_id))
+                    order by version, entity_id
+                    limit $limit
+                );
+
+                select version, entity_id
+                from $changes
+                order by version, entity_id;
+
+                select entities.*
+                from (select distinct $user_id AS user_id, entity_id from $changes) AS changed
+                JOIN %2$s AS entities
+                    ON changed.user_id = entities.user_id AND changed.entity_id = entities.%3$s;
+                """.formatted(collection.key(), table, keyColumn));
+    }
+
+    private static final Query BANK_CHANGES_QUERY = changesQuery(Collection.BANKS, "banks", "bank_id");
+    private static final Query ACCOUNT_CHANGES_QUERY = changesQuery(Collection.ACCOUNTS, "accounts", "account_id");
+    private static final Query ASSET_CHANGES_QUERY = changesQuery(Collection.ASSETS, "assets", "asset_id");
+    private static final Query TRANSACTION_CHANGES_QUERY =
+            changesQuery(Collection.TRANSACTIONS, "transactions", "transaction_id");
+
+    @Override
+    public CompletableFuture<Changes<Bank>> bankChanges(long userId, Cursor after, int limit) {
+        return changes(BANK_CHANGES_QUERY, userId, after, limit, BANK_ROWS, Bank::bankId);
+    }
+
+    @Override
+    public CompletableFuture<Changes<Account>> accountChanges(long userId, Cursor after, int limit) {
+        return changes(ACCOUNT_CHANGES_QUERY, userId, after, limit, ACCOUNT_ROWS, Account::accountId);
+    }
+
+    @Override
+    public CompletableFuture<Changes<Asset>> assetChanges(long userId, Cursor after, int limit) {
+        return changes(ASSET_CHANGES_QUERY, userId, after, limit, ASSET_ROWS, Asset::id);
+    }
+
+    @Override
+    public CompletableFuture<Changes<Transaction>> transactionChanges(long userId, Cursor after, int limit) {
+        return changes(TRANSACTION_CHANGES_QUERY, userId, after, limit, TRANSACTION_ROWS, Transaction::transactionId);
+    }
+
+    private <T> CompletableFuture<Changes<T>> changes(Query query,
+                                                      long userId,
+                                                      Cursor after,
+                                                      int limit,
+                                                      RowMapper<T> mapper,
+                                                      ToLongFunction<T> key) {
+        return db.executeQueryAsync(
+                query,
+                Params.of(
+                        "$user_id", newUint64(userId),
+                        "$version", newUint64(after.version()),
+                        "$entity_id", newUint64(after.entityId()),
+                        "$limit", newUint64(limit + 1)
+                )
+        ).thenApply(queryResult -> {
+            if (!queryResult.isSuccess()) {
+                throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, queryResult.getStatus().toString());
+            }
+            var changes = queryResult.getValue().getResultSet(0);
+            int version = index(changes, "version");
+            int entityId = index(changes, "entity_id");
+
+            //one extra change is read to find out whether there are more
+            var changed = new LinkedHashSet<Long>();
+            var last = after;
+            int rows = 0;
+            boolean more = false;
+            while (changes.next()) {
+                if (rows++ == limit) {
+                    more = true;
+                    break;
+                }
+                last = new Cursor(changes.getColumn(version).getUint64(), changes.getColumn(entityId).getUint64());
+                changed.add(last.entityId());
+            }
+
+            var updated = new ArrayList<T>();
+            for (T entity : mapper.readAll(queryResult.getValue().getResultSet(1))) {
+                if (changed.remove(key.applyAsLong(entity))) {
+                    updated.add(entity);
+                }
+            }
+            return new Changes<>(updated, new ArrayList<>(changed), last, more);
+        });
+    }
+}
@@ -0,0 +1,350 @@
+package ru.ramlabs.gitea.stonks.storage.ydb;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import ru.ramlabs.gitea.stonks.api.Exports.ExportRow;
+import ru.ramlabs.gitea.stonks.api.KeysetPagination.Page;
+import ru.ramlabs.gitea.stonks.api.KeysetPagination.PageRequest;
+import ru.ramlabs.gitea.stonks.api.Transactions.Transaction;
+import ru.ramlabs.gitea.stonks.api.Transactions.TransactionDelta;
+import ru.ramlabs.gitea.stonks.storage.TransactionStorage;
+import ru.ramlabs.gitea.stonks.storage.memory.InMemoryStorage;
+import ru.ramlabs.gitea.stonks.storage.ydb.YdbPagination.Keyset;
+import ru.ramlabs.gitea.stonks.utils.DatabaseSupport;
+import ru.ramlabs.gitea.stonks.utils.DatabaseSupport.Query;
+import ru.ramlabs.gitea.stonks.utils.NullableParams;
+import tech.ydb.core.Status;
+import tech.ydb.table.query.Params;
+import tech.ydb.table.values.ListType;
+import tech.ydb.table.values.OptionalValue;
+import tech.ydb.table.values.PrimitiveType;
+import tech.ydb.table.values.PrimitiveValue;
+import tech.ydb.table.values.StructType;
+import tech.ydb.table.values.Value;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import static ru.ramlabs.gitea.stonks.storage.CollectionVersionStorage.Collection.TRANSACTIONS;
+import static ru.ramlabs.gitea.stonks.storage.ydb.RowMapper.index;
+import static ru.ramlabs.gitea.stonks.storage.ydb.RowMapper.optionalText;
+import static ru.ramlabs.gitea.stonks.storage.ydb.RowMapper.optionalTimestamp;
+import static ru.ramlabs.gitea.stonks.storage.ydb.YdbCollectionVersionStorage.changed;
+import static ru.ramlabs.gitea.stonks.storage.ydb.YdbCollectionVersionStorage.one;
+import static ru.ramlabs.gitea.stonks.storage.ydb.YdbPagination.keyset;
+import static ru.ramlabs.gitea.stonks.utils.DatabaseSupport.TxMode.SNAPSHOT_RO;
+import static ru.ramlabs.gitea.stonks.utils.DatabaseSupport.query;
+import static tech.ydb.table.values.PrimitiveValue.newUint64;
+
+@Component
+@Profile("!" + InMemoryStorage.PROFILE)
+public class YdbTransactionStorage implements TransactionStorage {
+
+    private final DatabaseSupport db;
+    private final YdbPagination pagination;
+
+    public YdbTransactionStorage(DatabaseSupport db, YdbPagination pagination) {
+        this.db = db;
+        this.pagination = pagination;
+    }
+
+    private static final Query INSERT_TRANSACTION_QUERY = query("transactions.insert", """
+            DECLARE $user_id AS uint64;
+            DECLARE $transaction_id AS uint64;
+            DECLARE $transaction_name AS utf8?;
+            DECLARE $transaction_comment AS utf8?;
+            DECLARE $transaction_timestamp AS timestamp?;
+
+            insert INTO transactions
+                ( user_id, transaction_id, transaction_comment, transaction_name, transaction_timestamp )
+            VALUES ( $user_id, $transaction_id, $transaction_comment, $transaction_name, cast($transaction_timestamp as timestamp));
+            """ + changed(one(TRANSACTIONS, "$transaction_id")));
+
+    @Override
+    public CompletableFuture<Void> insertTransaction(long userId, Transaction transaction) {
+        return db.executeQueryAsync(
+                INSERT_TRANSACTION_QUERY, transactionParams(userId, transaction)
+        ).thenAccept(insertResult -> {
+            if (!insertResult.isSuccess()) {
+                throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, insertResult.getStatus().toString());
+            }
+        });
+    }
+
+    private static final Query INSERT_DELTA_QUERY = query("transaction_deltas.insert", """
+            DECLARE $user_id AS uint64;
+            DECLARE $account_id as uint64;
+            DECLARE $transaction_id AS uint64;
+            DECLARE $delta_id AS uint64;
+            DECLARE $asset_id AS uint64;
+            DECLARE $delta_amount AS uint64;
+            DECLARE $delta_type_id AS uint64;
+            DECLARE $delta_multiplier AS int64;
+            DECLARE $delta_comment AS utf8?;
+
+
+            discard select ensure(0, count(transaction_id) > 0,"TX_NOT_FOUND")
+            from transactions
+            where user_id = $user_id and transaction_id = $transaction_id;
+
+            $balance = select balance
+            from account_balances
+            where user_id = $user_id and account_id = $account_id and asset_id = $asset_id;
+
+            UPSERT INTO transaction_deltas
+                ( user_id, account_id, asset_id, transaction_id, delta_id, delta_amount, delta_comment, delta_type_id )
+            VALUES ($user_id, $account_id, $asset_id, $transaction_id, $delta_id, $delta_amount, $delta_comment, $delta_type_id );
+
+            UPSERT INTO account_balances ( user_id, account_id, asset_id, balance )
+            VALUES ($user_id, $account_id, $asset_id,
+                coalesce($balance, 0) + cast($delta_amount as int64) * $delta_multiplier);
+            """ + changed(one(TRANSACTIONS, "$transaction_id")));
+
+    @Override
+    public CompletableFuture<Void> insertDelta(long userId, long transactionId, DeltaRow delta) {
+        return db.executeQueryAsync(
+                INSERT_DELTA_QUERY, NullableParams.ofNullable(
+                        "$user_id", PrimitiveValue.newUint64(userId),
+                        "$transaction_id", PrimitiveValue.newUint64(transactionId),
+                        "$delta_id", PrimitiveValue.newUint64(delta.deltaId()),
+                        "$asset_id", PrimitiveValue.newUint64(delta.assetId()),
+                        "$delta_amount", PrimitiveValue.newUint64(delta.amount()),
+                        "$delta_type_id", PrimitiveValue.newUint64(delta.deltaTypeId()),
+                        "$delta_multiplier", PrimitiveValue.newInt64(delta.multiplier()),
+                        "$account_id", PrimitiveValue.newUint64(delta.accountId())
+                )
+        ).thenAccept(insertResult -> checkTransactionFound(insertResult.getStatus()));
+    }
+
+    private static final StructType NEW_DELTA_TYPE = StructType.of(Map.of(
+            "account_id", PrimitiveType.Uint64,
+            "asset_id", PrimitiveType.Uint64,
+            "delta_id", PrimitiveType.Uint64,
+            "delta_amount", PrimitiveType.Uint64,
+            "delta_type_id", PrimitiveType.Uint64,
+            "delta_multiplier", PrimitiveType.Int64
+    ));
+
+    private static final Query INSERT_TRANSACTION_WITH_DELTAS_QUERY = query("transactions.insert_with_deltas", """
+            DECLARE $user_id AS uint64;
+            DECLARE $transaction_id AS uint64;
+            DECLARE $transaction_name AS utf8?;
+            DECLARE $transaction_comment AS utf8?;
+            DECLARE $transaction_timestamp AS timestamp?;
+            DECLARE $deltas AS List<Struct<
+                account_id: uint64,
+                asset_id: uint64,
+                delta_id: uint64,
+                delta_amount: uint64,
+                delta_type_id: uint64,
+                delta_multiplier: int64
+            >>;
+
+            $changes = select account_id, asset_id, sum(cast(delta_amount as int64) * delta_multiplier) AS change
+            from AS_TABLE($deltas)
+            group by account_id, asset_id;
+
+            insert INTO transactions
+                ( user_id, transaction_id, transaction_comment, transaction_name, transaction_timestamp )
+            VALUES ( $user_id, $transaction_id, $transaction_comment, $transaction_name, cast($transaction_timestamp as timestamp));
+
+            UPSERT INTO transaction_deltas
+                ( user_id, account_id, asset_id, transaction_id, delta_id, delta_amount, delta_type_id )
+            SELECT $user_id AS user_id, account_id, asset_id, $transaction_id AS transaction_id,
+                   delta_id, delta_amount, delta_type_id
+            FROM AS_TABLE($deltas);
+
+            UPSERT INTO account_balances ( user_id, account_id, asset_id, balance )
+            SELECT $user_id AS user_id, changes.account_id AS account_id, changes.asset_id AS asset_id,
+                   coalesce(balances.balance, 0) + changes.change AS balance
+            FROM $changes AS changes
+            LEFT JOIN (select * from account_balances where user_id = $user_id) AS balances
+                ON changes.account_id = balances.account_id AND changes.asset_id = balances.asset_id;
+            """ + changed(one(TRANSACTIONS, "$transaction_id")));
+
+    @Override
+    public CompletableFuture<Void> insertTransactionWithDeltas(long userId, Transaction transaction, List<DeltaRow> deltas) {
+        var deltaRows = new ArrayList<Value<?>>(deltas.size());
+        for (DeltaRow delta : deltas) {
+            deltaRows.add(NEW_DELTA_TYPE.newValue(Map.of(
+                    "account_id", PrimitiveValue.newUint64(delta.accountId()),
+                    "asset_id", PrimitiveValue.newUint64(delta.assetId()),
+                    "delta_id", PrimitiveValue.newUint64(delta.deltaId()),
+                    "delta_amount", PrimitiveValue.newUint64(delta.amount()),
+                    "delta_type_id", PrimitiveValue.newUint64(delta.deltaTypeId()),
+                    "delta_multiplier", PrimitiveValue.newInt64(delta.multiplier())
+            )));
+        }
+
+        var params = transactionParams(userId, transaction);
+        params.put("$deltas", ListType.of(NEW_DELTA_TYPE).newValue(deltaRows));
+        return db.executeQueryAsync(INSERT_TRANSACTION_WITH_DELTAS_QUERY, params).thenAccept(insertResult -> {
+            if (!insertResult.isSuccess()) {
+                throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, insertResult.getStatus().toString());
+            }
+        });
+    }
+
+    private static Params transactionParams(long userId, Transaction transaction) {
+        return NullableParams.ofNullable(
+                "$user_id", PrimitiveValue.newUint64(userId),
+                "$transaction_id", PrimitiveValue.newUint64(transaction.transactionId()),
+                "$transaction_name", transaction.name() == null ? null :
+                        OptionalValue.of(PrimitiveValue.newText(transaction.name())),
+                "$transaction_comment", transaction.comment() == null ? null :
+                        OptionalValue.of(PrimitiveValue.newText(transaction.comment())),
+                "$transaction_timestamp", transaction.timestamp() == null ? null :
+                        OptionalValue.of(PrimitiveValue.newTimestamp(transaction.timestamp()))
+        );
+    }
+
+    private static final Query GET_DELTAS_QUERY = query("transaction_deltas.list", SNAPSHOT_RO, """
+            DECLARE $user_id AS uint64;
+            DECLARE $transaction_id AS uint64;
+
+            discard select ensure(0, count(transaction_id) > 0, "TX_NOT_FOUND")
+            from transactions
+            where user_id = $user_id and transaction_id = $transaction_id;
+
+            select *
+            from transaction_deltas
+            where user_id = $user_id and transaction_id = $transaction_id;
+            """);
+
+    @Override
+    public CompletableFuture<List<TransactionDelta>> deltas(long userId, long transactionId) {
+        return db.executeQueryAsync(
+                GET_DELTAS_QUERY, Params.of(
+                        "$user_id", PrimitiveValue.newUint64(userId),
+                        "$transaction_id", PrimitiveValue.newUint64(transactionId)
+                )
+        ).thenApply(queryResult -> {
+            checkTransactionFound(queryResult.getStatus());
+            return DELTA_ROWS.readAll(queryResult.getValue().getResultSet(1));
+        });
+    }
+
+    /**
+     * Rows of {@code transaction_deltas} table.
+     */
+    public static final RowMapper<TransactionDelta> DELTA_ROWS = RowMapper.of(deltas -> {
+        int deltaId = index(deltas, "delta_id");
+        int amount = index(deltas, "delta_amount");
+        return row -> new TransactionDelta(row.getColumn(deltaId).getUint64(), row.getColumn(amount).getUint64());
+    });
+
+    /**
+     * Map failed {@code TX_NOT_FOUND} ensure to 404, other failures to 500.
+     */
+    static void checkTransactionFound(Status status) {
+        if (status.isSuccess()) {
+            return;
+        }
+        if (status.toString().contains("TX_NOT_FOUND")) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Transaction not found");
+        }
+        throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, status.toString());
+    }
+
+    private static final Keyset TRANSACTIONS_KEYSET =
+            keyset(TRANSACTIONS, "transactions.list", "transactions", "transaction_id");
+
+    @Override
+    public CompletableFuture<Page<Transaction>> transactions(long userId, PageRequest page) {
+        return pagination.page(TRANSACTIONS_KEYSET, userId, page, TRANSACTION_ROWS, Transaction::transactionId);
+    }
+
+    /**
+     * Rows of {@code transactions} table.
+     */
+    public static final RowMapper<Transaction> TRANSACTION_ROWS = RowMapper.of(transactions -> {
+        int transactionId = index(transactions, "transaction_id");
+        int name = index(transactions, "transaction_name");
+        int timestamp = index(transactions, "transaction_timestamp");
+        int comment = index(transactions, "transaction_comment");
+        return row -> new Transaction(
+                row.getColumn(transactionId).getUint64(),
+                optionalText(row, name),
+                optionalTimestamp(row, timestamp),
+                optionalText(row, comment)
+        );
+    });
+
+    private static final Query EXPORT_QUERY = query("export.transactions", SNAPSHOT_RO, """
+            DECLARE $user_id AS uint64;
+
+            select
+                t.transaction_id AS transaction_id,
+                t.transaction_name AS transaction_name,
+                t.transaction_timestamp AS transaction_timestamp,
+                t.transaction_comment AS transaction_comment,
+                d.delta_id AS delta_id,
+                d.account_id AS account_id,
+                d.asset_id AS asset_id,
+                d.delta_amount AS delta_amount,
+                d.delta_type_id AS delta_type_id
+            from transactions AS t
+            LEFT JOIN (select * from transaction_deltas where user_id = $user_id) AS d
+                ON t.transaction_id = d.transaction_id
+            where t.user_id = $user_id;
+            """);
+
+    /**
+     * Scan query reads consistent snapshot, every result set part is mapped and passed to consumer on YDB stream thread.
+     */
+    @Override
+    public CompletableFuture<Void> exportHistory(long userId, Consumer<List<ExportRow>> consumer) {
+        var scan = db.scanQueryAsync(
+                EXPORT_QUERY,
+                Params.of("$user_id", newUint64(userId)),
+                part -> consumer.accept(EXPORT_ROWS.readAll(part))
+        );
+        var result = scan.thenAccept(status -> {
+            if (!status.isSuccess()) {
+                throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, status.toString());
+            }
+        });
+        result.whenComplete((ignored, error) -> {
+            if (error instanceof CancellationException) {
+                scan.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Every scan part is separate result set, so indexes are resolved once per part.
+     */
+    private static final RowMapper<ExportRow> EXPORT_ROWS = RowMapper.of(rows -> {
+        int transactionId = index(rows, "transaction_id");
+        int name = index(rows, "transaction_name");
+        int timestamp = index(rows, "transaction_timestamp");
+        int comment = index(rows, "transaction_comment");
+        int deltaId = index(rows, "delta_id");
+        int accountId = index(rows, "account_id");
+        int assetId = index(rows, "asset_id");
+        int amount = index(rows, "delta_amount");
+        int deltaTypeId = index(rows, "delta_type_id");
+        return row -> {
+            var delta = row.getColumn(deltaId);
+            boolean hasDelta = delta.isOptionalItemPresent();
+            return new ExportRow(
+                    row.getColumn(transactionId).getUint64(),
+                    optionalText(row, name),
+                    optionalTimestamp(row, timestamp),
+                    optionalText(row, comment),
+                    hasDelta ? delta.getUint64() : null,
+                    hasDelta ? row.getColumn(accountId).getUint64() : null,
+                    hasDelta ? row.getColumn(assetId).getUint64() : null,
+                    hasDelta ? row.getColumn(amount).getUint64() : null,
+                    hasDelta ? row.getColumn(deltaTypeId).getUint64() : null
+            );
+        };
+    });
+}
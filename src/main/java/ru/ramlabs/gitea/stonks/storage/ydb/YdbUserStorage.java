@@ -0,0 +1,210 @@
+package ru.ramlabs.gitea.stonks.storage.ydb;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import ru.ramlabs.gitea.stonks.storage.UserStorage;
+import ru.ramlabs.gitea.stonks.storage.memory.InMemoryStorage;
+import ru.ramlabs.gitea.stonks.utils.DatabaseSupport;
+import ru.ramlabs.gitea.stonks.utils.DatabaseSupport.Query;
+import tech.ydb.core.Issue;
+import tech.ydb.table.query.Params;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.concurrent.CompletableFuture;
+
+import static org.springframework.http.HttpStatus.*;
+import static ru.ramlabs.gitea.stonks.utils.DatabaseSupport.TxMode.ONLINE_RO;
+import static ru.ramlabs.gitea.stonks.utils.DatabaseSupport.query;
+import static tech.ydb.table.values.PrimitiveValue.*;
+
+@Slf4j
+@Component
+@Profile("!" + InMemoryStorage.PROFILE)
+public class YdbUserStorage implements UserStorage {
+
+    private final DatabaseSupport db;
+
+    public YdbUserStorage(DatabaseSupport db) {
+        this.db = db;
+    }
+
+    private static final Query INSERT_USER_QUERY = query("users.insert", """
+            DECLARE $user_id AS uint64;
+            DECLARE $user_name AS utf8;
+            DECLARE $user_password AS utf8;
+
+            select ensure(0, count(*) = 0 ,"USER_EXISTS")
+            from users view user_name_index
+            where user_name = $user_name;
+
+            INSERT INTO users (user_id, user_name,user_password)
+            VALUES ($user_id, $user_name, $user_password);
+            """);
+
+    @Override
+    public CompletableFuture<Void> insertUser(long userId, String name, String encodedPassword) {
+        return db.executeQueryAsync(
+                INSERT_USER_QUERY,
+                Params.of(
+                        "$user_id", newUint64(userId),
+                        "$user_name", newText(name),
+                        "$user_password", newText(encodedPassword)
+                )
+        ).thenAccept(insertResult -> {
+            if (!insertResult.isSuccess()) {
+                log.info("Cannot register user {}", insertResult.getStatus());
+                for (Issue issue : insertResult.getStatus().getIssues()) {
+                    if (issue.getMessage().contains("USER_EXISTS")) {
+                        throw new ResponseStatusException(BAD_REQUEST, "User exists");
+                    }
+                }
+                throw new ResponseStatusException(BAD_REQUEST, "Cannot register");
+            }
+        });
+    }
+
+    private static final Query GET_USER_PASSWORD_QUERY = query("users.get_password", ONLINE_RO, """
+            DECLARE $user_name AS utf8;
+            SELECT user_id, user_password
+            FROM users
+            WHERE user_name=$user_name
+            """);
+
+    @Override
+    public CompletableFuture<@Nullable UserPassword> getPassword(String name) {
+        return db.executeQueryAsync(
+                GET_USER_PASSWORD_QUERY,
+                Params.of("$user_name", newText(name))
+        ).thenApply(userQuery -> {
+            var resultSet = userQuery.getValue().getResultSet(0);
+            if (!resultSet.next()) {
+                return null;
+            }
+            return new UserPassword(
+                    resultSet.getColumn("user_id").getUint64(),
+                    resultSet.getColumn("user_password").getText()
+            );
+        });
+    }
+
+    private static final Query UPDATE_PASSWORD_QUERY = query("users.update_password", """
+            DECLARE $user_id AS uint64;
+            DECLARE $user_password AS utf8;
+
+            UPDATE users
+            SET user_password = $user_password
+            WHERE user_id = $user_id;
+            """);
+
+    @Override
+    public CompletableFuture<Void> updatePassword(long userId, String encodedPassword) {
+        return db.executeQueryAsync(
+                UPDATE_PASSWORD_QUERY,
+                Params.of(
+                        "$user_id", newUint64(userId),
+                        "$user_password", newText(encodedPassword)
+                )
+        ).thenAccept(result -> {
+            if (!result.isSuccess()) {
+                throw new ResponseStatusException(INTERNAL_SERVER_ERROR, result.getStatus().toString());
+            }
+        });
+    }
+
+    private static final Query GET_USER_INFO_QUERY = query("users.get_info", ONLINE_RO, """
+            DECLARE $user_id AS uint64;
+            SELECT user_id,user_name
+            FROM users
+            WHERE user_id=$user_id;
+            """);
+
+    @Override
+    public CompletableFuture<@Nullable String> getUserName(long userId) {
+        return db.executeQueryAsync(
+                GET_USER_INFO_QUERY,
+                Params.of("$user_id", newUint64(userId))
+        ).thenApply(userQuery -> {
+            var resultSet = userQuery.getValue().getResultSet(0);
+            if (!resultSet.next()) {
+                return null;
+            }
+            return resultSet.getColumn("user_name").getText();
+        });
+    }
+
+    private static final Query INSERT_SESSION_QUERY = query("sessions.insert", """
+            DECLARE $user_id AS uint64;
+            DECLARE $session_token AS utf8;
+            DECLARE $session_expiry AS datetime;
+            INSERT INTO sessions (user_id, session_token,session_expiry)
+            VALUES ($user_id, $session_token, $session_expiry);
+            """);
+
+    @Override
+    public CompletableFuture<Void> insertSession(long userId, String token, Instant expiry) {
+        return db.executeQueryAsync(
+                INSERT_SESSION_QUERY,
+                Params.of(
+                        "$user_id", newUint64(userId),
+                        "$session_token", newText(token),
+                        "$session_expiry", newDatetime(expiry)
+                )
+        ).thenAccept(dataQueryResult -> {
+            if (!dataQueryResult.isSuccess()) {
+                log.warn("Cannot save session token to db: {}", dataQueryResult.getStatus());
+                throw new ResponseStatusException(INTERNAL_SERVER_ERROR);
+            }
+        });
+    }
+
+    private static final Query CHECK_SESSION_QUERY = query("sessions.check", ONLINE_RO, """
+            DECLARE $user_id AS uint64;
+            DECLARE $session_token AS utf8;
+            SELECT user_id, session_token, session_expiry
+            FROM sessions
+            WHERE user_id==$user_id and session_token==$session_token;
+            """);
+
+    @Override
+    public CompletableFuture<@Nullable Instant> getSessionExpiry(long userId, String token) {
+        return db.executeQueryAsync(
+                CHECK_SESSION_QUERY,
+                Params.of(
+                        "$user_id", newUint64(userId),
+                        "$session_token", newText(token)
+                )
+        ).thenApply(sessionQuery -> {
+            var resultSet = sessionQuery.getValue().getResultSet(0);
+            if (!resultSet.next()) {
+                return null;
+            }
+            return resultSet.getColumn("session_expiry").getDatetime().toInstant(ZoneOffset.UTC);
+        });
+    }
+
+    private static final Query DELETE_SESSION_QUERY = query("sessions.delete", """
+            DECLARE $user_id AS uint64;
+            DECLARE $session_token AS utf8;
+            DELETE from sessions
+            WHERE user_id==$user_id and session_token==$session_token;
+            """);
+
+    @Override
+    public CompletableFuture<Void> deleteSession(long userId, String token) {
+        return db.executeQueryAsync(
+                DELETE_SESSION_QUERY,
+                Params.of(
+                        "$user_id", newUint64(userId),
+                        "$session_token", newText(token)
+                )
+        ).thenAccept(result -> {
+            if (!result.isSuccess()) {
+                throw new ResponseStatusException(INTERNAL_SERVER_ERROR, result.getStatus().toString());
+            }
+        });
+    }
+}
@@ -0,0 +1,63 @@
+package ru.ramlabs.gitea.stonks.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.crypto.argon2.Argon2PasswordEncoder;
+
+import java.time.Duration;
+import java.util.regex.Pattern;
+
+/**
+ * Argon2 cost parameters. Salt and hash length are the same as in Spring Security defaults.
+ */
+@Slf4j
+public record Argon2Parameters(int memoryKib, int iterations, int parallelism) {
+
+    private static final int SALT_LENGTH = 16;
+    private static final int HASH_LENGTH = 32;
+    private static final Pattern ENCODED_PARAMETERS = Pattern.compile("\\$m=(\\d+),t=(\\d+),p=(\\d+)\\$");
+    private static final String CALIBRATION_PASSWORD = "calibration-password";
+
+    public Argon2PasswordEncoder encoder() {
+        return new Argon2PasswordEncoder(SALT_LENGTH, HASH_LENGTH, parallelism, memoryKib, iterations);
+    }
+
+    /**
+     * @return true when hash was encoded with less memory or fewer iterations than these parameters,
+     * or is not an Argon2 hash. Stronger hashes are kept, so instances never downgrade each other's hashes.
+     */
+    public boolean weaker(String encodedHash) {
+        var matcher = ENCODED_PARAMETERS.matcher(encodedHash);
+        if (!matcher.find()) {
+            return true;
+        }
+        return Integer.parseInt(matcher.group(1)) < memoryKib
+                || Integer.parseInt(matcher.group(2)) < iterations;
+    }
+
+    /**
+     * Pick number of iterations so that one hash takes about {@code budget} on this machine.
+     * Memory and parallelism are fixed, hashing time grows linearly with iterations.
+     * Result is never below {@code minIterations}, so slow or throttled machine does not lower the cost.
+     */
+    public static Argon2Parameters calibrate(Duration budget, int memoryKib, int parallelism,
+                                             int minIterations, int maxIterations) {
+        var probe = new Argon2Parameters(memoryKib, 1, parallelism).encoder();
+        //first runs are slow until code is compiled
+        for (int i = 0; i < 3; i++) {
+            probe.encode(CALIBRATION_PASSWORD);
+        }
+
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            long start = System.nanoTime();
+            probe.encode(CALIBRATION_PASSWORD);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        var iterations = (int) Math.max(minIterations, Math.min(maxIterations, budget.toNanos() / Math.max(best, 1)));
+        var parameters = new Argon2Parameters(memoryKib, iterations, parallelism);
+        log.info("Argon2 calibrated to {} for {} budget, one iteration takes {}",
+                parameters, budget, Duration.ofNanos(best));
+        return parameters;
+    }
+}
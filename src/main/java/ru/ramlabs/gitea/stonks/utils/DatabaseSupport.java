@@ -1,38 +1,352 @@
 package ru.ramlabs.gitea.stonks.utils;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import lombok.extern.slf4j.Slf4j;
 import org.intellij.lang.annotations.Language;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
+import ru.ramlabs.gitea.stonks.storage.memory.InMemoryStorage;
+import tech.ydb.core.Issue;
 import tech.ydb.core.Result;
+import tech.ydb.core.Status;
+import tech.ydb.core.StatusCode;
+import tech.ydb.core.grpc.GrpcReadStream;
+import tech.ydb.table.Session;
 import tech.ydb.table.SessionRetryContext;
+import tech.ydb.table.query.DataQuery;
 import tech.ydb.table.query.DataQueryResult;
 import tech.ydb.table.query.Params;
+import tech.ydb.table.result.ResultSetReader;
+import tech.ydb.table.settings.BulkUpsertSettings;
 import tech.ydb.table.settings.ExecuteDataQuerySettings;
+import tech.ydb.table.settings.ExecuteScanQuerySettings;
+import tech.ydb.table.settings.PrepareDataQuerySettings;
 import tech.ydb.table.transaction.TxControl;
+import tech.ydb.table.values.ListValue;
 
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 @Component
+@Profile("!" + InMemoryStorage.PROFILE)
 @Slf4j
 public class DatabaseSupport {
 
+    private static final Map<String, Query> QUERIES = new ConcurrentHashMap<>();
+
+    /**
+     * Transaction mode of query. Read-only modes do not take locks and are cheaper than {@link #SERIALIZABLE_RW}.
+     */
+    public enum TxMode {
+        /**
+         * Writes, and reads that are part of write logic.
+         */
+        SERIALIZABLE_RW(TxControl.serializableRw()),
+        /**
+         * Several reads that must see the same consistent state of database.
+         */
+        SNAPSHOT_RO(TxControl.snapshotRo()),
+        /**
+         * Single read of latest committed data.
+         */
+        ONLINE_RO(TxControl.onlineRo()),
+        /**
+         * Read that tolerates data lagging behind by a few seconds.
+         */
+        STALE_RO(TxControl.staleRo());
+
+        private final TxControl<?> txControl;
+
+        TxMode(TxControl<?> txControl) {
+            this.txControl = txControl;
+        }
+
+        public TxControl<?> txControl() {
+            return txControl;
+        }
+
+        public boolean isReadOnly() {
+            return this != SERIALIZABLE_RW;
+        }
+    }
+
+    /**
+     * Named query from registry. Queries are static, so they are compiled by YDB once per session
+     * and then executed by prepared query id.
+     */
+    public record Query(String name, TxMode txMode, String text) {
+
+    }
+
+    /**
+     * Register write query in central registry. Intended to be called from static initializers of api classes.
+     *
+     * @throws IllegalStateException when query with same name is already registered
+     */
+    public static Query query(String name, @Language("SQL") String text) {
+        return query(name, TxMode.SERIALIZABLE_RW, text);
+    }
+
+    /**
+     * Register query with given transaction mode. Mode can be overridden with
+     * {@code stonks.db.tx-mode.<query name>} property, except that write queries can not be made read-only.
+     *
+     * @throws IllegalStateException when query with same name is already registered
+     */
+    public static Query query(String name, TxMode txMode, @Language("SQL") String text) {
+        var query = new Query(name, txMode, text);
+        if (QUERIES.putIfAbsent(name, query) != null) {
+            throw new IllegalStateException("Query " + name + " is already registered");
+        }
+        return query;
+    }
+
+    public static Collection<Query> registeredQueries() {
+        return Collections.unmodifiableCollection(QUERIES.values());
+    }
+
+    private record PreparedKey(String sessionId, Query query) {
+
+    }
+
+    /**
+     * Path of database, prefix of table paths for operations that take full path, e.g. bulk upsert.
+     */
+    public record DatabasePath(String path) {
+
+        public String table(String name) {
+            return path + "/" + name;
+        }
+    }
+
     private final SessionRetryContext db;
+    private final QueryMetrics queryMetrics;
+    private final Environment environment;
+    private final DatabasePath databasePath;
+    private final SessionPoolMonitor sessionPool;
+    private final Cache<PreparedKey, DataQuery> preparedQueries = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterAccess(Duration.ofMinutes(30))
+            .build();
+    private final Map<Query, TxMode> txModes = new ConcurrentHashMap<>();
+    private final Map<String, Query> bulkUpserts = new ConcurrentHashMap<>();
 
-    public DatabaseSupport(SessionRetryContext db) {
+    public DatabaseSupport(SessionRetryContext db, QueryMetrics queryMetrics, Environment environment,
+                           DatabasePath databasePath, SessionPoolMonitor sessionPool) {
         this.db = db;
+        this.queryMetrics = queryMetrics;
+        this.environment = environment;
+        this.databasePath = databasePath;
+        this.sessionPool = sessionPool;
     }
 
+    /**
+     * Execute query without blocking caller thread. Returned future is completed by YDB SDK threads,
+     * so continuations must not block.
+     * <p>
+     * Query is accounted to {@link RequestCost} of caller, request id is sent to YDB as trace id.
+     */
+    public CompletableFuture<Result<DataQueryResult>> executeQueryAsync(Query query, Params params) {
+        var cost = RequestCost.current();
+        var traceId = cost == null ? null : cost.requestId();
+        var attempts = new AtomicInteger();
+        long start = System.nanoTime();
+
+        var future = new CompletableFuture<Result<DataQueryResult>>();
+        db.supplyResult(session -> {
+            recordAttempt(attempts, start);
+            return executePrepared(session, query, params, traceId);
+        }).whenComplete((result, error) -> {
+            long duration = System.nanoTime() - start;
+            var status = result == null ? null : result.getStatus();
+            queryMetrics.recordExecution(query, duration, attempts.get(), status);
+            if (cost != null) {
+                cost.record(duration, attempts.get(), status);
+            }
+            //continuations run here, so queries started by them see the same request cost
+            RequestCost.runWith(cost, () -> {
+                if (error != null) {
+                    future.completeExceptionally(error);
+                } else {
+                    future.complete(result);
+                }
+            });
+        });
+        return future;
+    }
 
-    public Result<DataQueryResult> executeQuery(@Language("SQL") String query, Params params)
+    public Result<DataQueryResult> executeQuery(Query query, Params params)
             throws ExecutionException, InterruptedException {
-        var result = db.supplyResult(session -> session.executeDataQuery(
-                query, TxControl.serializableRw(), params,
-                new ExecuteDataQuerySettings().setReportCostInfo(true)
-        )).get();
+        return await(executeQueryAsync(query, params));
+    }
 
-        if (result.getStatus().getConsumedRu() != null && result.getStatus().getConsumedRu() > 0) {
-            log.info("Consumed {} RU", result.getStatus().getConsumedRu());
-        }
+    /**
+     * Stream result of scan query part by part. {@code consumer} is called on YDB SDK threads, next part is not
+     * requested until it returns, so blocking consumer slows down the stream instead of buffering it.
+     * <p>
+     * Query is not retried after first part was passed to consumer, since consumer would see rows twice.
+     * <p>
+     * Cancelling returned future cancels the stream, consumer is not called after that.
+     */
+    public CompletableFuture<Status> scanQueryAsync(Query query, Params params, Consumer<ResultSetReader> consumer) {
+        var cost = RequestCost.current();
+        var started = new AtomicBoolean();
+        var cancelled = new AtomicBoolean();
+        var stream = new AtomicReference<GrpcReadStream<ResultSetReader>>();
+        var attempts = new AtomicInteger();
+        long start = System.nanoTime();
+        var result = db.supplyStatus(session -> {
+            recordAttempt(attempts, start);
+            if (started.get() || cancelled.get()) {
+                return CompletableFuture.completedFuture(Status.of(StatusCode.CLIENT_CANCELLED)
+                        .withIssues(Issue.of("Scan query " + query.name()
+                                + (cancelled.get() ? " cancelled" : " failed after streaming started"),
+                                Issue.Severity.ERROR)));
+            }
+            var attempt = session.executeScanQuery(query.text(), params, ExecuteScanQuerySettings.newBuilder().build());
+            stream.set(attempt);
+            return attempt.start(part -> {
+                if (cancelled.get()) {
+                    return;
+                }
+                started.set(true);
+                consumer.accept(part);
+            });
+        }).whenComplete((status, error) -> {
+            long duration = System.nanoTime() - start;
+            queryMetrics.recordExecution(query, duration, attempts.get(), status);
+            if (cost != null) {
+                cost.record(duration, attempts.get(), status);
+            }
+        });
+        result.whenComplete((status, error) -> {
+            if (error instanceof CancellationException) {
+                cancelled.set(true);
+                var attempt = stream.get();
+                if (attempt != null) {
+                    attempt.cancel();
+                }
+            }
+        });
         return result;
     }
+
+    /**
+     * Write rows to table bypassing transactions: every row is upserted independently, nothing is read,
+     * so it is much cheaper than upsert query for large imports. Rows are structs with table column names.
+     * <p>
+     * Retried as a whole, which is safe since upsert is idempotent. Accounted to {@link RequestCost} and
+     * query metrics as {@code bulk_upsert.<table>}.
+     */
+    public CompletableFuture<Status> bulkUpsertAsync(String table, ListValue rows) {
+        var query = bulkUpserts.computeIfAbsent(table, t -> new Query("bulk_upsert." + t, TxMode.SERIALIZABLE_RW, ""));
+        var path = databasePath.table(table);
+        var cost = RequestCost.current();
+        var attempts = new AtomicInteger();
+        long start = System.nanoTime();
+        return db.supplyStatus(session -> {
+            recordAttempt(attempts, start);
+            return session.executeBulkUpsert(path, rows, new BulkUpsertSettings());
+        }).whenComplete((status, error) -> {
+            long duration = System.nanoTime() - start;
+            queryMetrics.recordExecution(query, duration, attempts.get(), status);
+            if (cost != null) {
+                cost.record(duration, attempts.get(), status);
+            }
+        });
+    }
+
+    /**
+     * Session is acquired before first attempt, so time until it is session wait, plus executor scheduling.
+     */
+    private void recordAttempt(AtomicInteger attempts, long start) {
+        if (attempts.incrementAndGet() == 1) {
+            sessionPool.recordWait(System.nanoTime() - start);
+        }
+    }
+
+    private CompletableFuture<Result<DataQueryResult>> executePrepared(Session session, Query query, Params params,
+                                                                       @Nullable String traceId) {
+        var key = new PreparedKey(session.getId(), query);
+
+        var prepared = preparedQueries.getIfPresent(key);
+        if (prepared != null) {
+            queryMetrics.recordCached(query);
+            return execute(key, prepared, txMode(query), params, traceId);
+        }
+
+        var prepareSettings = new PrepareDataQuerySettings();
+        if (traceId != null) {
+            prepareSettings.setTraceId(traceId);
+        }
+        return session.prepareDataQuery(query.text(), prepareSettings).thenCompose(prepareResult -> {
+            if (!prepareResult.isSuccess()) {
+                log.warn("Cannot prepare query {}: {}", query.name(), prepareResult.getStatus());
+                return CompletableFuture.completedFuture(prepareResult.map(ignored -> (DataQueryResult) null));
+            }
+            queryMetrics.recordCompiled(query);
+            var dataQuery = prepareResult.getValue();
+            preparedQueries.put(key, dataQuery);
+            return execute(key, dataQuery, txMode(query), params, traceId);
+        });
+    }
+
+    private CompletableFuture<Result<DataQueryResult>> execute(PreparedKey key, DataQuery dataQuery, TxMode txMode,
+                                                               Params params, @Nullable String traceId) {
+        var settings = new ExecuteDataQuerySettings().setReportCostInfo(true).keepInQueryCache();
+        if (traceId != null) {
+            settings.setTraceId(traceId);
+        }
+        return dataQuery.execute(txMode.txControl(), params, settings).thenApply(result -> {
+            if (result.getStatus().getCode() == StatusCode.NOT_FOUND) {
+                //prepared query was evicted on server, so it is prepared again on retry
+                preparedQueries.invalidate(key);
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Mode of query with configuration override applied.
+     */
+    public TxMode txMode(Query query) {
+        return txModes.computeIfAbsent(query, q -> {
+            var txMode = environment.getProperty("stonks.db.tx-mode." + q.name(), TxMode.class, q.txMode());
+            if (txMode.isReadOnly() && !q.txMode().isReadOnly()) {
+                throw new IllegalStateException("Write query " + q.name() + " can not be executed in " + txMode);
+            }
+            if (txMode != q.txMode()) {
+                log.info("Query {} is executed in {} instead of {}", q.name(), txMode, q.txMode());
+            }
+            return txMode;
+        });
+    }
+
+    /**
+     * Wait for future completion. Runtime exceptions (e.g. {@link org.springframework.web.server.ResponseStatusException})
+     * are rethrown as is, so blocking callers see the same errors as before async api was introduced.
+     */
+    public static <T> T await(CompletableFuture<T> future) throws ExecutionException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
 }
@@ -0,0 +1,12 @@
+package ru.ramlabs.gitea.stonks.utils;
+
+/**
+ * Source of primary keys for new rows. Implementation is selected with {@code stonks.ids.generator} property.
+ */
+public interface IdGenerator {
+
+    /**
+     * @return new id, unique across all nodes. Should be treated as unsigned
+     */
+    long nextId();
+}
@@ -0,0 +1,97 @@
+package ru.ramlabs.gitea.stonks.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.ramlabs.gitea.stonks.storage.IdNodeStorage;
+import ru.ramlabs.gitea.stonks.storage.memory.InMemoryStorage;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+
+import static ru.ramlabs.gitea.stonks.utils.DatabaseSupport.await;
+
+/**
+ * Snowflake node id leased in database, used when {@code stonks.ids.node} is not set, e.g. by autoscaled replicas.
+ * <p>
+ * Lease is taken on startup for {@code stonks.ids.lease.ttl} and extended every {@code stonks.ids.lease.renew}.
+ * Expiry is tracked from local time before each request, so it is never later than expiry in database.
+ * After it node id may belong to another instance, so {@link #node(long)} fails until lease is extended
+ * or another node id is taken.
+ */
+@Component
+@Profile("!" + InMemoryStorage.PROFILE)
+@Slf4j
+public class IdNodeLease {
+
+    private record Lease(int node, long expiresAtMillis) {
+
+    }
+
+    private final IdNodeStorage storage;
+    private final Duration ttl;
+    private final String owner = UUID.randomUUID().toString();
+
+    private int nodes;
+    private volatile Lease lease;
+
+    public IdNodeLease(IdNodeStorage storage, @Value("${stonks.ids.lease.ttl}") Duration ttl) {
+        this.storage = storage;
+        this.ttl = ttl;
+    }
+
+    /**
+     * Take free node id in {@code [0, nodes)}.
+     *
+     * @throws IllegalStateException when every node id is leased
+     */
+    public synchronized void acquire(int nodes) throws ExecutionException, InterruptedException {
+        this.nodes = nodes;
+        long requestedAt = System.currentTimeMillis();
+        var node = await(storage.acquire(owner, nodes, ttl));
+        if (node.isEmpty()) {
+            throw new IllegalStateException("All " + nodes + " snowflake node ids are leased");
+        }
+        lease = new Lease(node.getAsInt(), requestedAt + ttl.toMillis());
+        log.info("Leased snowflake node id {}", node.getAsInt());
+    }
+
+    /**
+     * @throws IllegalStateException when there is no valid lease
+     */
+    int node(long nowMillis) {
+        var lease = this.lease;
+        if (lease == null || nowMillis >= lease.expiresAtMillis()) {
+            throw new IllegalStateException("Snowflake node id lease expired");
+        }
+        return lease.node();
+    }
+
+    @Scheduled(fixedDelayString = "${stonks.ids.lease.renew}", initialDelayString = "${stonks.ids.lease.renew}")
+    public synchronized void renew() {
+        var lease = this.lease;
+        try {
+            if (lease == null) {
+                //lost and not taken again yet, or never taken
+                if (nodes > 0) {
+                    acquire(nodes);
+                }
+                return;
+            }
+            long requestedAt = System.currentTimeMillis();
+            if (await(storage.renew(lease.node(), owner, ttl))) {
+                this.lease = new Lease(lease.node(), requestedAt + ttl.toMillis());
+            } else {
+                log.error("Snowflake node id {} was leased by another instance, taking another one", lease.node());
+                this.lease = null;
+                acquire(nodes);
+            }
+        } catch (Exception e) {
+            //keep the lease until it expires, next renewal may succeed
+            log.warn("Cannot renew snowflake node id lease", e);
+        }
+    }
+}
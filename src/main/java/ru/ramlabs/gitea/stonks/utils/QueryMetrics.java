@@ -0,0 +1,111 @@
+package ru.ramlabs.gitea.stonks.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.stereotype.Component;
+import ru.ramlabs.gitea.stonks.utils.DatabaseSupport.Query;
+import tech.ydb.core.Status;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metrics of registered queries, all tagged with query name:
+ * <ul>
+ *     <li>{@code stonks.db.query} - latency histogram including retries, tagged with final status</li>
+ *     <li>{@code stonks.db.query.ru} - request units consumed by successful executions</li>
+ *     <li>{@code stonks.db.query.retries} - attempts beyond the first one</li>
+ *     <li>{@code stonks.db.query.failures} - executions that failed after all retries, tagged with status</li>
+ *     <li>{@code stonks.db.query.prepare} - compilations on session vs executions of already prepared query</li>
+ * </ul>
+ */
+@Component
+public class QueryMetrics {
+
+    private static final String SUCCESS = "SUCCESS";
+    private static final String EXCEPTION = "EXCEPTION";
+
+    private record Meters(Timer success, DistributionSummary ru, Counter retries, Counter compiled, Counter cached) {
+
+    }
+
+    private final MeterRegistry meterRegistry;
+    private final Map<Query, Meters> meters = new ConcurrentHashMap<>();
+
+    public QueryMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * @param status final status, null when execution completed with exception
+     */
+    public void recordExecution(Query query, long durationNanos, int attempts, @Nullable Status status) {
+        var queryMeters = meters(query);
+        if (attempts > 1) {
+            queryMeters.retries().increment(attempts - 1);
+        }
+
+        if (status != null && status.isSuccess()) {
+            queryMeters.success().record(durationNanos, TimeUnit.NANOSECONDS);
+            if (status.getConsumedRu() != null) {
+                queryMeters.ru().record(status.getConsumedRu());
+            }
+            return;
+        }
+
+        var statusTag = status == null ? EXCEPTION : status.getCode().name();
+        timer(query, statusTag).record(durationNanos, TimeUnit.NANOSECONDS);
+        Counter.builder("stonks.db.query.failures")
+                .description("Query executions failed after all retries")
+                .tag("query", query.name())
+                .tag("status", statusTag)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    public void recordCompiled(Query query) {
+        meters(query).compiled().increment();
+    }
+
+    public void recordCached(Query query) {
+        meters(query).cached().increment();
+    }
+
+    private Meters meters(Query query) {
+        return meters.computeIfAbsent(query, q -> new Meters(
+                timer(q, SUCCESS),
+                DistributionSummary.builder("stonks.db.query.ru")
+                        .description("Request units consumed by query")
+                        .baseUnit("ru")
+                        .tag("query", q.name())
+                        .register(meterRegistry),
+                Counter.builder("stonks.db.query.retries")
+                        .description("Query attempts beyond the first one")
+                        .tag("query", q.name())
+                        .register(meterRegistry),
+                Counter.builder("stonks.db.query.prepare")
+                        .description("Query compilations on session vs executions of already prepared query")
+                        .tag("query", q.name())
+                        .tag("result", "compiled")
+                        .register(meterRegistry),
+                Counter.builder("stonks.db.query.prepare")
+                        .description("Query compilations on session vs executions of already prepared query")
+                        .tag("query", q.name())
+                        .tag("result", "cached")
+                        .register(meterRegistry)
+        ));
+    }
+
+    private Timer timer(Query query, String status) {
+        return Timer.builder("stonks.db.query")
+                .description("Query latency including retries")
+                .tag("query", query.name())
+                .tag("status", status)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,19 @@
+package ru.ramlabs.gitea.stonks.utils;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Uniformly random ids, same distribution as ids generated before {@link SnowflakeIdGenerator} was introduced.
+ */
+@Component
+@ConditionalOnProperty(name = "stonks.ids.generator", havingValue = "random")
+public class RandomIdGenerator implements IdGenerator {
+
+    @Override
+    public long nextId() {
+        return ThreadLocalRandom.current().nextLong();
+    }
+}
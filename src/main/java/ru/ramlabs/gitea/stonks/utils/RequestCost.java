@@ -0,0 +1,95 @@
+package ru.ramlabs.gitea.stonks.utils;
+
+import org.jetbrains.annotations.Nullable;
+import tech.ydb.core.Status;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * Database cost of one http request: YDB round trips (query attempts, including retries), time spent waiting
+ * for database and consumed RU.
+ * <p>
+ * Cost is bound to request thread by {@link ru.ramlabs.gitea.stonks.MDCFilter}. Async queries capture it on call
+ * and complete their futures with it bound again, so queries started from continuations are accounted as well.
+ */
+public final class RequestCost {
+
+    private static final ThreadLocal<RequestCost> CURRENT = new ThreadLocal<>();
+
+    private final String requestId;
+    private final AtomicInteger roundTrips = new AtomicInteger();
+    private final AtomicLong dbNanos = new AtomicLong();
+    private final DoubleAdder ru = new DoubleAdder();
+
+    public RequestCost(String requestId) {
+        this.requestId = requestId;
+    }
+
+    @Nullable
+    public static RequestCost current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Bind cost to current thread.
+     *
+     * @return previous binding, to be restored with another call
+     */
+    @Nullable
+    public static RequestCost bind(@Nullable RequestCost cost) {
+        var previous = CURRENT.get();
+        if (cost == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(cost);
+        }
+        return previous;
+    }
+
+    /**
+     * Run action with cost bound to current thread, previous binding is restored afterwards.
+     */
+    public static void runWith(@Nullable RequestCost cost, Runnable action) {
+        var previous = bind(cost);
+        try {
+            action.run();
+        } finally {
+            bind(previous);
+        }
+    }
+
+    public void record(long durationNanos, int attempts, @Nullable Status status) {
+        roundTrips.addAndGet(attempts);
+        dbNanos.addAndGet(durationNanos);
+        if (status != null && status.getConsumedRu() != null) {
+            ru.add(status.getConsumedRu());
+        }
+    }
+
+    public String requestId() {
+        return requestId;
+    }
+
+    public int roundTrips() {
+        return roundTrips.get();
+    }
+
+    public double dbMillis() {
+        return dbNanos.get() / 1_000_000.0;
+    }
+
+    public double ru() {
+        return ru.sum();
+    }
+
+    /**
+     * Value of {@code Server-Timing} response header.
+     */
+    public String serverTiming() {
+        return String.format(Locale.ROOT, "db;dur=%.3f, db-rt;desc=\"%d\", db-ru;desc=\"%.1f\"",
+                dbMillis(), roundTrips(), ru());
+    }
+}
@@ -0,0 +1,203 @@
+package ru.ramlabs.gitea.stonks.utils;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import ru.ramlabs.gitea.stonks.storage.memory.InMemoryStorage;
+import tech.ydb.core.Result;
+import tech.ydb.table.Session;
+import tech.ydb.table.TableClient;
+import tech.ydb.table.stats.SessionPoolStats;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Session pool of YDB table client: warm-up, metrics and readiness.
+ * <p>
+ * {@code stonks.db.pool.min-size} sessions are created on startup, so first requests after deploy do not pay
+ * for session creation. SDK does not report how long callers wait for session, so {@link DatabaseSupport}
+ * measures it as time from query call to first attempt. Metrics:
+ * <ul>
+ *     <li>{@code stonks.db.pool.sessions} - sessions tagged with state: idle, acquired, or pending for callers
+ *     waiting for session</li>
+ *     <li>{@code stonks.db.pool.utilization} - acquired sessions to max pool size</li>
+ *     <li>{@code stonks.db.pool.wait} - time from query call to session acquired</li>
+ *     <li>{@code stonks.db.pool.churn} - sessions created, deleted and failed to create</li>
+ * </ul>
+ * Health is down when mean wait over last {@code stonks.db.pool.wait-window} exceeds
+ * {@code stonks.db.pool.wait-threshold}. It is part of readiness group, so saturated instance stops receiving
+ * traffic instead of queueing it.
+ */
+@Component
+@Profile("!" + InMemoryStorage.PROFILE)
+@Lazy(false)
+@Slf4j
+public class SessionPoolMonitor implements HealthIndicator {
+
+    private static final Duration WARM_UP_TIMEOUT = Duration.ofSeconds(10);
+
+    /**
+     * Waits recorded since {@code start}.
+     */
+    private static final class Window {
+        final long start;
+        final LongAdder count = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+
+        Window(long start) {
+            this.start = start;
+        }
+    }
+
+    private final TableClient client;
+    private final int warmUpSessions;
+    private final long thresholdNanos;
+    private final long windowNanos;
+    private final Timer wait;
+    private final AtomicReference<Window> current;
+    private volatile Window previous;
+
+    public SessionPoolMonitor(TableClient client,
+                              MeterRegistry meterRegistry,
+                              @Value("${stonks.db.pool.min-size}") int warmUpSessions,
+                              @Value("${stonks.db.pool.wait-threshold}") Duration threshold,
+                              @Value("${stonks.db.pool.wait-window}") Duration window) {
+        this.client = client;
+        this.warmUpSessions = warmUpSessions;
+        this.thresholdNanos = threshold.toNanos();
+        this.windowNanos = window.toNanos();
+        long now = System.nanoTime();
+        current = new AtomicReference<>(new Window(now));
+        previous = new Window(now);
+
+        wait = Timer.builder("stonks.db.pool.wait")
+                .description("Time from query call to session acquired")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        sessions(meterRegistry, "idle", SessionPoolStats::getIdleCount);
+        sessions(meterRegistry, "acquired", SessionPoolStats::getAcquiredCount);
+        sessions(meterRegistry, "pending", SessionPoolStats::getPendingAcquireCount);
+        Gauge.builder("stonks.db.pool.utilization", client,
+                        c -> utilization(c.sessionPoolStats()))
+                .description("Acquired sessions to max pool size")
+                .register(meterRegistry);
+        churn(meterRegistry, "created", SessionPoolStats::getCreatedTotal);
+        churn(meterRegistry, "deleted", SessionPoolStats::getDeletedTotal);
+        churn(meterRegistry, "failed", SessionPoolStats::getFailedTotal);
+    }
+
+    private void sessions(MeterRegistry meterRegistry, String state, ToDoubleFunction<SessionPoolStats> value) {
+        Gauge.builder("stonks.db.pool.sessions", client, c -> value.applyAsDouble(c.sessionPoolStats()))
+                .description("Sessions of pool by state, pending are callers waiting for session")
+                .tag("state", state)
+                .register(meterRegistry);
+    }
+
+    private void churn(MeterRegistry meterRegistry, String event, ToDoubleFunction<SessionPoolStats> value) {
+        FunctionCounter.builder("stonks.db.pool.churn", client, c -> value.applyAsDouble(c.sessionPoolStats()))
+                .description("Sessions created, deleted and failed to create")
+                .tag("event", event)
+                .register(meterRegistry);
+    }
+
+    private static double utilization(SessionPoolStats stats) {
+        return stats.getMaxSize() == 0 ? 0 : (double) stats.getAcquiredCount() / stats.getMaxSize();
+    }
+
+    /**
+     * Acquire {@code min-size} sessions at once and return them to pool. Failure is logged and does not
+     * fail startup, missing sessions are created on demand.
+     */
+    @PostConstruct
+    public void warmUp() {
+        if (warmUpSessions <= 0) {
+            return;
+        }
+        long start = System.nanoTime();
+        var futures = new ArrayList<CompletableFuture<Result<Session>>>(warmUpSessions);
+        for (int i = 0; i < warmUpSessions; i++) {
+            futures.add(client.createSession(WARM_UP_TIMEOUT));
+        }
+        //sessions are held until all are acquired, otherwise pool would hand out the same session again
+        var sessions = new ArrayList<Session>(warmUpSessions);
+        for (var future : futures) {
+            try {
+                var result = future.join();
+                if (result.isSuccess()) {
+                    sessions.add(result.getValue());
+                } else {
+                    log.warn("Cannot create session on warm-up: {}", result.getStatus());
+                }
+            } catch (RuntimeException e) {
+                log.warn("Cannot create session on warm-up", e);
+            }
+        }
+        sessions.forEach(Session::close);
+        log.info("Warmed up {} of {} sessions in {} ms",
+                sessions.size(), warmUpSessions, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    public void recordWait(long nanos) {
+        wait.record(nanos, TimeUnit.NANOSECONDS);
+        var window = window(System.nanoTime());
+        window.count.increment();
+        window.nanos.add(nanos);
+    }
+
+    /**
+     * Current window, replaced by new one when it is {@code wait-window} old. Previous window is dropped
+     * when nothing was recorded for longer than that, so old waits do not keep instance unready.
+     */
+    private Window window(long now) {
+        var window = current.get();
+        if (now - window.start < windowNanos) {
+            return window;
+        }
+        var next = new Window(now);
+        if (current.compareAndSet(window, next)) {
+            previous = now - window.start < 2 * windowNanos ? window : next;
+            return next;
+        }
+        return current.get();
+    }
+
+    @Override
+    public Health health() {
+        var window = window(System.nanoTime());
+        var previousWindow = previous;
+        long count = window.count.sum();
+        long nanos = window.nanos.sum();
+        if (previousWindow != window) {
+            count += previousWindow.count.sum();
+            nanos += previousWindow.nanos.sum();
+        }
+        long meanNanos = count == 0 ? 0 : nanos / count;
+
+        var stats = client.sessionPoolStats();
+        var health = meanNanos > thresholdNanos ? Health.down() : Health.up();
+        return health
+                .withDetail("mean_wait_ms", TimeUnit.NANOSECONDS.toMillis(meanNanos))
+                .withDetail("threshold_ms", TimeUnit.NANOSECONDS.toMillis(thresholdNanos))
+                .withDetail("waits", count)
+                .withDetail("idle", stats.getIdleCount())
+                .withDetail("acquired", stats.getAcquiredCount())
+                .withDetail("pending", stats.getPendingAcquireCount())
+                .withDetail("max_size", stats.getMaxSize())
+                .build();
+    }
+}
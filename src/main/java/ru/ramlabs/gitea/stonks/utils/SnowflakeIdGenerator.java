@@ -0,0 +1,139 @@
+package ru.ramlabs.gitea.stonks.utils;
+
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * K-sortable ids: ids generated later are greater, except for ids generated within the same millisecond.
+ * <p>
+ * Layout from high to low bits: 41 bits of milliseconds since {@link #EPOCH}, 8 bits of node id,
+ * 6 bits of stripe, 9 bits of sequence within millisecond and stripe.
+ * <p>
+ * Every thread works with stripe selected by its id, so threads do not contend on shared counter.
+ * Stripes are used instead of thread locals, because virtual threads are too many to have state each.
+ * <p>
+ * Stripe and sequence are the same in every process, so only node id tells instances apart.
+ * It is {@code stonks.ids.node} when set, then it must be unique for every running instance.
+ * Otherwise it is leased in database with {@link IdNodeLease}, so identical replicas get different ones.
+ * The bean is created eagerly, so instance without node id fails on startup, not on first write.
+ */
+@Component
+@Lazy(false)
+@ConditionalOnProperty(name = "stonks.ids.generator", havingValue = "snowflake", matchIfMissing = true)
+public class SnowflakeIdGenerator implements IdGenerator {
+
+    public static final Instant EPOCH = Instant.parse("2023-01-01T00:00:00Z");
+
+    static final int NODE_BITS = 8;
+    static final int STRIPE_BITS = 6;
+    static final int SEQUENCE_BITS = 9;
+
+    private static final int STRIPES = 1 << STRIPE_BITS;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    //stripe state is stored at every 8th index, so neighbour stripes are on different cache lines
+    private static final int PADDING = 8;
+
+    private static final int NODE_SHIFT = STRIPE_BITS + SEQUENCE_BITS;
+
+    private final long nodeBits;
+    /**
+     * Source of node id instead of {@link #nodeBits}, when it is leased.
+     */
+    @Nullable
+    private final IdNodeLease lease;
+    private final LongSupplier clock;
+    /**
+     * Per stripe: {@code millis << SEQUENCE_BITS | sequence} of last generated id.
+     */
+    private final AtomicLongArray state = new AtomicLongArray(STRIPES * PADDING);
+
+    @Autowired
+    public SnowflakeIdGenerator(@Value("${stonks.ids.node:}") String node, ObjectProvider<IdNodeLease> leases)
+            throws ExecutionException, InterruptedException {
+        this(node.isBlank() ? 0 : parseNode(node), node.isBlank() ? lease(leases.getIfAvailable()) : null,
+                System::currentTimeMillis);
+    }
+
+    public SnowflakeIdGenerator(String node) {
+        this(parseNode(node), System::currentTimeMillis);
+    }
+
+    SnowflakeIdGenerator(int node, LongSupplier clock) {
+        this(node, null, clock);
+    }
+
+    SnowflakeIdGenerator(int node, @Nullable IdNodeLease lease, LongSupplier clock) {
+        if (node < 0 || node >= 1 << NODE_BITS) {
+            throw new IllegalArgumentException("Node id must be in [0, " + (1 << NODE_BITS) + ")");
+        }
+        this.nodeBits = (long) node << NODE_SHIFT;
+        this.lease = lease;
+        this.clock = clock;
+    }
+
+    /**
+     * @throws IllegalStateException when node id can not be leased, e.g. without database
+     */
+    static IdNodeLease lease(@Nullable IdNodeLease lease) throws ExecutionException, InterruptedException {
+        if (lease == null) {
+            throw new IllegalStateException("stonks.ids.node is not set and there is no database to lease it from");
+        }
+        lease.acquire(1 << NODE_BITS);
+        return lease;
+    }
+
+    /**
+     * @throws IllegalStateException when node is empty
+     */
+    static int parseNode(String node) {
+        if (node == null || node.isBlank()) {
+            throw new IllegalStateException("stonks.ids.node is empty");
+        }
+        return Integer.parseInt(node.trim());
+    }
+
+    /**
+     * @throws IllegalStateException when node id is leased and lease expired
+     */
+    @Override
+    public long nextId() {
+        long nodeBits = lease == null ? this.nodeBits : (long) lease.node(clock.getAsLong()) << NODE_SHIFT;
+        int stripe = (int) (Thread.currentThread().threadId() & (STRIPES - 1));
+        int index = stripe * PADDING;
+
+        long next;
+        while (true) {
+            long last = state.get(index);
+            long now = (clock.getAsLong() - EPOCH.toEpochMilli()) << SEQUENCE_BITS;
+            //clock going backwards or sequence overflow continue from last value, borrowing next millisecond
+            next = Math.max(now, last + 1);
+            if (state.compareAndSet(index, last, next)) {
+                break;
+            }
+        }
+
+        long millis = next >>> SEQUENCE_BITS;
+        long sequence = next & SEQUENCE_MASK;
+        return millis << (NODE_BITS + STRIPE_BITS + SEQUENCE_BITS)
+                | nodeBits
+                | (long) stripe << SEQUENCE_BITS
+                | sequence;
+    }
+
+    /**
+     * @return time encoded in id
+     */
+    public static Instant timestamp(long id) {
+        return EPOCH.plusMillis(id >>> (NODE_BITS + STRIPE_BITS + SEQUENCE_BITS));
+    }
+}
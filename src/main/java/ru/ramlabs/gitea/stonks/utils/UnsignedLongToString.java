@@ -26,9 +26,39 @@ public @interface UnsignedLongToString {
 
     public final static class Serializer extends JsonSerializer<Long> {
 
+        /**
+         * Max length of unsigned long in decimal.
+         */
+        private static final int MAX_DIGITS = 20;
+        /**
+         * Generator copies written chars, so one buffer per thread is reused by every write.
+         */
+        private static final ThreadLocal<char[]> BUFFER = ThreadLocal.withInitial(() -> new char[MAX_DIGITS]);
+
         @Override
         public void serialize(Long value, JsonGenerator gen, SerializerProvider serializers) throws IOException {
-            gen.writeString(Long.toUnsignedString(value));
+            write(gen, value);
+        }
+
+        /**
+         * Write unsigned value as decimal string, same as {@code gen.writeString(Long.toUnsignedString(value))}
+         * but without creating String or char array, for serializers that have primitive value.
+         */
+        public static void write(JsonGenerator gen, long value) throws IOException {
+            var buffer = BUFFER.get();
+            int position = MAX_DIGITS;
+            long remaining = value;
+            if (remaining < 0) {
+                //top bit set, first division is unsigned
+                long quotient = (remaining >>> 1) / 5;
+                buffer[--position] = (char) ('0' + (remaining - quotient * 10));
+                remaining = quotient;
+            }
+            do {
+                buffer[--position] = (char) ('0' + remaining % 10);
+                remaining /= 10;
+            } while (remaining > 0);
+            gen.writeString(buffer, position, MAX_DIGITS - position);
         }
     }
 
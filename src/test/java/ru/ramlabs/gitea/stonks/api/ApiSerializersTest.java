@@ -0,0 +1,48 @@
+package ru.ramlabs.gitea.stonks.api;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import ru.ramlabs.gitea.stonks.JacksonConfiguration;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ApiSerializersTest {
+
+    private final ObjectMapper annotations = Jackson2ObjectMapperBuilder.json().build();
+    private final ObjectMapper serializers = Jackson2ObjectMapperBuilder.json()
+            .postConfigurer(JacksonConfiguration::registerModules)
+            .build();
+
+    @Test
+    public void testTransactions() throws JsonProcessingException {
+        assertSameJson(new Transactions.GetTransactionsResult(List.of(
+                new Transactions.Transaction(-1L, "max id", Instant.parse("2023-10-01T10:00:00.123456789Z"), null),
+                new Transactions.Transaction(0, null, null, "comment \"quoted\""),
+                new Transactions.Transaction(Long.MIN_VALUE, "leap", Instant.parse("2024-02-29T23:59:59Z"), ""),
+                new Transactions.Transaction(42, "before epoch", Instant.parse("1969-12-31T23:59:59.000001Z"), null),
+                new Transactions.Transaction(43, "far future", Instant.parse("+12345-01-01T00:00:00Z"), null)
+        ), 12345L, null));
+        assertSameJson(new Transactions.GetTransactionsResult(List.of(), null, Long.MAX_VALUE));
+        assertSameJson(new Transactions.TransactionDelta(-5, 100));
+    }
+
+    @Test
+    public void testOtherPages() throws JsonProcessingException {
+        assertSameJson(new Accounts.GetAccountsResult(Arrays.asList(
+                new Accounts.Account(1, null, "account", null),
+                new Accounts.Account(-2L, -3L, "account", "description")
+        ), -4L, 5L));
+        assertSameJson(new Banks.GetBanksResult(List.of(new Banks.Bank(-1L, "bank", "comment")), null, null));
+        assertSameJson(new Assets.GetAssetsResult(List.of(new Assets.Asset(-1L, "USD", null, 2)), 1L, null));
+    }
+
+    private void assertSameJson(Object value) throws JsonProcessingException {
+        assertThat(serializers.writeValueAsString(value)).isEqualTo(annotations.writeValueAsString(value));
+    }
+}
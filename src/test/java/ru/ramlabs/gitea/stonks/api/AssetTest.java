@@ -24,7 +24,7 @@ public class AssetTest {
         var user = users.generateUser();
         assets.addUserAsset(user, "test-asset", "money", 2);
 
-        var dbAssets = assets.getUserAssets(user).assets();
+        var dbAssets = assets.getUserAssets(user, KeysetPagination.PageRequest.FIRST).assets();
         assertThat(dbAssets).hasSize(1);
         assertThat(dbAssets.get(0).name()).isEqualTo("test-asset");
         assertThat(dbAssets.get(0).comment()).isEqualTo("money");
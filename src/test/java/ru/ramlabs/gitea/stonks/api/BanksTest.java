@@ -29,7 +29,7 @@ public class BanksTest {
         assertThat(addedBank.name()).isEqualTo("Bank");
         assertThat(addedBank.comment()).isEqualTo("Test bank");
 
-        var dbBanks = banks.getUserBanks(user);
+        var dbBanks = banks.getUserBanks(user, KeysetPagination.PageRequest.FIRST).banks();
         assertThat(dbBanks).isNotNull();
         assertThat(dbBanks)
                 .hasSize(1)
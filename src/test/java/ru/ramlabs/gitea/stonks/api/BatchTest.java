@@ -0,0 +1,79 @@
+package ru.ramlabs.gitea.stonks.api;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.web.server.ResponseStatusException;
+import ru.ramlabs.gitea.stonks.api.Batches.Ref;
+import ru.ramlabs.gitea.stonks.api.utils.UserUtils;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+@ActiveProfiles("development")
+public class BatchTest {
+
+    @Autowired
+    UserUtils users;
+    @Autowired
+    Batches batches;
+    @Autowired
+    Accounts accounts;
+    @Autowired
+    Balances balances;
+    @Autowired
+    Transactions transactions;
+
+    @Test
+    public void testOnboarding() throws ExecutionException, InterruptedException {
+        var user = users.generateUser();
+
+        var result = batches.execute(user, List.of(
+                new Batches.AddBank("Bank", null),
+                new Batches.CreateAccount("Broker account", null, Ref.operation(0)),
+                new Batches.AddAsset("USD", null, 2),
+                new Batches.CreateTransaction("deposit", null, Instant.now()),
+                new Batches.AddDelta(Ref.operation(3), Ref.operation(1), Ref.operation(2), 1000, 300)
+        ));
+        assertThat(result.results()).hasSize(5);
+
+        var bank = (Banks.Bank) result.results().get(0);
+        var account = (Accounts.Account) result.results().get(1);
+        var asset = (Assets.Asset) result.results().get(2);
+        var transaction = (Transactions.Transaction) result.results().get(3);
+        assertThat(account.bankId()).isEqualTo(bank.bankId());
+
+        assertThat(accounts.getUserAccounts(user, KeysetPagination.PageRequest.FIRST).accounts())
+                .containsExactly(account);
+        assertThat(transactions.getTransactionDeltas(user, transaction.transactionId())).hasSize(1);
+        assertThat(balances.getAccountBalance(user, account.accountId()))
+                .containsExactly(new Balances.AssetBalance(asset.id(), 1000));
+    }
+
+    @Test
+    public void testFailedBatchWritesNothing() throws ExecutionException, InterruptedException {
+        var user = users.generateUser();
+
+        assertThatThrownBy(() -> batches.execute(user, List.of(
+                new Batches.CreateAccount("account", null, null),
+                new Batches.AddDelta(Ref.id(1), Ref.operation(0), Ref.id(2), 1, 300)
+        ))).isInstanceOf(ResponseStatusException.class);
+
+        assertThat(accounts.getUserAccounts(user, KeysetPagination.PageRequest.FIRST).accounts()).isEmpty();
+    }
+
+    @Test
+    public void testReferenceToWrongOperation() {
+        assertThatThrownBy(() -> batches.execute(users.generateUser(), List.of(
+                new Batches.AddAsset("USD", null, 2),
+                new Batches.CreateAccount("account", null, Ref.operation(0))
+        ))).isInstanceOf(ResponseStatusException.class)
+                .hasMessageContaining("AddBank");
+    }
+}
@@ -0,0 +1,95 @@
+package ru.ramlabs.gitea.stonks.api;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.ActiveProfiles;
+import ru.ramlabs.gitea.stonks.api.KeysetPagination.PageRequest;
+import ru.ramlabs.gitea.stonks.api.utils.UserUtils;
+import ru.ramlabs.gitea.stonks.storage.CollectionVersionStorage.Collection;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static ru.ramlabs.gitea.stonks.utils.DatabaseSupport.await;
+
+@SpringBootTest
+@ActiveProfiles("development")
+public class CollectionVersionsTest {
+
+    @Autowired
+    UserUtils users;
+    @Autowired
+    Banks banks;
+    @Autowired
+    Batches batches;
+    @Autowired
+    CollectionVersions versions;
+
+    @Test
+    public void test() throws ExecutionException, InterruptedException {
+        var user = users.generateUser();
+        var first = await(versions.conditional(user, Collection.BANKS, PageRequest.FIRST, null,
+                () -> banks.getUserBanksAsync(user, PageRequest.FIRST)));
+        assertThat(first.getStatusCode()).isEqualTo(HttpStatus.OK);
+        var etag = first.getHeaders().getETag();
+        assertThat(etag).isNotNull();
+
+        var unchanged = await(versions.conditional(user, Collection.BANKS, PageRequest.FIRST, "W/" + etag,
+                () -> banks.getUserBanksAsync(user, PageRequest.FIRST)));
+        assertThat(unchanged.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(unchanged.getBody()).isNull();
+
+        var otherUser = users.generateUser();
+        var otherUserPage = await(versions.conditional(otherUser, Collection.BANKS, PageRequest.FIRST, etag,
+                () -> banks.getUserBanksAsync(otherUser, PageRequest.FIRST)));
+        assertThat(otherUserPage.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+        var otherPageSize = await(versions.conditional(user, Collection.BANKS, new PageRequest(null, null, 10), etag,
+                () -> banks.getUserBanksAsync(user, new PageRequest(null, null, 10))));
+        assertThat(otherPageSize.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+        var otherPage = await(versions.conditional(user, Collection.BANKS, PageRequest.startAt(1), etag,
+                () -> banks.getUserBanksAsync(user, PageRequest.startAt(1))));
+        assertThat(otherPage.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+        banks.addUserBank(user, "Bank", "");
+        var changed = await(versions.conditional(user, Collection.BANKS, PageRequest.FIRST, etag,
+                () -> banks.getUserBanksAsync(user, PageRequest.FIRST)));
+        assertThat(changed.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(changed.getHeaders().getETag()).isNotEqualTo(etag);
+        assertThat(changed.getBody()).isNotNull();
+        assertThat(changed.getBody().banks()).hasSize(1);
+    }
+
+    @Test
+    public void testBatchChangesOnlyItsCollections() throws ExecutionException, InterruptedException {
+        var user = users.generateUser();
+        var etag = await(versions.conditional(user, Collection.BANKS, PageRequest.FIRST, null,
+                () -> banks.getUserBanksAsync(user, PageRequest.FIRST))).getHeaders().getETag();
+
+        batches.execute(user, List.of(new Batches.CreateTransaction("transaction", null, null)));
+        var unchanged = await(versions.conditional(user, Collection.BANKS, PageRequest.FIRST, etag,
+                () -> banks.getUserBanksAsync(user, PageRequest.FIRST)));
+        assertThat(unchanged.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+    }
+
+    @Test
+    public void testDeletingMissingEntityChangesNothing() throws ExecutionException, InterruptedException {
+        var user = users.generateUser();
+        var etag = await(versions.tagged(user, Collection.BANKS, PageRequest.FIRST,
+                () -> banks.getUserBanksAsync(user, PageRequest.FIRST))).getHeaders().getETag();
+
+        assertThat(banks.deleteUserBank(user, 1)).isFalse();
+        var unchanged = await(versions.conditional(user, Collection.BANKS, PageRequest.FIRST, etag,
+                () -> banks.getUserBanksAsync(user, PageRequest.FIRST)));
+        assertThat(unchanged.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+
+        var tagged = await(versions.tagged(user, Collection.BANKS, PageRequest.FIRST,
+                () -> banks.getUserBanksAsync(user, PageRequest.FIRST)));
+        assertThat(tagged.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(tagged.getHeaders().getETag()).isEqualTo(etag);
+    }
+}
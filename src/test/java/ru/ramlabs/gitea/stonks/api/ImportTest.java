@@ -0,0 +1,143 @@
+package ru.ramlabs.gitea.stonks.api;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.web.server.ResponseStatusException;
+import ru.ramlabs.gitea.stonks.api.utils.UserUtils;
+import ru.ramlabs.gitea.stonks.storage.AccountStorage;
+import ru.ramlabs.gitea.stonks.storage.AssetStorage;
+import ru.ramlabs.gitea.stonks.storage.BalanceStorage;
+import ru.ramlabs.gitea.stonks.storage.CollectionVersionStorage;
+import ru.ramlabs.gitea.stonks.storage.ImportStorage;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest
+@ActiveProfiles("development")
+public class ImportTest {
+
+    @Autowired
+    UserUtils users;
+    @Autowired
+    Batches batches;
+    @Autowired
+    Imports imports;
+    @Autowired
+    Balances balances;
+    @Autowired
+    ImportStorage importStorage;
+    @Autowired
+    AccountStorage accountStorage;
+    @Autowired
+    AssetStorage assetStorage;
+    @Autowired
+    CollectionVersionStorage versionStorage;
+    @Autowired
+    DeltaTypes deltaTypes;
+
+    @Test
+    public void testImportIsIdempotent() throws ExecutionException, InterruptedException, IOException {
+        var user = users.generateUser();
+        var created = batches.execute(user, List.of(
+                new Batches.CreateAccount("account", null, null),
+                new Batches.AddAsset("USD", null, 2)
+        )).results();
+        long accountId = ((Accounts.Account) created.get(0)).accountId();
+        long assetId = ((Assets.Asset) created.get(1)).id();
+
+        var csv = "transaction_id,transaction_name,transaction_timestamp,transaction_comment,"
+                + "delta_id,account_id,asset_id,delta_amount,delta_type_id\n"
+                + "101,deposit,2023-10-01T10:00:00Z,\"first, quoted\",201," + accountId + "," + assetId + ",1000,300\n"
+                + "102,withdraw,,,202," + accountId + "," + assetId + ",300,301\n"
+                + "103,empty,,,,,,,\n";
+
+        var result = imports.importCsv(user, stream(csv));
+        assertThat(result.rows()).isEqualTo(3);
+        assertThat(result.deltas()).isEqualTo(2);
+        assertThat(balances.getAccountBalance(user, accountId))
+                .containsExactly(new Balances.AssetBalance(assetId, 700));
+
+        imports.importCsv(user, stream(csv));
+        assertThat(balances.getAccountBalance(user, accountId))
+                .containsExactly(new Balances.AssetBalance(assetId, 700));
+    }
+
+    @Test
+    public void testImportWithoutDeltaIdsIsIdempotent() throws ExecutionException, InterruptedException, IOException {
+        var user = users.generateUser();
+        var created = batches.execute(user, List.of(
+                new Batches.CreateAccount("account", null, null),
+                new Batches.AddAsset("USD", null, 2)
+        )).results();
+        long accountId = ((Accounts.Account) created.get(0)).accountId();
+        long assetId = ((Assets.Asset) created.get(1)).id();
+
+        //two equal deltas of one transaction are different deltas
+        var csv = "transaction_id,account_id,asset_id,delta_amount,delta_type_id\n"
+                + "101," + accountId + "," + assetId + ",1000,300\n"
+                + "101," + accountId + "," + assetId + ",1000,300\n"
+                + "102," + accountId + "," + assetId + ",300,301\n";
+
+        var result = imports.importCsv(user, stream(csv));
+        assertThat(result.deltas()).isEqualTo(3);
+        assertThat(balances.getAccountBalance(user, accountId))
+                .containsExactly(new Balances.AssetBalance(assetId, 1700));
+
+        imports.importCsv(user, stream(csv));
+        assertThat(balances.getAccountBalance(user, accountId))
+                .containsExactly(new Balances.AssetBalance(assetId, 1700));
+    }
+
+    @Test
+    public void testUnknownAccount() {
+        var csv = "transaction_id,account_id,asset_id,delta_amount,delta_type_id\n"
+                + "1,2,3,4,300\n";
+        assertThatThrownBy(() -> imports.importCsv(users.generateUser(), stream(csv)))
+                .isInstanceOf(ResponseStatusException.class)
+                .hasMessageContaining("Row 1");
+    }
+
+    @Test
+    public void testBalancesFailureDoesNotHideRowError() throws ExecutionException, InterruptedException {
+        var user = users.generateUser();
+        var created = batches.execute(user, List.of(
+                new Batches.CreateAccount("account", null, null),
+                new Batches.AddAsset("USD", null, 2)
+        )).results();
+        long accountId = ((Accounts.Account) created.get(0)).accountId();
+        long assetId = ((Assets.Asset) created.get(1)).id();
+        var failingBalances = mock(BalanceStorage.class);
+        when(failingBalances.verify(anyLong(), anyBoolean()))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("balances")));
+        //batch of one row, so first row is written before second one fails
+        var failingImports = new Imports(importStorage, accountStorage, assetStorage, failingBalances,
+                versionStorage, deltaTypes, 1, 1);
+
+        var csv = "transaction_id,account_id,asset_id,delta_amount,delta_type_id\n"
+                + "1," + accountId + "," + assetId + ",4,300\n"
+                + "2,2,3,4,300\n";
+        assertThatThrownBy(() -> failingImports.importCsv(user, stream(csv)))
+                .isInstanceOf(ResponseStatusException.class)
+                .hasMessageContaining("Row 2")
+                .satisfies(e -> assertThat(e.getSuppressed()).hasSize(1));
+    }
+
+    private static InputStream stream(String csv) {
+        return new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8));
+    }
+}
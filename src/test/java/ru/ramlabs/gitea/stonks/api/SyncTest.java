@@ -0,0 +1,98 @@
+package ru.ramlabs.gitea.stonks.api;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.web.server.ResponseStatusException;
+import ru.ramlabs.gitea.stonks.api.Batches.Ref;
+import ru.ramlabs.gitea.stonks.api.utils.UserUtils;
+import ru.ramlabs.gitea.stonks.storage.SyncStorage.Cursor;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+@ActiveProfiles("development")
+public class SyncTest {
+
+    @Autowired
+    UserUtils users;
+    @Autowired
+    Banks banks;
+    @Autowired
+    Accounts accounts;
+    @Autowired
+    Batches batches;
+    @Autowired
+    Sync sync;
+
+    @Test
+    public void test() throws ExecutionException, InterruptedException {
+        var user = users.generateUser();
+        var bank = banks.addUserBank(user, "Bank", "");
+        var account = accounts.createUserAccount(user, "Account", null, bank.bankId());
+
+        var full = sync.sync(user, null);
+        assertThat(full.banks()).containsExactly(bank);
+        assertThat(full.accounts()).containsExactly(account);
+        assertThat(full.transactions()).isEmpty();
+        assertThat(full.hasMore()).isFalse();
+
+        var unchanged = sync.sync(user, full.token());
+        assertThat(unchanged.banks()).isEmpty();
+        assertThat(unchanged.accounts()).isEmpty();
+        assertThat(unchanged.token()).isEqualTo(full.token());
+
+        banks.deleteUserBank(user, bank.bankId());
+        var secondBank = banks.addUserBank(user, "Second bank", "");
+        var changes = sync.sync(user, full.token());
+        assertThat(changes.banks()).containsExactly(secondBank);
+        assertThat(changes.deletedBanks()).containsExactly(bank.bankId());
+        assertThat(changes.accounts()).isEmpty();
+        assertThat(changes.deletedAccounts()).isEmpty();
+    }
+
+    @Test
+    public void testBatchDeltaChangesExistingTransaction() throws ExecutionException, InterruptedException {
+        var user = users.generateUser();
+        var created = batches.execute(user, List.of(
+                new Batches.CreateAccount("account", null, null),
+                new Batches.AddAsset("USD", null, 2),
+                new Batches.CreateTransaction("deposit", null, null)
+        )).results();
+        long accountId = ((Accounts.Account) created.get(0)).accountId();
+        long assetId = ((Assets.Asset) created.get(1)).id();
+        var transaction = (Transactions.Transaction) created.get(2);
+        var full = sync.sync(user, null);
+
+        batches.execute(user, List.of(new Batches.AddDelta(
+                Ref.id(transaction.transactionId()), Ref.id(accountId), Ref.id(assetId), 1000, 300)));
+        var changes = sync.sync(user, full.token());
+        assertThat(changes.transactions()).containsExactly(transaction);
+        assertThat(changes.accounts()).isEmpty();
+        assertThat(changes.assets()).isEmpty();
+    }
+
+    @Test
+    public void testExpiredToken() {
+        var token = new Sync.Token(Instant.now().minus(Duration.ofDays(365)),
+                Cursor.START, Cursor.START, Cursor.START, Cursor.START).encode();
+
+        assertThatThrownBy(() -> sync.sync(users.generateUser(), token))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.GONE));
+    }
+
+    @Test
+    public void testInvalidToken() {
+        assertThatThrownBy(() -> sync.sync(users.generateUser(), "not a token"))
+                .isInstanceOf(ResponseStatusException.class);
+    }
+}
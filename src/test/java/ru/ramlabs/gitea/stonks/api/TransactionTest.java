@@ -1,16 +1,33 @@
 package ru.ramlabs.gitea.stonks.api;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.ActiveProfiles;
 import ru.ramlabs.gitea.stonks.api.utils.UserUtils;
+import ru.ramlabs.gitea.stonks.storage.TransactionStorage;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 @SpringBootTest
 @ActiveProfiles("development")
@@ -26,6 +43,8 @@ public class TransactionTest {
     Balances balances;
     @Autowired
     Accounts accounts;
+    @Autowired
+    Exports exports;
 
     @Test
     public void testTransactions() throws ExecutionException, InterruptedException {
@@ -37,7 +56,7 @@ public class TransactionTest {
         assertThat(tx.timestamp()).isEqualTo(now);
         assertThat(tx.timestamp()).isEqualTo(now);
 
-        var dbTx = transactions.getTransactions(user, 0).transactions();
+        var dbTx = transactions.getTransactions(user, KeysetPagination.PageRequest.FIRST).transactions();
         assertThat(dbTx)
                 .hasSize(1);
 
@@ -47,6 +66,28 @@ public class TransactionTest {
     }
 
 
+    @Test
+    public void testTransactionsPagination() throws ExecutionException, InterruptedException {
+        var user = users.generateUser();
+        for (int i = 0; i < 3; i++) {
+            transactions.createTransaction(user, "tx-" + i, Instant.now(), null);
+        }
+
+        var first = transactions.getTransactions(user, new KeysetPagination.PageRequest(null, null, 2));
+        assertThat(first.transactions()).hasSize(2);
+        assertThat(first.startAt()).isNotNull();
+        assertThat(first.endBefore()).isNull();
+
+        var second = transactions.getTransactions(user, KeysetPagination.PageRequest.startAt(first.startAt()));
+        assertThat(second.transactions()).hasSize(1);
+        assertThat(second.startAt()).isNull();
+        assertThat(second.endBefore()).isEqualTo(first.startAt());
+
+        var back = transactions.getTransactions(user, new KeysetPagination.PageRequest(null, second.endBefore(), 2));
+        assertThat(back.transactions()).isEqualTo(first.transactions());
+        assertThat(back.startAt()).isEqualTo(first.startAt());
+    }
+
     @Test
     public void testDeltas() throws ExecutionException, InterruptedException {
         var user = users.generateUser();
@@ -63,6 +104,82 @@ public class TransactionTest {
         assertThat(deltas.get(0).amount()).isEqualTo(100);
     }
 
+    @Test
+    public void testTransactionWithDeltas() throws ExecutionException, InterruptedException {
+        var user = users.generateUser();
+        var asset = assets.addUserAsset(user, "USD", null, 2).id();
+        var stock = assets.addUserAsset(user, "Stock", null, 0).id();
+        var account = accounts.createUserAccount(user, "", null, null).accountId();
+
+        var created = transactions.createTransactionWithDeltas(user, "buy", Instant.now(), null, List.of(
+                new Transactions.NewDelta(account, stock, 1, 100),
+                new Transactions.NewDelta(account, asset, 100, 101)
+        ));
+        assertThat(created.deltas()).hasSize(2);
+
+        var deltas = transactions.getTransactionDeltas(user, created.transaction().transactionId());
+        assertThat(deltas).hasSize(2);
+        assertThat(deltas).extracting(Transactions.TransactionDelta::amount).containsExactlyInAnyOrder(1L, 100L);
+    }
+
+    @Test
+    public void testExport() throws ExecutionException, InterruptedException, IOException {
+        var user = users.generateUser();
+        var asset = assets.addUserAsset(user, "USD", null, 2).id();
+        var account = accounts.createUserAccount(user, "", null, null).accountId();
+        transactions.createTransactionWithDeltas(user, "with \"quotes\"", Instant.now(), null, List.of(
+                new Transactions.NewDelta(account, asset, 100, 300),
+                new Transactions.NewDelta(account, asset, 5, 0)
+        ));
+        transactions.createTransaction(user, "empty", Instant.now(), null);
+
+        var csv = new ByteArrayOutputStream();
+        exports.exportUserHistory(user, Exports.Format.CSV).writeTo(csv);
+        var lines = csv.toString(StandardCharsets.UTF_8).lines().toList();
+        assertThat(lines).hasSize(4);
+        assertThat(lines).anyMatch(line -> line.contains("\"with \"\"quotes\"\"\""));
+
+        var ndjson = new ByteArrayOutputStream();
+        exports.exportUserHistory(user, Exports.Format.NDJSON).writeTo(ndjson);
+        assertThat(ndjson.toString(StandardCharsets.UTF_8).lines()).hasSize(3);
+    }
+
+    @Test
+    public void testCancelledExportStopsReading() throws InterruptedException {
+        var storage = mock(TransactionStorage.class);
+        var parts = new AtomicInteger();
+        var stream = new AtomicReference<CompletableFuture<Void>>();
+        when(storage.exportHistory(anyLong(), any())).thenAnswer(invocation -> {
+            Consumer<List<Exports.ExportRow>> consumer = invocation.getArgument(1);
+            var result = new CompletableFuture<Void>();
+            stream.set(result);
+            //endless history, read only while export is not cancelled
+            CompletableFuture.runAsync(() -> {
+                while (!result.isDone()) {
+                    consumer.accept(List.of(new Exports.ExportRow(parts.incrementAndGet(), "tx", null, null,
+                            null, null, null, null, null)));
+                }
+            });
+            return result;
+        });
+        var failingClient = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Client disconnected");
+            }
+        };
+
+        var export = new Exports(storage, new ObjectMapper(), 1, Duration.ofSeconds(30));
+        assertThatThrownBy(() -> export.exportUserHistory(1, Exports.Format.CSV).writeTo(failingClient))
+                .isInstanceOf(IOException.class);
+
+        assertThat(stream.get()).isCancelled();
+        //part being passed to consumer at the moment of cancel may still be counted
+        int read = parts.get();
+        Thread.sleep(200);
+        assertThat(parts.get()).isLessThanOrEqualTo(read + 1);
+    }
+
     @Test
     public void testGetDeltaTypes() throws ExecutionException, InterruptedException {
         transactions.getDeltaTypes();
@@ -83,7 +200,11 @@ public class TransactionTest {
         //pay
         transactions.addTransactionDelta(user, account, tx, asset, 100, 101);
 
-        balances.getAccountBalance(user, account);
+        assertThat(balances.getAccountBalance(user, account)).containsExactlyInAnyOrder(
+                new Balances.AssetBalance(stock, 1),
+                new Balances.AssetBalance(asset, -100)
+        );
+        assertThat(balances.verifyUserBalances(user, false).mismatches()).isZero();
     }
 
 
@@ -5,11 +5,15 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.web.server.ResponseStatusException;
 import ru.ramlabs.gitea.stonks.api.utils.UserUtils;
+import ru.ramlabs.gitea.stonks.storage.UserStorage;
 
+import java.time.Instant;
 import java.util.concurrent.ExecutionException;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 @SpringBootTest
 @ActiveProfiles("development")
@@ -19,6 +23,8 @@ public class UserTest {
     public PasswordEncoder passwordEncoder;
     @Autowired
     Users users;
+    @Autowired
+    UserStorage userStorage;
 
     @Test
     public void testBadPasswordEncoding() {
@@ -42,5 +48,36 @@ public class UserTest {
                 .isEqualTo(name.toLowerCase());
     }
 
+    @Test
+    public void testLogoutEvictsCachedSession() throws ExecutionException, InterruptedException {
+        var name = "testuser_" + UserUtils.generateRandomString();
+        var pass = UserUtils.generateRandomString();
+        users.register(name, pass);
+        var token = users.login(name, pass);
+        users.checkAuthAndGetUserId(token);
+        users.checkAuthAndGetUserId(token);
+
+        users.logout(token);
+
+        assertThatThrownBy(() -> users.checkAuthAndGetUserId(token))
+                .isInstanceOf(ResponseStatusException.class);
+    }
+
+    @Test
+    public void testExpiredSessionIsRejected() throws ExecutionException, InterruptedException {
+        var name = "testuser_" + UserUtils.generateRandomString();
+        var pass = UserUtils.generateRandomString();
+        users.register(name, pass);
+        var userId = users.checkAuthAndGetUserId(users.login(name, pass));
+        var expiredToken = UserUtils.generateRandomString();
+        userStorage.insertSession(userId, expiredToken, Instant.now().minusSeconds(1)).get();
+        var auth = Long.toUnsignedString(userId) + "-" + expiredToken;
+
+        assertThatThrownBy(() -> users.getAccount(auth))
+                .isInstanceOf(ResponseStatusException.class);
+        assertThatThrownBy(() -> users.checkAuthAndGetUserId(auth))
+                .isInstanceOf(ResponseStatusException.class);
+    }
+
 
 }
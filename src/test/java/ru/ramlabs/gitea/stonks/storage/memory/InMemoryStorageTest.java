@@ -0,0 +1,61 @@
+package ru.ramlabs.gitea.stonks.storage.memory;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.server.ResponseStatusException;
+import ru.ramlabs.gitea.stonks.api.Accounts.Account;
+import ru.ramlabs.gitea.stonks.api.KeysetPagination;
+import ru.ramlabs.gitea.stonks.api.KeysetPagination.PageRequest;
+import ru.ramlabs.gitea.stonks.storage.CollectionVersionStorage.Collection;
+import ru.ramlabs.gitea.stonks.storage.TransactionStorage.DeltaRow;
+
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static ru.ramlabs.gitea.stonks.utils.DatabaseSupport.await;
+
+public class InMemoryStorageTest {
+
+    private final InMemoryStorage storage = new InMemoryStorage(new KeysetPagination(Map.of(
+            Collection.BANKS, 50,
+            Collection.ACCOUNTS, 10,
+            Collection.ASSETS, 50,
+            Collection.TRANSACTIONS, 10
+    ), 500));
+
+    @Test
+    public void testUniqueUserName() throws ExecutionException, InterruptedException {
+        await(storage.insertUser(1, "user", "password"));
+
+        assertThatThrownBy(() -> await(storage.insertUser(2, "user", "password")))
+                .isInstanceOf(ResponseStatusException.class);
+        assertThat(await(storage.getPassword("user")).userId()).isEqualTo(1L);
+    }
+
+    @Test
+    public void testPaginationUsesUnsignedOrder() throws ExecutionException, InterruptedException {
+        //negative ids are the largest unsigned ones
+        for (long id : new long[]{-1, 1, 2}) {
+            await(storage.insertAccount(7, new Account(id, null, "account", null)));
+        }
+
+        var first = await(storage.accounts(7, new PageRequest(null, null, 2)));
+        assertThat(first.items()).extracting(Account::accountId).containsExactly(1L, 2L);
+        assertThat(first.startAt()).isEqualTo(-1L);
+
+        var second = await(storage.accounts(7, PageRequest.startAt(first.startAt())));
+        assertThat(second.items()).extracting(Account::accountId).containsExactly(-1L);
+        assertThat(second.endBefore()).isEqualTo(-1L);
+
+        var back = await(storage.accounts(7, new PageRequest(null, second.endBefore(), 2)));
+        assertThat(back.items()).isEqualTo(first.items());
+    }
+
+    @Test
+    public void testDeltaOfMissingTransaction() {
+        assertThatThrownBy(() -> await(storage.insertDelta(7, 1, new DeltaRow(2, 3, 4, 100, 0, 1))))
+                .isInstanceOf(ResponseStatusException.class)
+                .hasMessageContaining("Transaction not found");
+    }
+}
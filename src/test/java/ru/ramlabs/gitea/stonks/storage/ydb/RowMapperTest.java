@@ -0,0 +1,57 @@
+package ru.ramlabs.gitea.stonks.storage.ydb;
+
+import org.junit.jupiter.api.Test;
+import ru.ramlabs.gitea.stonks.api.Accounts.Account;
+import tech.ydb.proto.ValueProtos;
+import tech.ydb.table.result.impl.ProtoValueReaders;
+import tech.ydb.table.values.OptionalType;
+import tech.ydb.table.values.PrimitiveType;
+import tech.ydb.table.values.Type;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static tech.ydb.table.values.PrimitiveValue.newText;
+import static tech.ydb.table.values.PrimitiveValue.newUint64;
+
+public class RowMapperTest {
+
+    private static ValueProtos.Column column(String name, Type type) {
+        return ValueProtos.Column.newBuilder().setName(name).setType(type.toPb()).build();
+    }
+
+    @Test
+    public void testColumnsInAnyOrder() {
+        var resultSet = ValueProtos.ResultSet.newBuilder()
+                .addColumns(column("account_description", OptionalType.of(PrimitiveType.Text)))
+                .addColumns(column("account_name", PrimitiveType.Text))
+                .addColumns(column("bank_id", OptionalType.of(PrimitiveType.Uint64)))
+                .addColumns(column("account_id", PrimitiveType.Uint64))
+                .addRows(ValueProtos.Value.newBuilder()
+                        .addItems(PrimitiveType.Text.makeOptional().emptyValue().toPb())
+                        .addItems(newText("first").toPb())
+                        .addItems(newUint64(-1).makeOptional().toPb())
+                        .addItems(newUint64(1).toPb()))
+                .addRows(ValueProtos.Value.newBuilder()
+                        .addItems(newText("description").makeOptional().toPb())
+                        .addItems(newText("second").toPb())
+                        .addItems(PrimitiveType.Uint64.makeOptional().emptyValue().toPb())
+                        .addItems(newUint64(2).toPb()))
+                .build();
+
+        assertThat(YdbAccountStorage.ACCOUNT_ROWS.readAll(ProtoValueReaders.forResultSet(resultSet))).containsExactly(
+                new Account(1, -1L, "first", null),
+                new Account(2, null, "second", "description")
+        );
+    }
+
+    @Test
+    public void testMissingColumn() {
+        var resultSet = ValueProtos.ResultSet.newBuilder()
+                .addColumns(column("account_id", PrimitiveType.Uint64))
+                .build();
+
+        assertThatThrownBy(() -> YdbAccountStorage.ACCOUNT_ROWS.readAll(ProtoValueReaders.forResultSet(resultSet)))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("bank_id");
+    }
+}
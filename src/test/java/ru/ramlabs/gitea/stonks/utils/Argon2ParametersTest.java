@@ -0,0 +1,30 @@
+package ru.ramlabs.gitea.stonks.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class Argon2ParametersTest {
+
+    @Test
+    public void testOnlyWeakerHashesAreRehashed() {
+        var hash = new Argon2Parameters(1024, 3, 1).encoder().encode("password");
+
+        assertThat(new Argon2Parameters(1024, 3, 1).weaker(hash)).isFalse();
+        assertThat(new Argon2Parameters(1024, 2, 1).weaker(hash)).isFalse();
+        assertThat(new Argon2Parameters(512, 3, 1).weaker(hash)).isFalse();
+        assertThat(new Argon2Parameters(1024, 4, 1).weaker(hash)).isTrue();
+        assertThat(new Argon2Parameters(2048, 3, 1).weaker(hash)).isTrue();
+        assertThat(new Argon2Parameters(1024, 3, 1).weaker("{bcrypt}$2a$10$hash")).isTrue();
+    }
+
+    @Test
+    public void testCalibrationStaysInBounds() {
+        var parameters = Argon2Parameters.calibrate(Duration.ofMillis(1), 1024, 1, 2, 4);
+
+        assertThat(parameters.iterations()).isBetween(2, 4);
+        assertThat(parameters.memoryKib()).isEqualTo(1024);
+    }
+}
@@ -0,0 +1,114 @@
+package ru.ramlabs.gitea.stonks.utils;
+
+import org.junit.jupiter.api.Test;
+import ru.ramlabs.gitea.stonks.storage.IdNodeStorage;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.OptionalInt;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SnowflakeIdGeneratorTest {
+
+    @Test
+    public void testNodeIsRequired() {
+        assertThatThrownBy(() -> SnowflakeIdGenerator.parseNode(""))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(SnowflakeIdGenerator.parseNode("7")).isEqualTo(7);
+    }
+
+    @Test
+    public void testLeasedNode() throws Exception {
+        var storage = new IdNodeStorage() {
+            @Override
+            public CompletableFuture<OptionalInt> acquire(String owner, int nodes, Duration ttl) {
+                return CompletableFuture.completedFuture(OptionalInt.of(7));
+            }
+
+            @Override
+            public CompletableFuture<Boolean> renew(int node, String owner, Duration ttl) {
+                return CompletableFuture.completedFuture(true);
+            }
+        };
+        var now = new AtomicLong(System.currentTimeMillis());
+        var generator = new SnowflakeIdGenerator(0,
+                SnowflakeIdGenerator.lease(new IdNodeLease(storage, Duration.ofMinutes(10))), now::get);
+
+        long id = generator.nextId();
+        assertThat(id >>> (SnowflakeIdGenerator.STRIPE_BITS + SnowflakeIdGenerator.SEQUENCE_BITS)
+                & ((1 << SnowflakeIdGenerator.NODE_BITS) - 1)).isEqualTo(7);
+
+        //another instance may own node id after lease expired
+        now.addAndGet(Duration.ofMinutes(11).toMillis());
+        assertThatThrownBy(generator::nextId).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void testNodeWithoutDatabaseIsRequired() {
+        assertThatThrownBy(() -> SnowflakeIdGenerator.lease(null))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void testIdsGrowWithTime() {
+        var now = new AtomicLong(SnowflakeIdGenerator.EPOCH.toEpochMilli() + 1000);
+        var generator = new SnowflakeIdGenerator(3, now::get);
+
+        long first = generator.nextId();
+        long second = generator.nextId();
+        now.addAndGet(1);
+        long third = generator.nextId();
+
+        assertThat(second).isGreaterThan(first);
+        assertThat(third).isGreaterThan(second);
+        assertThat(SnowflakeIdGenerator.timestamp(third)).isEqualTo(SnowflakeIdGenerator.EPOCH.plusMillis(1001));
+    }
+
+    @Test
+    public void testSequenceOverflowAndClockGoingBack() {
+        var now = new AtomicLong(SnowflakeIdGenerator.EPOCH.toEpochMilli() + 1000);
+        var generator = new SnowflakeIdGenerator(0, now::get);
+
+        var ids = new HashSet<Long>();
+        long last = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (i == 5_000) {
+                now.addAndGet(-500);
+            }
+            long id = generator.nextId();
+            assertThat(id).isGreaterThan(last);
+            assertThat(ids.add(id)).isTrue();
+            last = id;
+        }
+    }
+
+    @Test
+    public void testUniqueAcrossThreads() throws Exception {
+        var generator = new SnowflakeIdGenerator(255, System::currentTimeMillis);
+        var ids = ConcurrentHashMap.<Long>newKeySet();
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var futures = new ArrayList<Future<?>>();
+            for (int t = 0; t < 200; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        ids.add(generator.nextId());
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+
+        assertThat(ids).hasSize(200 * 1000);
+    }
+}